@@ -0,0 +1,43 @@
+package com.openai.hackathon;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// what LocalLlamaService copies per request; the token budget is lifted so all turns stay in the window
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChatHistoryBenchmark {
+
+    private static final Map<String, String> USER = Map.of("role", "user", "content", "Und was gilt bei Kündigung?");
+
+    @Param({"10", "100", "1000"})
+    int turns;
+
+    private ChatHistory history;
+
+    @Setup
+    public void setUp() {
+        history = new ChatHistory(Map.of("role", "system", "content", Constants.DEV_PROMPT), Integer.MAX_VALUE, false);
+        for (int i = 0; i < turns; i++) {
+            history.append(
+                    Map.of("role", "user", "content", "Frage " + i + ": Wie lange läuft der Vertrag?"),
+                    Map.of("role", "assistant", "content", "Antwort " + i + ": Der Vertrag läuft ein Jahr und verlängert sich automatisch."));
+        }
+    }
+
+    @Benchmark
+    public List<Map<String, String>> snapshotWith() {
+        return history.snapshotWith(USER);
+    }
+}
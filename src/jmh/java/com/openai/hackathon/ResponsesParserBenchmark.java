@@ -0,0 +1,82 @@
+package com.openai.hackathon;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openai.hackathon.ResponsesParser.ParsedResponse;
+
+// small: a plain answer; large: file_search results, annotations and reasoning around a long answer
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponsesParserBenchmark {
+
+    @Param({"small", "large"})
+    String payload;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws Exception {
+        boolean large = "large".equals(payload);
+        List<Object> output = new ArrayList<>();
+
+        if (large) {
+            output.add(Map.of("type", "reasoning", "id", "rs_1", "summary", List.of(
+                    Map.of("type", "summary_text", "text", text("Abwägung der Quellen. ", 40)))));
+
+            List<Object> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                results.add(Map.of(
+                        "file_id", "file-" + i,
+                        "filename", "Vertragsbedingungen-" + i + ".pdf",
+                        "score", 0.9 - i * 0.01,
+                        "text", text("Der Versicherungsnehmer hat die Prämie jährlich im Voraus zu entrichten. ", 30)));
+            }
+            output.add(Map.of("type", "file_search_call", "id", "fs_1", "status", "completed",
+                    "queries", List.of("Prämie Fälligkeit"), "results", results));
+        }
+
+        List<Object> annotations = new ArrayList<>();
+        for (int i = 0; i < (large ? 12 : 1); i++) {
+            annotations.add(Map.of("type", "file_citation", "index", i * 100, "file_id", "file-" + i,
+                    "filename", "Vertragsbedingungen-" + i + ".pdf"));
+        }
+        output.add(Map.of("type", "message", "id", "msg_1", "role", "assistant", "status", "completed", "content", List.of(
+                Map.of("type", "output_text",
+                        "text", text("Die Prämie ist jährlich im Voraus fällig. ", large ? 200 : 3),
+                        "annotations", annotations))));
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("id", "resp_1");
+        response.put("object", "response");
+        response.put("status", "completed");
+        response.put("model", "gpt-5.2");
+        response.put("output", output);
+        response.put("usage", Map.of("input_tokens", large ? 18000 : 900, "output_tokens", large ? 2000 : 40,
+                "total_tokens", large ? 20000 : 940));
+        body = new ObjectMapper().writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public ParsedResponse parse() {
+        return ResponsesParser.parse(body);
+    }
+
+    private static String text(String sentence, int times) {
+        return sentence.repeat(times);
+    }
+}
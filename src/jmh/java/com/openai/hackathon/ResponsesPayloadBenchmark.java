@@ -0,0 +1,49 @@
+package com.openai.hackathon;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import tools.jackson.databind.json.JsonMapper;
+
+// the request side of chat and chatWithFile: payload maps plus the Jackson 3 mapper WebClient encodes with
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponsesPayloadBenchmark {
+
+    private static final String PROMPT = "Wann ist die Prämie fällig und was passiert bei verspäteter Zahlung? ".repeat(3);
+
+    private final JsonMapper mapper = JsonMapper.builder().build();
+    private ResponsesPayloads payloads;
+
+    @Setup
+    public void setUp() {
+        payloads = new ResponsesPayloads("gpt-5.2", "vs_bench");
+    }
+
+    @Benchmark
+    public byte[] chat() {
+        return mapper.writeValueAsBytes(payloads.turn("conv_123", List.of(ResponsesPayloads.inputText(PROMPT))));
+    }
+
+    @Benchmark
+    public byte[] chatWithFile() {
+        return mapper.writeValueAsBytes(payloads.turn("conv_123", List.of(
+                ResponsesPayloads.inputText(PROMPT),
+                Map.of("type", "input_file", "file_id", "file-abc123"))));
+    }
+
+    @Benchmark
+    public byte[] chatStateless() {
+        return mapper.writeValueAsBytes(payloads.stateless(PROMPT));
+    }
+}
@@ -0,0 +1,171 @@
+package com.openai.hackathon;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+import reactor.core.publisher.Mono;
+
+/*
+ * Bulkhead for one upstream whose size follows the observed latency (AIMD on a latency gradient):
+ * every sample that stays within tolerance x the no-load latency of its operation while the limit is
+ * actually used grows the limit by 1/limit, a slow sample, 429, 5xx or I/O failure shrinks it by the
+ * backoff factor. Baselines are kept per operation, a file listing is no yardstick for a responses call.
+ * Calls over the limit wait in a bounded FIFO queue for at most max-wait, beyond that they are rejected
+ * right away with an UpstreamOverloadedException.
+ */
+public final class AdaptiveLimiter {
+
+    private final String upstream;
+    private final HttpClientProps.Limit settings;
+    private final int maxLimit;
+    private final ArrayDeque<CompletableFuture<Boolean>> waiters = new ArrayDeque<>();
+
+    // operation -> {no-load nanos, smoothed nanos}
+    private final Map<String, long[]> latencies = new HashMap<>();
+
+    private double limit;
+    private int inflight;
+    private long rejected;
+    private long timedOut;
+
+    public AdaptiveLimiter(String upstream, HttpClientProps.Limit settings, int maxConnections) {
+        this.upstream = upstream;
+        this.settings = settings;
+        this.maxLimit = Math.min(settings.max(), maxConnections);
+        this.limit = Math.max(settings.min(), Math.min(settings.initial(), maxLimit));
+    }
+
+    // the permit is held until the response body is fully read, so streams count for their whole length
+    public ExchangeFilterFunction filter() {
+        return (request, next) -> {
+            String operation = UpstreamMetrics.operation(request.method(), request.url().getPath());
+            return acquire(operation).flatMap(started -> {
+                AtomicBoolean released = new AtomicBoolean();
+                return next.exchange(request)
+                        .doOnCancel(() -> {
+                            if (released.compareAndSet(false, true)) release(operation, 0, false);
+                        })
+                        .doOnError(e -> {
+                            if (released.compareAndSet(false, true)) release(operation, 0, true);
+                        })
+                        .map(response -> {
+                            long sample = System.nanoTime() - started;
+                            int status = response.statusCode().value();
+                            boolean dropped = status == 429 || status >= 500;
+                            return response.mutate()
+                                    .body(body -> body.doFinally(signal -> {
+                                        if (released.compareAndSet(false, true)) release(operation, sample, dropped);
+                                    }))
+                                    .build();
+                        });
+            });
+        };
+    }
+
+    Mono<Long> acquire(String operation) {
+        return Mono.defer(() -> {
+            CompletableFuture<Boolean> waiter;
+            synchronized (this) {
+                if (inflight < (int) limit) {
+                    inflight++;
+                    return Mono.just(System.nanoTime());
+                }
+                if (waiters.size() >= settings.maxQueue()) {
+                    rejected++;
+                    return Mono.error(overloaded(operation));
+                }
+                waiter = new CompletableFuture<>();
+                waiters.addLast(waiter);
+            }
+
+            return Mono.fromFuture(waiter, true)
+                    .timeout(settings.maxWait())
+                    .onErrorMap(TimeoutException.class, e -> {
+                        synchronized (this) {
+                            timedOut++;
+                        }
+                        return overloaded(operation);
+                    })
+                    .doOnError(e -> abandon(waiter))
+                    .doOnCancel(() -> abandon(waiter))
+                    .map(granted -> System.nanoTime());
+        });
+    }
+
+    void release(String operation, long sampleNanos, boolean dropped) {
+        List<CompletableFuture<Boolean>> granted;
+        synchronized (this) {
+            inflight--;
+            if (dropped) {
+                limit = Math.max(settings.min(), limit * settings.backoff());
+            } else if (sampleNanos > 0) {
+                long[] latency = latencies.computeIfAbsent(operation, k -> new long[2]);
+                latency[0] = latency[0] == 0 || sampleNanos < latency[0]
+                        ? sampleNanos
+                        : latency[0] + (sampleNanos - latency[0]) / 1000; // lets the baseline drift up with the upstream
+                latency[1] = latency[1] == 0 ? sampleNanos : (4 * latency[1] + sampleNanos) / 5;
+
+                if (latency[1] > settings.tolerance() * latency[0]) {
+                    limit = Math.max(settings.min(), limit * settings.backoff());
+                } else if ((inflight + 1) * 2 >= (int) limit) {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+            }
+            granted = drain();
+        }
+        granted.forEach(waiter -> waiter.complete(Boolean.TRUE));
+    }
+
+    // a waiter no longer in the queue was already granted a slot and hands it back
+    private void abandon(CompletableFuture<Boolean> waiter) {
+        List<CompletableFuture<Boolean>> granted;
+        synchronized (this) {
+            if (waiters.remove(waiter)) {
+                return;
+            }
+            inflight--;
+            granted = drain();
+        }
+        granted.forEach(next -> next.complete(Boolean.TRUE));
+    }
+
+    // waiters are completed by the caller outside the lock, completion runs their exchange inline
+    private List<CompletableFuture<Boolean>> drain() {
+        List<CompletableFuture<Boolean>> granted = new ArrayList<>();
+        while (inflight < (int) limit && !waiters.isEmpty()) {
+            inflight++;
+            granted.add(waiters.pollFirst());
+        }
+        return granted;
+    }
+
+    private synchronized UpstreamOverloadedException overloaded(String operation) {
+        long[] latency = latencies.get(operation);
+        long seconds = Math.max(1, latency == null ? 1 : (long) Math.ceil(latency[1] / 1e9));
+        return new UpstreamOverloadedException(upstream, Duration.ofSeconds(Math.min(seconds, 60)));
+    }
+
+    synchronized Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("limit", (int) limit);
+        result.put("inflight", inflight);
+        result.put("queued", waiters.size());
+        result.put("rejected", rejected);
+        result.put("queueTimeouts", timedOut);
+        Map<String, Object> byOperation = new LinkedHashMap<>();
+        latencies.forEach((operation, latency) -> byOperation.put(operation,
+                Map.of("noLoadMillis", latency[0] / 1_000_000, "smoothedMillis", latency[1] / 1_000_000)));
+        result.put("latency", byOperation);
+        return result;
+    }
+}
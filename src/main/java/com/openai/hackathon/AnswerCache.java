@@ -0,0 +1,183 @@
+package com.openai.hackathon;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.openai.hackathon.MappedAnswerStore.CachedAnswer;
+
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Mono;
+
+@Component
+public class AnswerCache implements StatsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(AnswerCache.class);
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Duration ttl;
+    private final Cache<String, CachedAnswer> memory;
+    private final MappedAnswerStore disk;
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder latencySavedMillis = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    // counts invalidations; an answer computed across one was built on old documents and is not stored
+    private final AtomicLong epoch = new AtomicLong();
+
+    public AnswerCache(AnswerCacheProps props) {
+        this.ttl = props.ttl();
+        this.memory = Caffeine.newBuilder()
+                .maximumWeight(props.maxMemory().toBytes())
+                .weigher((String key, CachedAnswer answer) -> 64 + 2 * answer.text().length())
+                // what is left of the answer's TTL, a disk hit does not start a new one
+                .expireAfter(Expiry.writing((String key, CachedAnswer answer) ->
+                        Duration.ofMillis(Math.max(0, answer.expiresAt() - System.currentTimeMillis()))))
+                .build();
+
+        if (props.diskEnabled()) {
+            try {
+                this.disk = new MappedAnswerStore(props.diskPath(), (int) props.diskSize().toBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed opening answer cache " + props.diskPath(), e);
+            }
+            log.info("Loaded {} cached answers from {}", disk.size(), props.diskPath());
+        } else {
+            this.disk = null;
+        }
+    }
+
+    // (backend, model, vector store, system prompt, normalized prompt) -> sha-256 hex
+    public static String key(String backend, String model, String vectorStoreId, String systemPrompt, String prompt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] systemHash = MessageDigest.getInstance("SHA-256").digest(systemPrompt.getBytes(StandardCharsets.UTF_8));
+            for (String part : new String[]{backend, model, vectorStoreId, HexFormat.of().formatHex(systemHash), normalize(prompt)}) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String normalize(String prompt) {
+        String nfkc = Normalizer.normalize(prompt, Normalizer.Form.NFKC);
+        return WHITESPACE.matcher(nfkc.strip()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    public Mono<String> getOrCompute(String key, Supplier<Mono<String>> compute) {
+        return Mono.defer(() -> {
+            CachedAnswer cached = lookup(key);
+            if (cached != null) {
+                latencySavedMillis.add(cached.latencyMillis());
+                return Mono.just(cached.text());
+            }
+
+            misses.increment();
+            long started = System.nanoTime();
+            long computedIn = epoch.get();
+            return compute.get().doOnNext(answer -> {
+                // the parser's placeholder for a response without text is not an answer worth repeating
+                if (answer.isBlank() || ResponsesParser.NO_TEXT_OUTPUT.equals(answer)) {
+                    return;
+                }
+                store(key, new CachedAnswer(answer, ChatService.elapsedMillis(started),
+                        System.currentTimeMillis() + ttl.toMillis()), computedIn);
+            });
+        });
+    }
+
+    // synchronized with invalidateAll(), so no stale answer is stored right after the clear
+    private synchronized void store(String key, CachedAnswer fresh, long computedIn) {
+        if (epoch.get() != computedIn) {
+            discarded.increment();
+            return;
+        }
+        memory.put(key, fresh);
+        if (disk != null) {
+            disk.put(key, fresh);
+        }
+    }
+
+    private CachedAnswer lookup(String key) {
+        CachedAnswer cached = memory.getIfPresent(key);
+        if (cached != null) {
+            memoryHits.increment();
+            return cached;
+        }
+        if (disk != null) {
+            cached = disk.get(key, System.currentTimeMillis());
+            if (cached != null) {
+                diskHits.increment();
+                memory.put(key, cached);
+                return cached;
+            }
+        }
+        return null;
+    }
+
+    // answers may cite documents, so any vector-store change drops everything
+    public synchronized void invalidateAll() {
+        epoch.incrementAndGet();
+        invalidations.increment();
+        memory.invalidateAll();
+        if (disk != null) {
+            disk.clear();
+        }
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        if (disk != null) {
+            disk.close();
+        }
+    }
+
+    @Override
+    public String statsName() {
+        return "answerCache";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        long hits = memoryHits.sum() + diskHits.sum();
+        long total = hits + misses.sum();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("memoryEntries", memory.estimatedSize());
+        result.put("diskEntries", disk == null ? 0 : disk.size());
+        result.put("memoryHits", memoryHits.sum());
+        result.put("diskHits", diskHits.sum());
+        result.put("misses", misses.sum());
+        result.put("hitRatio", total == 0 ? 0.0 : (double) hits / total);
+        result.put("latencySavedMillis", latencySavedMillis.sum());
+        result.put("invalidations", invalidations.sum());
+        result.put("discarded", discarded.sum());
+        return result;
+    }
+}
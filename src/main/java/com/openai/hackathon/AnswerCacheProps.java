@@ -0,0 +1,17 @@
+package com.openai.hackathon;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties(prefix = "answer-cache")
+public record AnswerCacheProps(
+        @DefaultValue("64MB") DataSize maxMemory,
+        @DefaultValue("24h") Duration ttl,
+        @DefaultValue("false") boolean diskEnabled,
+        @DefaultValue("data/answers.bin") Path diskPath,
+        @DefaultValue("256MB") DataSize diskSize
+) {}
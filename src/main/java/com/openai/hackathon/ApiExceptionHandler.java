@@ -0,0 +1,41 @@
+package com.openai.hackathon;
+
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+@RestControllerAdvice
+public class ApiExceptionHandler {
+
+    // shed load fast: the client learns when to come back instead of waiting on a saturated upstream
+    @ExceptionHandler(UpstreamOverloadedException.class)
+    public ResponseEntity<Map<String, String>> overloaded(UpstreamOverloadedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()))
+                .body(Map.of("error", e.getMessage(), "upstream", e.getUpstream()));
+    }
+
+    @ExceptionHandler(IngestionQueueFullException.class)
+    public ResponseEntity<Map<String, String>> queueFull(IngestionQueueFullException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()))
+                .body(Map.of("error", e.getMessage()));
+    }
+
+    // input validation such as a blank prompt or an unparseable batch
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", String.valueOf(e.getMessage())));
+    }
+
+    // a routed call that missed the router's budget and had no backend to fall back to
+    @ExceptionHandler(TimeoutException.class)
+    public ResponseEntity<Map<String, String>> deadline(TimeoutException e) {
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(Map.of("error", String.valueOf(e.getMessage())));
+    }
+}
@@ -0,0 +1,286 @@
+package com.openai.hackathon;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+@Service
+public class BatchChatService implements StatsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchChatService.class);
+
+    private final ChatService chatService;
+    private final LocalLlamaService localLlamaService;
+    private final FileUploadService fileUploads;
+    private final WebClient webClient;
+    private final BatchProps props;
+    private final ObjectMapper om = new ObjectMapper();
+
+    private final LongAdder interactiveItems = new LongAdder();
+    private final LongAdder failedItems = new LongAdder();
+    private final LongAdder offlineBatches = new LongAdder();
+    private final LongAdder offlineItems = new LongAdder();
+
+    public BatchChatService(ChatService chatService, LocalLlamaService localLlamaService, FileUploadService fileUploads,
+                            BatchProps props, WebClient openAiWebClient) {
+        this.chatService = chatService;
+        this.localLlamaService = localLlamaService;
+        this.fileUploads = fileUploads;
+        this.props = props;
+        this.webClient = openAiWebClient;
+    }
+
+    // every item is a stateless call: no session, no conversation, answers may come from the answer cache
+    public Flux<BatchResult> runInteractive(List<BatchItem> items, String backend, boolean ordered) {
+        Function<String, Mono<String>> call = switch (backend == null ? "openai" : backend) {
+            case "openai" -> chatService::chatStateless;
+            case "local" -> localLlamaService::chatStateless;
+            default -> throw new IllegalArgumentException("backend must be openai or local");
+        };
+
+        Function<BatchItem, Mono<BatchResult>> run = item -> {
+            long started = System.nanoTime();
+            return call.apply(item.prompt())
+                    .map(answer -> new BatchResult(item.id(), answer, null, ChatService.elapsedMillis(started)))
+                    .onErrorResume(e -> {
+                        failedItems.increment();
+                        log.warn("Batch item {} failed: {}", item.id(), e.getMessage());
+                        return Mono.just(new BatchResult(item.id(), null, String.valueOf(e.getMessage()),
+                                ChatService.elapsedMillis(started)));
+                    })
+                    .doOnNext(result -> interactiveItems.increment());
+        };
+
+        Flux<BatchItem> source = Flux.fromIterable(items);
+        return ordered
+                ? source.flatMapSequential(run, props.concurrency())
+                : source.flatMap(run, props.concurrency());
+    }
+
+    // uploads the items as a /v1/responses JSONL input file and hands it to the Batch API
+    public Mono<BatchJob> submitOffline(List<BatchItem> items) {
+        return Mono.usingWhen(
+                        writeInputFile(items),
+                        path -> fileUploads.upload(path, "batch-input.jsonl", "batch"),
+                        BatchChatService::delete)
+                .flatMap(inputFileId -> {
+                    Map<String, Object> body = new LinkedHashMap<>();
+                    body.put("input_file_id", inputFileId);
+                    body.put("endpoint", "/v1/responses");
+                    body.put("completion_window", props.completionWindow());
+
+                    return webClient.post()
+                            .uri("/v1/batches")
+                            .bodyValue(body)
+                            .retrieve()
+                            .bodyToMono(String.class);
+                })
+                .doOnError(WebClientResponseException.class, e -> log.error(
+                        "OpenAI /v1/batches failed. status={} responseBody={}",
+                        e.getStatusCode().value(), ChatService.safeBody(e)))
+                .map(this::toJob)
+                .doOnNext(job -> {
+                    offlineBatches.increment();
+                    offlineItems.add(items.size());
+                    log.info("Submitted batch {} with {} items", job.batchId(), items.size());
+                });
+    }
+
+    public Mono<BatchJob> status(String batchId) {
+        return webClient.get()
+                .uri("/v1/batches/{id}", batchId)
+                .retrieve()
+                .bodyToMono(String.class)
+                .map(this::toJob);
+    }
+
+    // output lines arrive in completion order, custom_id carries the item id
+    public Flux<BatchResult> results(String batchId) {
+        return status(batchId).flatMapMany(job -> {
+            if (job.outputFileId() == null) {
+                return Flux.error(new IllegalStateException("Batch " + batchId + " has no output yet (status " + job.status() + ")"));
+            }
+            return webClient.get()
+                    .uri("/v1/files/{id}/content", job.outputFileId())
+                    .retrieve()
+                    .bodyToFlux(String.class)
+                    .filter(line -> !line.isBlank())
+                    .map(this::toResult);
+        });
+    }
+
+    public List<BatchItem> parseItems(String input) {
+        if (input == null || input.isBlank()) {
+            throw new IllegalArgumentException("batch must contain at least one item");
+        }
+
+        List<JsonNode> nodes = new ArrayList<>();
+        try {
+            String trimmed = input.strip();
+            if (trimmed.startsWith("[")) {
+                om.readTree(trimmed).forEach(nodes::add);
+            } else {
+                for (String line : trimmed.split("\r?\n")) {
+                    if (!line.isBlank()) {
+                        nodes.add(om.readTree(line));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("batch input is neither a JSON array nor JSON lines: " + e.getMessage(), e);
+        }
+
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("batch must contain at least one item");
+        }
+        if (nodes.size() > props.maxItems()) {
+            throw new IllegalArgumentException("batch exceeds " + props.maxItems() + " items");
+        }
+
+        List<BatchItem> items = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            items.add(toItem(nodes.get(i), i));
+        }
+        return items;
+    }
+
+    // accepts {id, prompt} as well as the backlog format {request_id, title, body}
+    private static BatchItem toItem(JsonNode node, int index) {
+        String id = firstText(node, "id", "request_id", "custom_id");
+        if (id == null) {
+            id = "item-" + (index + 1);
+        }
+
+        String prompt = firstText(node, "prompt");
+        if (prompt == null) {
+            String title = firstText(node, "title");
+            String body = firstText(node, "body");
+            prompt = title == null ? body : body == null ? title : title + "\n\n" + body;
+        }
+        if (prompt == null || prompt.isBlank()) {
+            throw new IllegalArgumentException("batch item " + id + " has no prompt");
+        }
+        return new BatchItem(id, prompt);
+    }
+
+    private static String firstText(JsonNode node, String... fields) {
+        for (String field : fields) {
+            JsonNode value = node.path(field);
+            if (value.isValueNode() && !value.asText().isBlank()) {
+                return value.asText();
+            }
+        }
+        return null;
+    }
+
+    private Mono<Path> writeInputFile(List<BatchItem> items) {
+        return Mono.fromCallable(() -> {
+            Path path = Files.createTempFile("batch-input", ".jsonl");
+            try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                for (BatchItem item : items) {
+                    Map<String, Object> line = new LinkedHashMap<>();
+                    line.put("custom_id", item.id());
+                    line.put("method", "POST");
+                    line.put("url", "/v1/responses");
+                    line.put("body", chatService.statelessPayload(item.prompt()));
+                    out.write(om.writeValueAsString(line));
+                    out.newLine();
+                }
+            }
+            return path;
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static Mono<Void> delete(Path path) {
+        return Mono.<Void>fromRunnable(() -> {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Failed deleting batch input {}: {}", path, e.getMessage());
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private BatchJob toJob(String raw) {
+        try {
+            JsonNode root = om.readTree(raw);
+            JsonNode counts = root.path("request_counts");
+            return new BatchJob(
+                    root.path("id").asText(null),
+                    root.path("status").asText(null),
+                    counts.path("total").asInt(),
+                    counts.path("completed").asInt(),
+                    counts.path("failed").asInt(),
+                    root.path("output_file_id").asText(null),
+                    root.path("error_file_id").asText(null));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed parsing batch JSON: " + e.getMessage(), e);
+        }
+    }
+
+    private BatchResult toResult(String line) {
+        try {
+            JsonNode root = om.readTree(line);
+            String id = root.path("custom_id").asText(null);
+            JsonNode response = root.path("response");
+            if (response.path("status_code").asInt() != 200) {
+                String error = root.path("error").path("message").asText(
+                        response.path("body").path("error").path("message").asText("request failed"));
+                return new BatchResult(id, null, error, 0);
+            }
+            String answer = ResponsesParser.parse(om.writeValueAsBytes(response.path("body"))).text();
+            return new BatchResult(id, answer, null, 0);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed parsing batch output line: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String statsName() {
+        return "batch";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("interactiveItems", interactiveItems.sum());
+        result.put("failedItems", failedItems.sum());
+        result.put("offlineBatches", offlineBatches.sum());
+        result.put("offlineItems", offlineItems.sum());
+        return result;
+    }
+
+    public record BatchItem(String id, String prompt) {
+
+    }
+
+    public record BatchResult(String id, String answer, String error, long latencyMillis) {
+
+    }
+
+    public record BatchJob(String batchId, String status, int total, int completed, int failed,
+                           String outputFileId, String errorFileId) {
+
+    }
+}
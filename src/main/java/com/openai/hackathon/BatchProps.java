@@ -0,0 +1,11 @@
+package com.openai.hackathon;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "batch")
+public record BatchProps(
+        @DefaultValue("8") int concurrency,
+        @DefaultValue("10000") int maxItems,
+        @DefaultValue("24h") String completionWindow
+) {}
@@ -0,0 +1,289 @@
+package com.openai.hackathon;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+@Service
+public class BulkIngestionService implements StatsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkIngestionService.class);
+
+    private final WebClient webClient;
+    private final FileUploadService fileUploads;
+    private final FileMetadataCache fileMetadata;
+    private final AnswerCache answerCache;
+    private final String vectorStoreId;
+    private final OpenAIProps.Uploads uploads;
+    private final ObjectMapper om = new ObjectMapper();
+
+    private final LongAdder files = new LongAdder();
+    private final LongAdder failedFiles = new LongAdder();
+    private final LongAdder fileBatches = new LongAdder();
+
+    public BulkIngestionService(OpenAIProps props, FileUploadService fileUploads, FileMetadataCache fileMetadata,
+                                AnswerCache answerCache, WebClient openAiWebClient) {
+        this.webClient = openAiWebClient;
+        this.fileUploads = fileUploads;
+        this.fileMetadata = fileMetadata;
+        this.answerCache = answerCache;
+        this.vectorStoreId = props.vectorStoreId();
+        this.uploads = props.uploads();
+    }
+
+    /*
+     * Parts are spooled one after the other and every file goes to upload as soon as it is on disk; archives
+     * are extracted entry by entry as uploads ask for more. A part or archive that cannot be read becomes a
+     * failed event of its own, the rest of the request carries on. The vector store sees one file_batches
+     * call per attach-batch-size uploaded files.
+     */
+    public Flux<IngestEvent> ingest(List<MultipartFile> parts) {
+        if (parts == null || parts.isEmpty() || parts.stream().allMatch(MultipartFile::isEmpty)) {
+            throw new IllegalArgumentException("files must not be empty");
+        }
+        if (vectorStoreId == null || vectorStoreId.isBlank()) {
+            throw new IllegalStateException("openai.vector-store-id is missing");
+        }
+
+        return Flux.usingWhen(
+                Mono.fromCallable(() -> Files.createTempDirectory("hackathon-bulk")).subscribeOn(Schedulers.boundedElastic()),
+                workDir -> {
+                    List<IngestEvent> uploaded = Collections.synchronizedList(new ArrayList<>());
+                    return Flux.fromIterable(parts)
+                            .filter(part -> !part.isEmpty())
+                            .concatMap(part -> spool(part, workDir))
+                            .flatMap(file -> upload(file).doOnNext(event -> {
+                                if (event.fileId() != null) uploaded.add(event);
+                            }), uploads.parallelism())
+                            .concatWith(Flux.defer(() -> attach(List.copyOf(uploaded))));
+                },
+                BulkIngestionService::deleteRecursively);
+    }
+
+    private Flux<SpooledFile> spool(MultipartFile part, Path workDir) {
+        String filename = FileUploadService.filename(part);
+        Flux<SpooledFile> files = isZip(filename, part.getContentType())
+                ? unzip(part, workDir)
+                : Mono.fromCallable(() -> {
+                    Path target = workDir.resolve(UUID.randomUUID() + ".part");
+                    part.transferTo(target);
+                    return new SpooledFile(filename, target, null);
+                }).flux();
+        return files
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> Mono.just(new SpooledFile(filename, null, e)));
+    }
+
+    // entries only lend their base name, nothing is written outside workDir; one entry per request from upstream
+    private Flux<SpooledFile> unzip(MultipartFile archive, Path workDir) {
+        return Flux.defer(() -> {
+            byte[] buffer = new byte[(int) uploads.chunkSize().toBytes()];
+            long[] extracted = new long[1];
+            int[] entries = new int[1];
+            return Flux.using(
+                    () -> new ZipInputStream(archive.getInputStream()),
+                    zip -> Flux.<SpooledFile>generate(sink -> {
+                        try {
+                            ZipEntry entry;
+                            while ((entry = zip.getNextEntry()) != null) {
+                                String name = baseName(entry.getName());
+                                if (entry.isDirectory() || name.isEmpty() || name.startsWith(".") || entry.getName().startsWith("__MACOSX/")) {
+                                    continue;
+                                }
+                                if (++entries[0] > uploads.maxArchiveEntries()) {
+                                    throw new IllegalArgumentException("archive has more than " + uploads.maxArchiveEntries() + " files");
+                                }
+
+                                Path target = workDir.resolve(UUID.randomUUID() + ".part");
+                                try (OutputStream out = Files.newOutputStream(target)) {
+                                    int read;
+                                    while ((read = zip.read(buffer)) != -1) {
+                                        extracted[0] += read;
+                                        if (extracted[0] > uploads.maxArchiveSize().toBytes()) {
+                                            throw new IllegalArgumentException("archive expands beyond " + uploads.maxArchiveSize());
+                                        }
+                                        out.write(buffer, 0, read);
+                                    }
+                                }
+                                sink.next(new SpooledFile(name, target, null));
+                                return;
+                            }
+                            if (entries[0] == 0) {
+                                // also what ZipInputStream makes of bytes that are no zip at all
+                                throw new IllegalArgumentException("archive contains no files");
+                            }
+                            sink.complete();
+                        } catch (IOException | RuntimeException e) {
+                            sink.error(e);
+                        }
+                    }),
+                    zip -> {
+                        try {
+                            zip.close();
+                        } catch (IOException e) {
+                            log.debug("Failed closing archive {}: {}", archive.getOriginalFilename(), e.getMessage());
+                        }
+                    });
+        });
+    }
+
+    // the spooled copy is gone once its upload is done, the retrieval index has extracted its text by then
+    private Mono<IngestEvent> upload(SpooledFile file) {
+        if (file.error() != null) {
+            failedFiles.increment();
+            log.warn("Bulk upload of {} failed: {}", file.filename(), file.error().getMessage());
+            return Mono.just(IngestEvent.failed(file.filename(), file.error()));
+        }
+        return fileUploads.uploadDocument(file.path(), file.filename())
+                .map(fileId -> {
+                    files.increment();
+                    return IngestEvent.uploaded(file.filename(), fileId);
+                })
+                .onErrorResume(e -> {
+                    failedFiles.increment();
+                    log.warn("Bulk upload of {} failed: {}", file.filename(), e.getMessage());
+                    return Mono.just(IngestEvent.failed(file.filename(), e));
+                })
+                .flatMap(event -> Mono.fromRunnable(() -> delete(file.path()))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .thenReturn(event));
+    }
+
+    private Flux<IngestEvent> attach(List<IngestEvent> uploaded) {
+        if (uploaded.isEmpty()) {
+            return Flux.empty();
+        }
+
+        List<List<IngestEvent>> chunks = new ArrayList<>();
+        for (int i = 0; i < uploaded.size(); i += uploads.attachBatchSize()) {
+            chunks.add(uploaded.subList(i, Math.min(i + uploads.attachBatchSize(), uploaded.size())));
+        }
+
+        // answers may cite documents; only a batch that was actually attached changes what they can cite
+        AtomicBoolean attached = new AtomicBoolean();
+        return Flux.fromIterable(chunks)
+                .concatMap(chunk -> webClient.post()
+                        .uri("/v1/vector_stores/{vectorStoreId}/file_batches", vectorStoreId)
+                        .bodyValue(Map.of("file_ids", chunk.stream().map(IngestEvent::fileId).toList()))
+                        .retrieve()
+                        .bodyToMono(String.class)
+                        .map(raw -> {
+                            chunk.forEach(event -> fileMetadata.put(event.fileId(), event.filename()));
+                            fileBatches.increment();
+                            attached.set(true);
+                            return IngestEvent.attached(readBatch(raw), chunk.size());
+                        })
+                        .onErrorResume(e -> {
+                            log.warn("Attaching {} files to vector store failed: {}", chunk.size(), e.getMessage());
+                            return Mono.just(new IngestEvent("attachFailed", null, null, null, null, chunk.size(),
+                                    String.valueOf(e.getMessage())));
+                        }))
+                .doOnComplete(() -> {
+                    if (attached.get()) {
+                        answerCache.invalidateAll();
+                    }
+                });
+    }
+
+    private JsonNode readBatch(String raw) {
+        try {
+            return om.readTree(raw);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed parsing file batch JSON: " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean isZip(String filename, String contentType) {
+        return filename.toLowerCase(Locale.ROOT).endsWith(".zip")
+                || "application/zip".equals(contentType)
+                || "application/x-zip-compressed".equals(contentType);
+    }
+
+    private static String baseName(String entryName) {
+        String name = entryName.replace('\\', '/');
+        return name.substring(name.lastIndexOf('/') + 1);
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.debug("Failed deleting spooled bulk file {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static Mono<Void> deleteRecursively(Path dir) {
+        return Mono.<Void>fromRunnable(() -> {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            } catch (IOException e) {
+                log.warn("Failed cleaning up bulk upload directory {}: {}", dir, e.getMessage());
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public String statsName() {
+        return "bulkIngestion";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("files", files.sum());
+        result.put("failedFiles", failedFiles.sum());
+        result.put("fileBatches", fileBatches.sum());
+        return result;
+    }
+
+    // error is set instead of path when the part or archive could not be read
+    private record SpooledFile(String filename, Path path, Throwable error) {
+
+    }
+
+    public record IngestEvent(String event, String filename, String fileId, String batchId, String status,
+                              Integer files, String error) {
+
+        static IngestEvent uploaded(String filename, String fileId) {
+            return new IngestEvent("uploaded", filename, fileId, null, null, null, null);
+        }
+
+        static IngestEvent failed(String filename, Throwable e) {
+            return new IngestEvent("failed", filename, null, null, null, null, String.valueOf(e.getMessage()));
+        }
+
+        static IngestEvent attached(JsonNode batch, int files) {
+            return new IngestEvent("attached", null, null, batch.path("id").asText(null),
+                    batch.path("status").asText(null), files, null);
+        }
+    }
+}
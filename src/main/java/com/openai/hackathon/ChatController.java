@@ -1,26 +1,34 @@
 package com.openai.hackathon;
 
-import static com.openai.hackathon.ChatService.SESSION_CONVERSATION_ID;
-import static com.openai.hackathon.ChatService.currentSession;
-
+import java.net.URI;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.openai.hackathon.BatchChatService.BatchJob;
+import com.openai.hackathon.BatchChatService.BatchResult;
+import com.openai.hackathon.BulkIngestionService.IngestEvent;
+import com.openai.hackathon.IngestionJobService.IngestionJob;
+import com.openai.hackathon.LocalRetrievalService.Passage;
+
 import io.swagger.v3.oas.annotations.tags.Tag;
-import jakarta.servlet.http.HttpSession;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @RestController
 @RequestMapping("/api")
@@ -28,29 +36,61 @@ public class ChatController {
 
     private final ChatService chatService;
     private final LocalLlamaService localLlamaService;
+    private final BatchChatService batchChatService;
+    private final BulkIngestionService bulkIngestionService;
+    private final IngestionJobService ingestionJobService;
+    private final ChatRouter chatRouter;
+    private final LocalRetrievalService retrieval;
+    private final LexicalSearchService search;
 
-    public ChatController(ChatService chatService, LocalLlamaService localLlamaService) {
+    public ChatController(ChatService chatService, LocalLlamaService localLlamaService,
+                          BatchChatService batchChatService, BulkIngestionService bulkIngestionService,
+                          IngestionJobService ingestionJobService, ChatRouter chatRouter,
+                          LocalRetrievalService retrieval, LexicalSearchService search) {
         this.chatService = chatService;
         this.localLlamaService = localLlamaService;
+        this.batchChatService = batchChatService;
+        this.bulkIngestionService = bulkIngestionService;
+        this.ingestionJobService = ingestionJobService;
+        this.chatRouter = chatRouter;
+        this.retrieval = retrieval;
+        this.search = search;
     }
 
     @PostMapping(value = "/chat", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.TEXT_HTML_VALUE)
     @Tag(name = "Chat")
-    public String chat(@RequestBody ChatRequest req) {
+    public Mono<String> chat(@RequestBody ChatRequest req) {
+        if (req == null || req.prompt() == null || req.prompt().isBlank()) {
+            throw new IllegalArgumentException("prompt must not be blank");
+        }
+        return req.isStateless() ? chatService.chatStateless(req.prompt()) : chatService.chat(req.prompt());
+    }
+
+    @PostMapping(value = "/chat/stream", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Tag(name = "Chat")
+    public Flux<ServerSentEvent<Map<String, String>>> chatStream(@RequestBody ChatRequest req) {
         if (req == null || req.prompt() == null || req.prompt().isBlank()) {
             throw new IllegalArgumentException("prompt must not be blank");
         }
-        return chatService.chat(req.prompt());
+        return toEvents(chatService.chatStream(req.prompt()));
     }
 
     @PostMapping(value = "/chat/context", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.TEXT_HTML_VALUE)
     @Tag(name = "Chat")
-    public ResponseEntity<String> chatWithFile(
+    public Mono<ResponseEntity<String>> chatWithFile(
             @RequestPart("prompt") String prompt,
             @RequestPart("file") MultipartFile file
     ) {
-        String answer = chatService.chatWithFile(prompt, file);
-        return ResponseEntity.ok(answer);
+        return chatService.chatWithFile(prompt, file).map(ResponseEntity::ok);
+    }
+
+    @PostMapping(value = "/chat/context/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Tag(name = "Chat")
+    public Flux<ServerSentEvent<Map<String, String>>> chatWithFileStream(
+            @RequestPart("prompt") String prompt,
+            @RequestPart("file") MultipartFile file
+    ) {
+        return toEvents(chatService.chatWithFileStream(prompt, file));
     }
 
     @PostMapping("/chat/reset")
@@ -63,10 +103,8 @@ public class ChatController {
     @GetMapping("/chat/status")
     @Tag(name = "Chat Control")
     public Map<String, Object> getConversationInfo() {
-        HttpSession session = currentSession(false);
-
         Map<String, Object> result = new HashMap<>();
-        Object conversationId = session == null ? null : session.getAttribute(SESSION_CONVERSATION_ID);
+        String conversationId = chatService.currentConversationId();
 
         result.put("conversationId", conversationId);
         result.put("active", conversationId != null);
@@ -80,16 +118,105 @@ public class ChatController {
             produces = MediaType.TEXT_HTML_VALUE
     )
     @Tag(name = "Chat local")
-    public String chatLocal(@RequestBody ChatRequest req) {
+    public Mono<String> chatLocal(@RequestBody ChatRequest req) {
         if (req == null || req.prompt() == null || req.prompt().isBlank()) {
             throw new IllegalArgumentException("prompt must not be blank");
         }
-        return localLlamaService.chat(req.prompt());
+        return req.isStateless() ? localLlamaService.chatStateless(req.prompt()) : localLlamaService.chat(req.prompt());
+    }
+
+    @PostMapping(
+            value = "/chat/local/stream",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE
+    )
+    @Tag(name = "Chat local")
+    public Flux<ServerSentEvent<Map<String, String>>> chatLocalStream(@RequestBody ChatRequest req) {
+        if (req == null || req.prompt() == null || req.prompt().isBlank()) {
+            throw new IllegalArgumentException("prompt must not be blank");
+        }
+        return toEvents(localLlamaService.chatStream(req.prompt()));
+    }
+
+    // the router picks the backend; which one answered and why is reported in the X-Chat-* headers
+    @PostMapping(value = "/chat/auto", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.TEXT_HTML_VALUE)
+    @Tag(name = "Chat auto")
+    public Mono<ResponseEntity<String>> chatAuto(@RequestBody ChatRequest req) {
+        if (req == null || req.prompt() == null || req.prompt().isBlank()) {
+            throw new IllegalArgumentException("prompt must not be blank");
+        }
+        Duration budget = req.budgetMillis() == null ? null : Duration.ofMillis(req.budgetMillis());
+        return chatRouter.chat(req.prompt(), req.isStateless(), req.fileSearch(), budget).map(ChatController::routed);
+    }
+
+    @PostMapping(value = "/chat/auto/context", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.TEXT_HTML_VALUE)
+    @Tag(name = "Chat auto")
+    public Mono<ResponseEntity<String>> chatAutoWithFile(
+            @RequestPart("prompt") String prompt,
+            @RequestPart("file") MultipartFile file
+    ) {
+        return chatRouter.chatWithFile(prompt, file).map(ChatController::routed);
+    }
+
+    private static ResponseEntity<String> routed(ChatRouter.RoutedAnswer routed) {
+        return ResponseEntity.ok()
+                .header("X-Chat-Backend", routed.backend())
+                .header("X-Chat-Route", routed.fallback() ? routed.reason() + ",fallback" : routed.reason())
+                .body(routed.answer());
+    }
+
+    // body is a JSON array or JSON lines of {id, prompt} or {request_id, title, body}
+    @PostMapping(
+            value = "/chat/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_PLAIN_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE
+    )
+    @Tag(name = "Chat Batch")
+    public Flux<BatchResult> chatBatch(
+            @RequestBody String items,
+            @RequestParam(defaultValue = "openai") String backend,
+            @RequestParam(defaultValue = "true") boolean ordered
+    ) {
+        return batchChatService.runInteractive(batchChatService.parseItems(items), backend, ordered);
+    }
+
+    @PostMapping(
+            value = "/chat/batch/offline",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_PLAIN_VALUE},
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @Tag(name = "Chat Batch")
+    public Mono<ResponseEntity<BatchJob>> chatBatchOffline(@RequestBody String items) {
+        return batchChatService.submitOffline(batchChatService.parseItems(items))
+                .map(job -> ResponseEntity.accepted().body(job));
+    }
+
+    @GetMapping(value = "/chat/batch/{batchId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Tag(name = "Chat Batch")
+    public Mono<BatchJob> chatBatchStatus(@PathVariable String batchId) {
+        return batchChatService.status(batchId);
+    }
+
+    @GetMapping(value = "/chat/batch/{batchId}/results", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Tag(name = "Chat Batch")
+    public Flux<BatchResult> chatBatchResults(@PathVariable String batchId) {
+        return batchChatService.results(batchId);
+    }
+
+    // delta events carry the text as JSON so multi-line chunks survive SSE framing
+    private static Flux<ServerSentEvent<Map<String, String>>> toEvents(Flux<String> deltas) {
+        return deltas
+                .map(delta -> ServerSentEvent.builder(Map.of("text", delta)).event("delta").build())
+                .concatWith(Flux.just(ServerSentEvent.builder(Map.<String, String>of()).event("done").build()))
+                .onErrorResume(e -> Flux.just(ServerSentEvent
+                        .builder(Map.of("message", String.valueOf(e.getMessage())))
+                        .event("error")
+                        .build()));
     }
 
     @GetMapping(value = "/vector-store/files", produces = MediaType.APPLICATION_JSON_VALUE)
     @Tag(name = "Files")
-    public List<FileInfo> listVectorStoreFiles() {
+    public Mono<List<FileInfo>> listVectorStoreFiles() {
         return chatService.listVectorStoreFilesWithIds();
     }
 
@@ -97,21 +224,75 @@ public class ChatController {
 
     }
 
-    @PostMapping(value = "/vector-store/files", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PostMapping(value = "/vector-store/files", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    @Tag(name = "Files")
+    public Mono<Map<String, String>> addFileToVectorStore(@RequestPart("file") MultipartFile file) {
+        return chatService.addFileToVectorStore(file).map(id -> Map.of("fileId", id));
+    }
+
+    // any number of files and/or zip archives; one NDJSON event per file, then one per file batch
+    @PostMapping(
+            value = "/vector-store/files/bulk",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE
+    )
+    @Tag(name = "Files")
+    public Flux<IngestEvent> addFilesToVectorStore(@RequestPart("files") List<MultipartFile> files) {
+        return bulkIngestionService.ingest(files);
+    }
+
+    // returns as soon as the upload is spooled; upload, attach and processing continue in the background
+    @PostMapping(value = "/vector-store/jobs", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    @Tag(name = "Files")
+    public ResponseEntity<IngestionJob> submitIngestionJob(@RequestPart("file") MultipartFile file) {
+        IngestionJob job = ingestionJobService.submit(file);
+        return ResponseEntity.accepted().location(URI.create("/api/vector-store/jobs/" + job.id())).body(job);
+    }
+
+    @GetMapping(value = "/vector-store/jobs/{jobId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Tag(name = "Files")
+    public ResponseEntity<IngestionJob> getIngestionJob(@PathVariable String jobId) {
+        IngestionJob job = ingestionJobService.get(jobId);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    @GetMapping(value = "/vector-store/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Tag(name = "Files")
+    public ResponseEntity<Flux<ServerSentEvent<IngestionJob>>> ingestionJobEvents(@PathVariable String jobId) {
+        if (ingestionJobService.get(jobId) == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(ingestionJobService.events(jobId)
+                .map(job -> ServerSentEvent.builder(job).event(job.status().name().toLowerCase()).build()));
+    }
+
+    // what the local backend would get as document context for a prompt
+    @GetMapping(value = "/retrieval/search", produces = MediaType.APPLICATION_JSON_VALUE)
     @Tag(name = "Files")
-    public ResponseEntity<String> addFileToVectorStore(@RequestPart("file") MultipartFile file) {
-        var id = chatService.addFileToVectorStore(file);
-        return ResponseEntity.ok().body("{\"fileId\":" + id);
+    public Mono<List<Passage>> searchLocalIndex(@RequestParam String q, @RequestParam(defaultValue = "4") int k) {
+        return retrieval.search(q, Math.max(1, Math.min(k, 50)));
+    }
+
+    // exact-term (BM25) hits over the same documents, in-process and synchronous
+    @GetMapping(value = "/search", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Tag(name = "Files")
+    public List<Passage> search(@RequestParam String q, @RequestParam(defaultValue = "4") int k) {
+        return search.search(q, Math.max(1, Math.min(k, 50)));
     }
 
     @DeleteMapping(value = "/vector-store/files/{fileId}")
     @Tag(name = "Files")
-    public ResponseEntity<Void> deleteVectorStoreFile(@PathVariable String fileId) {
-        chatService.removeFileFromVectorStore(fileId);
-        return ResponseEntity.noContent().build(); // 204
+    public Mono<ResponseEntity<Void>> deleteVectorStoreFile(@PathVariable String fileId) {
+        return chatService.removeFileFromVectorStore(fileId)
+                .then(Mono.fromSupplier(() -> ResponseEntity.noContent().<Void>build())); // 204
     }
 
-    public record ChatRequest(String prompt) {
+    // stateless prompts skip the conversation/history and are answered from the answer cache when possible;
+    // fileSearch and budgetMillis are only read by /chat/auto
+    public record ChatRequest(String prompt, Boolean stateless, Boolean fileSearch, Long budgetMillis) {
 
+        boolean isStateless() {
+            return Boolean.TRUE.equals(stateless);
+        }
     }
 }
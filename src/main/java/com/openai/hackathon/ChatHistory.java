@@ -0,0 +1,144 @@
+package com.openai.hackathon;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public final class ChatHistory {
+
+    // rough chars-per-token ratio of the local model's tokenizer plus per-message framing
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    static final String SUMMARY_PREFIX = "Summary of the earlier conversation:\n";
+
+    private final String key;
+    private final Map<String, String> system;
+    private final int maxTokens;
+    private final boolean keepDropped;
+
+    private final ArrayDeque<Map<String, String>> window = new ArrayDeque<>();
+    private final List<Map<String, String>> dropped = new ArrayList<>();
+    private Map<String, String> summary;
+    private int windowTokens;
+    private boolean summarizing;
+    private long version;
+
+    public ChatHistory(Map<String, String> system, int maxTokens, boolean keepDropped) {
+        this(null, system, maxTokens, keepDropped);
+    }
+
+    // key: the session the history is stored under, null for a throwaway history
+    public ChatHistory(String key, Map<String, String> system, int maxTokens, boolean keepDropped) {
+        this.key = key;
+        this.system = system;
+        this.maxTokens = maxTokens;
+        this.keepDropped = keepDropped;
+    }
+
+    public synchronized List<Map<String, String>> snapshotWith(Map<String, String> userMessage) {
+        List<Map<String, String>> snapshot = new ArrayList<>(window.size() + 3);
+        snapshot.add(system);
+        if (summary != null) snapshot.add(summary);
+        snapshot.addAll(window);
+        snapshot.add(userMessage);
+        return snapshot;
+    }
+
+    // returns the number of messages that fell out of the window
+    public synchronized int append(Map<String, String> userMessage, Map<String, String> assistantMessage) {
+        window.addLast(userMessage);
+        window.addLast(assistantMessage);
+        windowTokens += estimateTokens(userMessage) + estimateTokens(assistantMessage);
+
+        int budget = maxTokens - estimateTokens(system) - (summary == null ? 0 : estimateTokens(summary));
+        int removed = 0;
+        // turns leave in user/assistant pairs, the latest turn always stays
+        while (windowTokens > budget && window.size() > 2) {
+            for (int i = 0; i < 2; i++) {
+                Map<String, String> oldest = window.removeFirst();
+                windowTokens -= estimateTokens(oldest);
+                if (keepDropped) dropped.add(oldest);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    // a stored window, possibly continued on another node, with a turn appended and trimmed like append() trims
+    List<Map<String, String>> appendTo(List<Map<String, String>> stored, String storedSummary,
+                                       Map<String, String> userMessage, Map<String, String> assistantMessage) {
+        ArrayDeque<Map<String, String>> messages = new ArrayDeque<>(stored);
+        messages.addLast(userMessage);
+        messages.addLast(assistantMessage);
+        int tokens = 0;
+        for (Map<String, String> message : messages) {
+            tokens += estimateTokens(message);
+        }
+
+        int budget = maxTokens - estimateTokens(system)
+                - (storedSummary == null ? 0 : estimateTokens(Map.of("content", SUMMARY_PREFIX + storedSummary)));
+        while (tokens > budget && messages.size() > 2) {
+            tokens -= estimateTokens(messages.removeFirst());
+            tokens -= estimateTokens(messages.removeFirst());
+        }
+        return List.copyOf(messages);
+    }
+
+    // a stored window, before any new turn
+    synchronized void restore(String summaryText, List<Map<String, String>> messages, long version) {
+        this.version = version;
+        summarized(summaryText);
+        for (Map<String, String> message : messages) {
+            window.addLast(message);
+            windowTokens += estimateTokens(message);
+        }
+    }
+
+    synchronized List<Map<String, String>> window() {
+        return List.copyOf(window);
+    }
+
+    String key() {
+        return key;
+    }
+
+    // the version of the session state this history was restored from or last stored as
+    synchronized long version() {
+        return version;
+    }
+
+    synchronized void stored(long version) {
+        this.version = Math.max(this.version, version);
+    }
+
+    synchronized List<Map<String, String>> takeForSummary() {
+        if (summarizing || dropped.isEmpty()) {
+            return List.of();
+        }
+        summarizing = true;
+        List<Map<String, String>> batch = List.copyOf(dropped);
+        dropped.clear();
+        return batch;
+    }
+
+    synchronized String summaryText() {
+        return summary == null ? null : summary.get("content").substring(SUMMARY_PREFIX.length());
+    }
+
+    synchronized void summarized(String text) {
+        if (text != null && !text.isBlank()) {
+            summary = Map.of("role", "system", "content", SUMMARY_PREFIX + text.trim());
+        }
+        summarizing = false;
+    }
+
+    public synchronized int size() {
+        return window.size();
+    }
+
+    static int estimateTokens(Map<String, String> message) {
+        return message.get("content").length() / CHARS_PER_TOKEN + MESSAGE_OVERHEAD_TOKENS;
+    }
+}
@@ -0,0 +1,277 @@
+package com.openai.hackathon;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+
+/*
+ * Picks OpenAI or the local model per prompt. Attachments, file search and prompts too large for the local
+ * context always go to OpenAI. Everything else goes to the preferred backend unless its rolling error rate
+ * is too high or its rolling p95 does not fit the latency budget while the other one does. The other
+ * backend is the fallback for stateless prompts: on an error right away, at the deadline it is hedged (first
+ * answer wins). A conversation turn that was sent may already be in the primary's history, OpenAI's
+ * conversation or the local one, and the other backend would answer without it: it runs past the deadline
+ * and fails over only when the request never left this node (connection refused, overloaded limiter).
+ * Routes without a fallback are cut off at the deadline.
+ */
+@Service
+public class ChatRouter implements StatsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatRouter.class);
+
+    static final String OPENAI = "openai";
+    static final String LOCAL = "local";
+
+    private final ChatService chatService;
+    private final LocalLlamaService localLlamaService;
+    private final RouterProps props;
+
+    private final Map<String, Window> windows = Map.of(OPENAI, new Window(), LOCAL, new Window());
+    private final Map<String, LongAdder> decisions = new LinkedHashMap<>();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+    private final LongAdder deadlineMisses = new LongAdder();
+
+    public ChatRouter(ChatService chatService, LocalLlamaService localLlamaService, RouterProps props) {
+        this.chatService = chatService;
+        this.localLlamaService = localLlamaService;
+        this.props = props;
+        for (String backend : new String[]{OPENAI, LOCAL}) {
+            for (Reason reason : Reason.values()) {
+                decisions.put(backend + "." + reason.key, new LongAdder());
+            }
+        }
+    }
+
+    public Mono<RoutedAnswer> chat(String prompt, boolean stateless, Boolean fileSearch, Duration budget) {
+        Duration deadline = budget != null ? budget : props.budget();
+        Decision decision = decide(prompt, fileSearch != null ? fileSearch : props.fileSearchByDefault(), false, deadline);
+
+        // both calls are assembled here, on the request thread, where the services find the HTTP session
+        Mono<String> primary = call(decision.primary(), prompt, stateless);
+        Mono<String> fallback = decision.fallback() == null ? null : call(decision.fallback(), prompt, stateless);
+        return execute(decision, primary, fallback, stateless && props.hedge(), deadline);
+    }
+
+    public Mono<RoutedAnswer> chatWithFile(String prompt, MultipartFile file) {
+        Decision decision = decide(prompt, false, true, props.budget());
+        return execute(decision, chatService.chatWithFile(prompt, file), null, false, props.budget());
+    }
+
+    private Mono<String> call(String backend, String prompt, boolean stateless) {
+        if (OPENAI.equals(backend)) {
+            return stateless ? chatService.chatStateless(prompt) : chatService.chat(prompt);
+        }
+        return stateless ? localLlamaService.chatStateless(prompt) : localLlamaService.chat(prompt);
+    }
+
+    Decision decide(String prompt, boolean fileSearch, boolean attachment, Duration budget) {
+        Decision decision;
+        if (attachment) {
+            decision = new Decision(OPENAI, null, Reason.ATTACHMENT);
+        } else if (fileSearch) {
+            decision = new Decision(OPENAI, null, Reason.FILE_SEARCH);
+        } else if (ChatHistory.estimateTokens(Map.of("content", prompt)) > props.localMaxPromptTokens()) {
+            decision = new Decision(OPENAI, null, Reason.PROMPT_SIZE);
+        } else {
+            String preferred = LOCAL.equals(props.prefer()) ? LOCAL : OPENAI;
+            String other = LOCAL.equals(preferred) ? OPENAI : LOCAL;
+            Health p = windows.get(preferred).health(props.window());
+            Health o = windows.get(other).health(props.window());
+
+            if (failing(p) && !failing(o)) {
+                decision = new Decision(other, preferred, Reason.ERROR_RATE);
+            } else if (p.p95Nanos() > budget.toNanos() && o.p95Nanos() < p.p95Nanos() && !failing(o)) {
+                decision = new Decision(other, preferred, Reason.LATENCY);
+            } else {
+                decision = new Decision(preferred, other, Reason.PREFERRED);
+            }
+        }
+        decisions.get(decision.primary() + "." + decision.reason().key).increment();
+        return decision;
+    }
+
+    private boolean failing(Health health) {
+        return health.samples() >= props.minSamples() && health.errorRate() > props.maxErrorRate();
+    }
+
+    Mono<RoutedAnswer> execute(Decision decision, Mono<String> primary, Mono<String> fallback, boolean hedge, Duration budget) {
+        Mono<RoutedAnswer> first = timed(decision.primary(), primary)
+                .map(answer -> new RoutedAnswer(decision.primary(), decision.reason().key, false, answer));
+        if (fallback == null) {
+            return first.timeout(budget).doOnError(TimeoutException.class, e -> deadlineMisses.increment());
+        }
+
+        AtomicBoolean fallbackStarted = new AtomicBoolean();
+        Mono<RoutedAnswer> second = timed(decision.fallback(), fallback)
+                .map(answer -> new RoutedAnswer(decision.fallback(), decision.reason().key, true, answer))
+                .doOnSubscribe(s -> fallbackStarted.set(true))
+                .cache();
+
+        if (!hedge) {
+            return Mono.defer(() -> {
+                        long started = System.nanoTime();
+                        return first.doOnSuccess(answer -> {
+                            if (System.nanoTime() - started > budget.toNanos()) {
+                                deadlineMisses.increment();
+                            }
+                        });
+                    })
+                    .onErrorResume(ChatRouter::notSent, e -> {
+                        failovers.increment();
+                        log.debug("{} not reachable ({}), failing over to {}", decision.primary(), e.toString(), decision.fallback());
+                        return second;
+                    });
+        }
+
+        Mono<RoutedAnswer> primaryOrFailover = first.onErrorResume(e -> {
+            failovers.increment();
+            log.debug("{} failed ({}), failing over to {}", decision.primary(), e.toString(), decision.fallback());
+            return second;
+        });
+        Mono<RoutedAnswer> hedged = Mono.delay(budget).then(Mono.defer(() -> {
+            if (fallbackStarted.get()) {
+                return Mono.<RoutedAnswer>empty(); // already failed over, nothing to hedge
+            }
+            deadlineMisses.increment();
+            hedges.increment();
+            return second.doOnNext(answer -> hedgeWins.increment());
+        }));
+
+        // empty hedges drop out; when every source fails, surface the real upstream error
+        return Mono.firstWithValue(primaryOrFailover, hedged)
+                .onErrorMap(NoSuchElementException.class, e -> e.getCause() == null
+                        ? e
+                        : Exceptions.unwrapMultiple(e.getCause()).getFirst());
+    }
+
+    // the request never left this node, so nothing can have been added to a conversation
+    static boolean notSent(Throwable e) {
+        if (e instanceof UpstreamOverloadedException) {
+            return true;
+        }
+        if (!(e instanceof WebClientRequestException)) {
+            return false;
+        }
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof UnknownHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Mono<String> timed(String backend, Mono<String> call) {
+        Window window = windows.get(backend);
+        return Mono.defer(() -> {
+            long started = System.nanoTime();
+            return call
+                    .doOnSuccess(answer -> window.add(System.nanoTime() - started, false))
+                    .doOnError(e -> window.add(System.nanoTime() - started, true))
+                    // a cancelled call was at least this slow
+                    .doOnCancel(() -> window.add(System.nanoTime() - started, false));
+        });
+    }
+
+    // a sample as if a routed call had just finished
+    void record(String backend, Duration latency, boolean error) {
+        windows.get(backend).add(latency.toNanos(), error);
+    }
+
+    @Override
+    public String statsName() {
+        return "router";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        decisions.forEach((key, count) -> result.put("routed." + key, count.sum()));
+        result.put("hedges", hedges.sum());
+        result.put("hedgeWins", hedgeWins.sum());
+        result.put("failovers", failovers.sum());
+        result.put("deadlineMisses", deadlineMisses.sum());
+        windows.forEach((backend, window) -> {
+            Health health = window.health(props.window());
+            Map<String, Object> b = new LinkedHashMap<>();
+            b.put("samples", health.samples());
+            b.put("p95Millis", health.p95Nanos() / 1_000_000);
+            b.put("errorRate", health.errorRate());
+            result.put(backend, b);
+        });
+        return result;
+    }
+
+    enum Reason {
+        ATTACHMENT("attachment"), FILE_SEARCH("fileSearch"), PROMPT_SIZE("promptSize"),
+        PREFERRED("preferred"), LATENCY("latency"), ERROR_RATE("errorRate");
+
+        final String key;
+
+        Reason(String key) {
+            this.key = key;
+        }
+    }
+
+    record Decision(String primary, String fallback, Reason reason) {}
+
+    public record RoutedAnswer(String backend, String reason, boolean fallback, String answer) {}
+
+    record Health(int samples, long p95Nanos, double errorRate) {}
+
+    // the last SIZE calls of one backend; samples older than the window no longer count
+    static final class Window {
+
+        private static final int SIZE = 256;
+
+        private final long[] at = new long[SIZE];
+        private final long[] latencies = new long[SIZE];
+        private final boolean[] errors = new boolean[SIZE];
+        private int next;
+        private int count;
+
+        synchronized void add(long latencyNanos, boolean error) {
+            at[next] = System.nanoTime();
+            latencies[next] = latencyNanos;
+            errors[next] = error;
+            next = (next + 1) % SIZE;
+            count = Math.min(count + 1, SIZE);
+        }
+
+        synchronized Health health(Duration window) {
+            long cutoff = System.nanoTime() - window.toNanos();
+            long[] recent = new long[count];
+            int n = 0;
+            int failed = 0;
+            for (int i = 0; i < count; i++) {
+                if (at[i] - cutoff >= 0) {
+                    recent[n++] = latencies[i];
+                    if (errors[i]) failed++;
+                }
+            }
+            if (n == 0) {
+                return new Health(0, 0, 0);
+            }
+            Arrays.sort(recent, 0, n);
+            long p95 = recent[Math.min(n - 1, (int) Math.ceil(0.95 * n) - 1)];
+            return new Health(n, p95, (double) failed / n);
+        }
+    }
+}
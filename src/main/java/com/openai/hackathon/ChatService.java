@@ -1,247 +1,429 @@
 package com.openai.hackathon;
 
 import static com.openai.hackathon.Constants.DEV_PROMPT;
+import static com.openai.hackathon.ResponsesPayloads.inputText;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.MediaType;
-import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.context.request.RequestContextHolder;
-import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.multipart.MultipartFile;
-import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.openai.hackathon.ChatController.FileInfo;
+import com.openai.hackathon.ResponsesParser.ParsedResponse;
 
-import jakarta.servlet.http.HttpServletRequest;
-import jakarta.servlet.http.HttpSession;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 @Service
 public class ChatService {
 
     private static final Logger log = LoggerFactory.getLogger(ChatService.class);
 
-    public static final String SESSION_CONVERSATION_ID = "openai_conversation_id";
-
-    private String conversationId;
-
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE =
+            new ParameterizedTypeReference<>() {
+            };
+
+    private static final String COMPACTION_INSTRUCTION = """
+            Summarize this conversation so it can be continued in a new one.
+            Keep names, numbers, document references, decisions and open questions. Answer with the summary only.
+            """;
+
+    private final ConversationRegistry conversations;
+    private final FileMetadataCache fileMetadata;
+    private final FileUploadService fileUploads;
+    private final LexicalSearchService search;
+    private final AnswerCache answerCache;
+    private final SingleFlight singleFlight;
+    private final UpstreamMetrics metrics;
     private final WebClient webClient;
     private final ObjectMapper om = new ObjectMapper();
+    private final ResponsesPayloads payloads;
     private final String model;
     private final String vectorStoreId;
+    private final OpenAIProps.Files files;
+    private final int maxResponseBytes;
+    private final long compactAboveTokens;
+    private final int summaryMaxTokens;
+    // sessions with a compaction running, and input tokens before compaction by successor conversation
+    private final Set<String> compacting = ConcurrentHashMap.newKeySet();
+    private final Cache<String, Long> compactedFrom;
+
+    public ChatService(OpenAIProps props, ConversationRegistry conversations, FileMetadataCache fileMetadata,
+                       FileUploadService fileUploads, LexicalSearchService search, AnswerCache answerCache,
+                       SingleFlight singleFlight, UpstreamMetrics metrics, WebClient openAiWebClient) {
+        this.payloads = ResponsesPayloads.of(props);
+        this.model = payloads.model();
+        this.vectorStoreId = payloads.vectorStoreId();
+        this.files = props.files();
+        this.maxResponseBytes = (int) props.http().maxInMemorySize().toBytes();
+        this.compactAboveTokens = props.conversations().compactAboveTokens();
+        this.summaryMaxTokens = props.conversations().summaryMaxTokens();
+        this.compactedFrom = Caffeine.newBuilder()
+                .maximumSize(props.conversations().maxSize())
+                .expireAfterWrite(props.conversations().idleTtl())
+                .build();
+        this.conversations = conversations;
+        this.fileMetadata = fileMetadata;
+        this.fileUploads = fileUploads;
+        this.search = search;
+        this.answerCache = answerCache;
+        this.singleFlight = singleFlight;
+        this.metrics = metrics;
+        this.webClient = openAiWebClient;
+    }
 
-    public ChatService(OpenAIProps props) {
-        if (props == null || props.apiKey() == null || props.apiKey().isBlank()) {
-            throw new IllegalStateException("Missing OpenAI API key. Set openai.api-key (or env mapping to it).");
-        }
+    public Mono<String> chat(String prompt) {
+        String session = SessionKeys.current(true);
 
-        String baseUrl = (props.baseUrl() == null || props.baseUrl().isBlank())
-                ? "https://api.openai.com"
-                : props.baseUrl().trim();
+        return ensureConversation(session)
+                .flatMap(conversationId -> {
+                    Map<String, Object> payload = withSearchContext(payloads.turn(conversationId, List.of(inputText(prompt))), prompt);
+                    return responses(payload).doOnNext(parsed -> afterTurn(session, payload, parsed.usage().inputTokens()));
+                })
+                .map(ParsedResponse::text);
+    }
 
-        this.model = (props.model() == null || props.model().isBlank())
-                ? "gpt-4.1-mini"
-                : props.model().trim();
+    // no conversation: the answer depends on the prompt alone and may be served from the answer cache
+    public Mono<String> chatStateless(String prompt) {
+        String key = AnswerCache.key("openai", model, vectorStoreId, DEV_PROMPT, prompt);
 
-        this.vectorStoreId = props.vectorStoreId() == null ? "" : props.vectorStoreId().trim();
+        return answerCache.getOrCompute(key, () -> {
+            Map<String, Object> payload = statelessPayload(prompt);
 
-        this.webClient = WebClient.builder()
-                .baseUrl(baseUrl)
-                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + props.apiKey().trim())
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .build();
+            return singleFlight.run(singleFlight.fingerprint("POST", "/v1/responses", payload),
+                    () -> responses(payload).map(ParsedResponse::text));
+        });
     }
 
-    public String chat(String prompt) {
-        HttpSession session = currentSession(true);
-
-        if (conversationId == null || conversationId.isBlank()) {
-            conversationId = createConversation();
-            if (session != null) {
-                session.setAttribute(SESSION_CONVERSATION_ID, conversationId);
-            }
-        }
+    // also the per-line body of offline batch jobs
+    Map<String, Object> statelessPayload(String prompt) {
+        return withSearchContext(payloads.stateless(prompt), prompt);
+    }
 
-        Map<String, Object> payload = new java.util.LinkedHashMap<>();
-        payload.put("model", model);
-        payload.put("conversation", conversationId);
-        payload.put("input", List.of(
-                Map.of(
-                        "role", "user",
-                        "content", List.of(Map.of("type", "input_text", "text", prompt))
-                )
-        ));
+    public Flux<String> chatStream(String prompt) {
+        String session = SessionKeys.current(true);
 
-        if (!vectorStoreId.isBlank()) {
-            payload.put("tools", List.of(
-                    Map.of(
-                            "type", "file_search",
-                            "vector_store_ids", List.of(vectorStoreId)
-                    )
-            ));
-        }
-
-        String raw = webClient.post()
-                .uri("/v1/responses")
-                .bodyValue(payload)
-                .retrieve()
-                .bodyToMono(String.class)
-                .block();
-
-        if (raw == null || raw.isBlank()) throw new IllegalStateException("Empty response from OpenAI");
+        return ensureConversation(session)
+                .flatMapMany(conversationId -> streamResponse(session, withSearchContext(payloads.turn(conversationId,
+                        List.of(inputText(prompt))), prompt)));
+    }
 
-        try {
-            JsonNode root = om.readTree(raw);
+    public Mono<String> chatWithFile(String prompt, MultipartFile file) {
+        validateChatWithFile(prompt, file);
+
+        String session = SessionKeys.current(true);
+
+        // conversation creation and the upload (-> file_id) are independent, run them side by side
+        return Mono.zip(ensureConversation(session), fileUploads.upload(file))
+                .flatMap(t -> {
+                    String conversationId = t.getT1();
+                    String fileId = t.getT2();
+
+                    // Call Responses API with input_file included in this turn
+                    Map<String, Object> payload = withSearchContext(payloads.turn(conversationId, List.of(
+                            inputText(prompt),
+                            Map.of("type", "input_file", "file_id", fileId)
+                    )), prompt);
+
+                    return responses(payload)
+                            .doOnNext(parsed -> afterTurn(session, payload, parsed.usage().inputTokens()))
+                            .doOnError(WebClientResponseException.class, e -> log.error(
+                                    "OpenAI /v1/responses failed. status={} responseBody={}. payload(model={}, conversationId={}, filename={}, size={})",
+                                    e.getStatusCode().value(),
+                                    safeBody(e),
+                                    model,
+                                    conversationId,
+                                    file.getOriginalFilename(),
+                                    file.getSize(),
+                                    e
+                            ));
+                })
+                .map(ParsedResponse::text);
+    }
 
-            String outputText = root.path("output_text").asText(null);
-            if (outputText != null && !outputText.isBlank()) return outputText;
+    public Flux<String> chatWithFileStream(String prompt, MultipartFile file) {
+        validateChatWithFile(prompt, file);
 
-            return extractOutputText(root);
+        String session = SessionKeys.current(true);
 
-        } catch (Exception e) {
-            throw new IllegalStateException("Failed parsing OpenAI response JSON: " + e.getMessage(), e);
-        }
+        return Mono.zip(ensureConversation(session), fileUploads.upload(file))
+                .flatMapMany(t -> streamResponse(session, withSearchContext(payloads.turn(t.getT1(), List.of(
+                        inputText(prompt),
+                        Map.of("type", "input_file", "file_id", t.getT2())
+                )), prompt)));
     }
 
-    public String chatWithFile(String prompt, MultipartFile file) {
+    private static void validateChatWithFile(String prompt, MultipartFile file) {
         if (prompt == null || prompt.isBlank()) {
             throw new IllegalArgumentException("prompt must not be blank");
         }
         if (file == null || file.isEmpty()) {
             throw new IllegalArgumentException("file must not be empty");
         }
+    }
 
-        HttpSession session = currentSession(true);
-
-        // ensure conversation id exists (same approach as chat())
-        if (conversationId == null || conversationId.isBlank()) {
-            conversationId = createConversation();
-            if (session != null) session.setAttribute(SESSION_CONVERSATION_ID, conversationId);
+    // the session has to be resolved on the request thread, the returned Mono may run elsewhere
+    private Mono<String> ensureConversation(String session) {
+        if (session == null) {
+            return createConversation(null);
         }
+        return conversations.getOrCreate(session, () -> createConversation(null));
+    }
 
-        // 1) Upload file -> file_id
-        MultipartBodyBuilder mb = new MultipartBodyBuilder();
-        mb.part("purpose", "assistants");
-        Resource resource = file.getResource();
-        mb.part("file", resource)
-                .filename(file.getOriginalFilename() != null ? file.getOriginalFilename() : "upload.bin");
+    /*
+     * The input tokens of a turn are the whole conversation so far, re-processed on every turn. Past
+     * compact-above-tokens the conversation is summarized in the background and the session switched to a new
+     * one that starts with the prompt and the summary. The summary is a stateless request over the items read
+     * from the conversation, so nothing is added to it; turns answered while it is written are copied over.
+     */
+    private void afterTurn(String session, Map<String, Object> payload, long inputTokens) {
+        if (!(payload.get("conversation") instanceof String conversationId)) {
+            return;
+        }
+        Long before = compactedFrom.asMap().remove(conversationId);
+        if (before != null) {
+            log.info("First turn of compacted conversation {}: {} input tokens, {} before compaction", conversationId, inputTokens, before);
+        }
+        if (session == null || compactAboveTokens <= 0 || inputTokens < compactAboveTokens || !compacting.add(session)) {
+            return;
+        }
+
+        log.info("Conversation {} reached {} input tokens, compacting it", conversationId, inputTokens);
+        long started = System.nanoTime();
+        summarize(conversationId)
+                .flatMap(summary -> createConversation(summary.response().text())
+                        .flatMap(successor -> carryOver(conversationId, summary.lastItemId(), successor).thenReturn(successor))
+                        .zipWith(Mono.just(summary.response().usage().outputTokens())))
+                .publishOn(Schedulers.boundedElastic())
+                .doFinally(signal -> compacting.remove(session))
+                .subscribe(
+                        t -> {
+                            String successor = t.getT1();
+                            if (conversations.replace(session, conversationId, successor)) {
+                                compactedFrom.put(successor, inputTokens);
+                                log.info("Compacted conversation {} ({} input tokens) into {} with a {} token summary in {} ms",
+                                        conversationId, inputTokens, successor, t.getT2(), elapsedMillis(started));
+                            }
+                        },
+                        e -> log.warn("Compacting conversation {} failed, the session stays on it: {}", conversationId, e.getMessage()));
+    }
 
-        MultiValueMap<String, HttpEntity<?>> multipartBody = mb.build();
+    // the summarized items' last id marks where turns added meanwhile begin
+    private Mono<Summary> summarize(String conversationId) {
+        return conversationItems(conversationId, null).flatMap(items -> {
+            if (items.isEmpty()) {
+                return Mono.error(new IllegalStateException("Conversation " + conversationId + " has no items"));
+            }
+            List<Map<String, Object>> input = new ArrayList<>();
+            for (JsonNode item : items) {
+                input.add(Map.of("role", item.path("role").asText(), "content", itemText(item)));
+            }
+            input.add(Map.of("role", "user", "content", List.of(inputText("Summarize our conversation so far."))));
+
+            Map<String, Object> payload = new LinkedHashMap<>();
+            payload.put("model", model);
+            payload.put("instructions", COMPACTION_INSTRUCTION);
+            payload.put("input", input);
+            payload.put("max_output_tokens", summaryMaxTokens);
+            payload.put("store", false);
+
+            return responses(payload).map(parsed -> {
+                if (parsed.text().isBlank() || ResponsesParser.NO_TEXT_OUTPUT.equals(parsed.text())) {
+                    throw new IllegalStateException("No summary returned");
+                }
+                return new Summary(parsed, items.getLast().path("id").asText());
+            });
+        });
+    }
 
-        final String uploadRaw;
-        try {
-            uploadRaw = webClient.post()
-                    .uri("/v1/files")
-                    .contentType(MediaType.MULTIPART_FORM_DATA)
-                    .body(BodyInserters.fromMultipartData(multipartBody))
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block();
-        } catch (WebClientResponseException e) {
-            // This prints OpenAI's real error JSON + full stacktrace
-            log.error(
-                    "OpenAI /v1/files failed. status={} responseBody={}",
-                    e.getStatusCode().value(),
-                    safeBody(e),
-                    e
-            );
-            throw e;
-        }
+    private record Summary(ParsedResponse response, String lastItemId) {
 
-        if (uploadRaw == null || uploadRaw.isBlank()) {
-            throw new IllegalStateException("Empty response from OpenAI files upload");
-        }
+    }
 
-        final String fileId;
-        try {
-            fileId = om.readTree(uploadRaw).path("id").asText(null);
-        } catch (Exception e) {
-            throw new IllegalStateException("Failed parsing file upload JSON: " + e.getMessage(), e);
-        }
-        if (fileId == null || fileId.isBlank()) {
-            throw new IllegalStateException("OpenAI did not return a file id");
-        }
+    // the turns answered on the old conversation after the summary was read, in at most 20 items per request
+    private Mono<Void> carryOver(String conversationId, String lastItemId, String successor) {
+        return conversationItems(conversationId, lastItemId)
+                .flatMapMany(items -> Flux.fromIterable(items).buffer(20))
+                .concatMap(batch -> {
+                    List<Map<String, Object>> items = new ArrayList<>();
+                    for (JsonNode item : batch) {
+                        items.add(Map.of("type", "message", "role", item.path("role").asText(), "content", itemText(item)));
+                    }
+                    return webClient.post()
+                            .uri("/v1/conversations/{id}/items", successor)
+                            .bodyValue(Map.of("items", items))
+                            .retrieve()
+                            .toBodilessEntity();
+                })
+                .then();
+    }
 
-        // 2) Call Responses API with input_file included in this turn
-        Map<String, Object> payload = new java.util.LinkedHashMap<>();
-        if (!vectorStoreId.isBlank()) {
-            payload.put("tools", List.of(
-                    Map.of(
-                            "type", "file_search",
-                            "vector_store_ids", List.of(vectorStoreId)
-                    )
-            ));
-        }
-        payload.put("model", model);
-        payload.put("conversation", conversationId);
-        payload.put("input", List.of(
-                Map.of(
-                        "role", "user",
-                        "content", List.of(
-                                Map.of("type", "input_text", "text", prompt),
-                                Map.of("type", "input_file", "file_id", fileId)
-                        )
-                )
-        ));
+    // the message items of a conversation after the given item id, oldest first
+    private Mono<List<JsonNode>> conversationItems(String conversationId, String after) {
+        return itemsPage(conversationId, after)
+                .expand(page -> page.hasMore() && page.lastId() != null ? itemsPage(conversationId, page.lastId()) : Mono.empty())
+                .concatMapIterable(ItemPage::items)
+                .collectList();
+    }
 
-        final String raw;
-        try {
-            raw = webClient.post()
-                    .uri("/v1/responses")
-                    .bodyValue(payload)
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block();
-        } catch (WebClientResponseException e) {
-            log.error(
-                    "OpenAI /v1/responses failed. status={} responseBody={}. payload(model={}, conversationId={}, filename={}, size={})",
-                    e.getStatusCode().value(),
-                    safeBody(e),
-                    model,
-                    conversationId,
-                    file.getOriginalFilename(),
-                    file.getSize(),
-                    e
-            );
-            throw e;
-        }
+    private Mono<ItemPage> itemsPage(String conversationId, String after) {
+        return webClient.get()
+                .uri(uri -> {
+                    uri.path("/v1/conversations/{id}/items").queryParam("order", "asc").queryParam("limit", 100);
+                    if (after != null) uri.queryParam("after", after);
+                    return uri.build(conversationId);
+                })
+                .retrieve()
+                .bodyToMono(String.class)
+                .doOnError(WebClientResponseException.class, e -> log.error(
+                        "OpenAI list conversation items failed. status={} body={}",
+                        e.getStatusCode().value(), safeBody(e), e))
+                .map(raw -> {
+                    try {
+                        JsonNode root = om.readTree(raw);
+                        List<JsonNode> items = new ArrayList<>();
+                        for (JsonNode item : root.path("data")) {
+                            if ("message".equals(item.path("type").asText())) items.add(item);
+                        }
+                        return new ItemPage(items, root.path("has_more").asBoolean(false), root.path("last_id").asText(null));
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Failed parsing OpenAI conversation items response", e);
+                    }
+                });
+    }
+
+    private record ItemPage(List<JsonNode> items, boolean hasMore, String lastId) {
+
+    }
 
-        if (raw == null || raw.isBlank()) {
-            throw new IllegalStateException("Empty response from OpenAI");
+    // the text parts of a message item as input content; what the assistant said goes back in as output_text
+    private static List<Map<String, String>> itemText(JsonNode item) {
+        String type = "assistant".equals(item.path("role").asText()) ? "output_text" : "input_text";
+        List<Map<String, String>> content = new ArrayList<>();
+        for (JsonNode part : item.path("content")) {
+            if (part.has("text")) {
+                content.add(Map.of("type", type, "text", part.path("text").asText()));
+            }
         }
+        return content;
+    }
 
-        try {
-            var root = om.readTree(raw);
-            String outputText = root.path("output_text").asText(null);
-            if (outputText != null && !outputText.isBlank()) return outputText;
-            return extractOutputText(root);
-        } catch (Exception e) {
-            throw new IllegalStateException("Failed parsing OpenAI response JSON: " + e.getMessage(), e);
+    public String currentConversationId() {
+        String session = SessionKeys.current(false);
+        return session == null ? null : conversations.peek(session);
+    }
+
+    // exact-term hits of the lexical index; instructions apply to this response only and stay out of the conversation
+    private Map<String, Object> withSearchContext(Map<String, Object> payload, String prompt) {
+        String context = search.context(prompt);
+        if (!context.isEmpty()) {
+            payload.merge("instructions", context, (instructions, hits) -> instructions + "\n\n" + hits);
         }
+        return payload;
+    }
+
+    private Mono<ParsedResponse> responses(Map<String, Object> payload) {
+        return ResponsesParser.parse(webClient.post()
+                .uri("/v1/responses")
+                .attribute(RateLimitScheduler.SIDE_EFFECTS, payload.containsKey("conversation"))
+                .bodyValue(payload)
+                .retrieve()
+                .bodyToFlux(DataBuffer.class), maxResponseBytes)
+                .doOnNext(parsed -> metrics.usage("openai", parsed.usage().inputTokens(), parsed.usage().outputTokens()));
+    }
+
+    private Flux<String> streamResponse(String session, Map<String, Object> payload) {
+        Map<String, Object> streaming = new LinkedHashMap<>(payload);
+        streaming.put("stream", true);
+
+        long started = System.nanoTime();
+        AtomicBoolean firstToken = new AtomicBoolean(true);
+
+        return webClient.post()
+                .uri("/v1/responses")
+                .attribute(RateLimitScheduler.SIDE_EFFECTS, payload.containsKey("conversation"))
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .bodyValue(streaming)
+                .retrieve()
+                .bodyToFlux(SSE_TYPE)
+                .<String>handle((event, sink) -> {
+                    String data = event.data();
+                    if (data == null || data.isBlank()) return;
+
+                    final JsonNode node;
+                    try {
+                        node = om.readTree(data);
+                    } catch (Exception e) {
+                        sink.error(new IllegalStateException("Failed parsing OpenAI stream event: " + e.getMessage(), e));
+                        return;
+                    }
+
+                    switch (node.path("type").asText("")) {
+                        case "response.output_text.delta" -> {
+                            String delta = node.path("delta").asText("");
+                            if (!delta.isEmpty()) sink.next(delta);
+                        }
+                        case "response.completed" -> {
+                            JsonNode usage = node.path("response").path("usage");
+                            metrics.usage("openai", usage.path("input_tokens").asLong(), usage.path("output_tokens").asLong());
+                            afterTurn(session, payload, usage.path("input_tokens").asLong());
+                        }
+                        case "response.failed" -> sink.error(new IllegalStateException(
+                                "OpenAI response failed: " + node.path("response").path("error").path("message").asText("unknown error")));
+                        case "error" -> sink.error(new IllegalStateException(
+                                "OpenAI stream error: " + node.path("message").asText("unknown error")));
+                        default -> {
+                            // lifecycle and tool events are not forwarded
+                        }
+                    }
+                })
+                .doOnNext(delta -> {
+                    if (firstToken.compareAndSet(true, false)) {
+                        metrics.firstToken("openai", started);
+                        log.debug("OpenAI stream first token after {} ms", elapsedMillis(started));
+                    }
+                })
+                .doOnComplete(() -> log.debug("OpenAI stream completed after {} ms", elapsedMillis(started)))
+                .doOnError(WebClientResponseException.class, e -> log.error(
+                        "OpenAI /v1/responses stream failed. status={} responseBody={}",
+                        e.getStatusCode().value(),
+                        safeBody(e),
+                        e
+                ));
+    }
+
+    static long elapsedMillis(long startedNanos) {
+        return (System.nanoTime() - startedNanos) / 1_000_000;
     }
 
     public void resetChat() {
-        HttpSession session = currentSession(false);
+        String session = SessionKeys.current(false);
         if (session != null) {
-            session.removeAttribute("openai_conversation_id");
+            conversations.remove(session);
         }
     }
 
-    private static String safeBody(WebClientResponseException e) {
+    static String safeBody(WebClientResponseException e) {
         try {
             return e.getResponseBodyAsString(StandardCharsets.UTF_8);
         } catch (Exception ignored) {
@@ -249,70 +431,55 @@ public class ChatService {
         }
     }
 
-    public List<FileInfo> listVectorStoreFilesWithIds() {
+    public Mono<List<FileInfo>> listVectorStoreFilesWithIds() {
         if (vectorStoreId == null || vectorStoreId.isBlank()) {
             throw new IllegalStateException("openai.vector-store-id is not configured");
         }
 
-        final String listRaw;
-        try {
-            listRaw = webClient.get()
-                    .uri("/v1/vector_stores/{id}/files", vectorStoreId)
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block();
-        } catch (WebClientResponseException e) {
-            log.error("OpenAI list vector store files failed. status={} body={}",
-                    e.getStatusCode().value(), safeBody(e), e);
-            throw e;
-        }
-
-        if (listRaw == null || listRaw.isBlank()) {
-            return List.of();
-        }
-
-        List<FileInfo> result = new ArrayList<>();
-
-        try {
-            var root = om.readTree(listRaw);
-            var data = root.path("data");
-            if (!data.isArray()) {
-                return List.of();
-            }
-
-            for (var item : data) {
-                String fileId = item.path("id").asText(null);
-                if (fileId == null || fileId.isBlank()) continue;
-
-                try {
-                    String fileRaw = webClient.get()
-                            .uri("/v1/files/{id}", fileId)
-                            .retrieve()
-                            .bodyToMono(String.class)
-                            .block();
-
-                    if (fileRaw == null || fileRaw.isBlank()) continue;
-
-                    var fileJson = om.readTree(fileRaw);
-                    String filename = fileJson.path("filename").asText(null);
+        String fingerprint = singleFlight.fingerprint("GET", "/v1/vector_stores/" + vectorStoreId + "/files", null);
+        return singleFlight.run(fingerprint, () -> listPage(null)
+                .expand(page -> page.hasMore() && page.lastId() != null ? listPage(page.lastId()) : Mono.empty())
+                .concatMapIterable(FilePage::fileIds)
+                .flatMapSequential(fileId -> fileMetadata.filename(fileId).map(filename -> new FileInfo(fileId, filename)),
+                        files.metadataConcurrency())
+                .collectList());
+    }
 
-                    if (filename != null && !filename.isBlank()) {
-                        result.add(new FileInfo(fileId, filename));
+    private Mono<FilePage> listPage(String after) {
+        return webClient.get()
+                .uri(uri -> {
+                    uri.path("/v1/vector_stores/{id}/files").queryParam("limit", files.pageSize());
+                    if (after != null) uri.queryParam("after", after);
+                    return uri.build(vectorStoreId);
+                })
+                .retrieve()
+                .bodyToMono(String.class)
+                .doOnError(WebClientResponseException.class, e -> log.error(
+                        "OpenAI list vector store files failed. status={} body={}",
+                        e.getStatusCode().value(), safeBody(e), e))
+                .map(listRaw -> {
+                    if (listRaw.isBlank()) {
+                        return new FilePage(List.of(), false, null);
                     }
-                } catch (WebClientResponseException e) {
-                    // hackathon mode: skip broken entries, continue
-                    log.warn("Failed fetching file {} details. status={} body={}",
-                            fileId, e.getStatusCode().value(), safeBody(e));
-                }
-            }
-        } catch (Exception e) {
-            throw new IllegalStateException("Failed parsing OpenAI vector store files response", e);
-        }
+                    try {
+                        JsonNode root = om.readTree(listRaw);
+                        List<String> fileIds = new ArrayList<>();
+                        for (JsonNode item : root.path("data")) {
+                            String fileId = item.path("id").asText("");
+                            if (!fileId.isBlank()) fileIds.add(fileId);
+                        }
+                        return new FilePage(fileIds, root.path("has_more").asBoolean(false), root.path("last_id").asText(null));
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Failed parsing OpenAI vector store files response", e);
+                    }
+                });
+    }
+
+    private record FilePage(List<String> fileIds, boolean hasMore, String lastId) {
 
-        return result;
     }
 
-    public void removeFileFromVectorStore(String fileId) {
+    public Mono<Void> removeFileFromVectorStore(String fileId) {
         if (fileId == null || fileId.isBlank()) {
             throw new IllegalArgumentException("fileId must not be blank");
         }
@@ -320,26 +487,26 @@ public class ChatService {
             throw new IllegalStateException("openai.vector-store-id is not configured");
         }
 
-        try {
-            webClient.delete()
-                    .uri("/v1/vector_stores/{vsId}/files/{fileId}", vectorStoreId, fileId)
-                    .retrieve()
-                    .bodyToMono(Void.class)
-                    .block();
-        } catch (WebClientResponseException e) {
-            log.error(
-                    "OpenAI delete vector store file failed. vectorStoreId={}, fileId={}, status={}, body={}",
-                    vectorStoreId,
-                    fileId,
-                    e.getStatusCode().value(),
-                    safeBody(e),
-                    e
-            );
-            throw e;
-        }
+        return webClient.delete()
+                .uri("/v1/vector_stores/{vsId}/files/{fileId}", vectorStoreId, fileId)
+                .retrieve()
+                .bodyToMono(Void.class)
+                .doOnSuccess(ignored -> {
+                    fileMetadata.invalidate(fileId);
+                    fileUploads.forget(fileId);
+                    answerCache.invalidateAll();
+                })
+                .doOnError(WebClientResponseException.class, e -> log.error(
+                        "OpenAI delete vector store file failed. vectorStoreId={}, fileId={}, status={}, body={}",
+                        vectorStoreId,
+                        fileId,
+                        e.getStatusCode().value(),
+                        safeBody(e),
+                        e
+                ));
     }
 
-    public String addFileToVectorStore(MultipartFile file) {
+    public Mono<String> addFileToVectorStore(MultipartFile file) {
         if (file == null || file.isEmpty()) {
             throw new IllegalArgumentException("file must not be empty");
         }
@@ -347,123 +514,67 @@ public class ChatService {
             throw new IllegalStateException("openai.vector-store-id is missing");
         }
 
-        MultipartBodyBuilder mb = new MultipartBodyBuilder();
-        mb.part("purpose", "assistants"); // for file_search / vector stores
-        Resource resource = file.getResource();
-        mb.part("file", resource)
-                .filename(file.getOriginalFilename() != null ? file.getOriginalFilename() : "upload.bin");
-
-        MultiValueMap<String, HttpEntity<?>> multipartBody = mb.build();
-
-        String uploadRaw = webClient.post()
-                .uri("/v1/files")
-                .contentType(MediaType.MULTIPART_FORM_DATA)
-                .body(BodyInserters.fromMultipartData(multipartBody))
-                .retrieve()
-                .bodyToMono(String.class)
-                .block();
-
-        if (uploadRaw == null || uploadRaw.isBlank()) {
-            throw new IllegalStateException("Empty response from OpenAI files upload");
-        }
-
-        final String fileId;
-        try {
-            fileId = om.readTree(uploadRaw).path("id").asText(null);
-        } catch (Exception e) {
-            throw new IllegalStateException("Failed parsing file upload JSON: " + e.getMessage(), e);
-        }
-        if (fileId == null || fileId.isBlank()) {
-            throw new IllegalStateException("OpenAI did not return a file id");
-        }
-
-        String attachRaw = webClient.post()
-                .uri("/v1/vector_stores/{vectorStoreId}/files", vectorStoreId)
-                .bodyValue(Map.of("file_id", fileId))
-                .retrieve()
-                .bodyToMono(String.class)
-                .block();
-        if (attachRaw == null || attachRaw.isBlank()) {
-            throw new IllegalStateException("Empty response from OpenAI vector store attach");
-        }
-        System.out.println("Uploaded file ID: " + fileId);
-        return fileId;
+        return fileUploads.uploadDocument(file)
+                .flatMap(fileId -> webClient.post()
+                        .uri("/v1/vector_stores/{vectorStoreId}/files", vectorStoreId)
+                        .bodyValue(Map.of("file_id", fileId))
+                        .retrieve()
+                        .bodyToMono(String.class)
+                        .defaultIfEmpty("")
+                        .map(attachRaw -> {
+                            if (attachRaw.isBlank()) {
+                                throw new IllegalStateException("Empty response from OpenAI vector store attach");
+                            }
+                            fileMetadata.put(fileId, FileUploadService.filename(file));
+                            answerCache.invalidateAll();
+                            log.info("Attached file {} ({}) to vector store {}", fileId, FileUploadService.filename(file), vectorStoreId);
+                            return fileId;
+                        }));
     }
 
-    private String createConversation() {
-        Map<String, Object> body = Map.of(
-                "items", List.of(
-                        Map.of(
-                                "role", "developer",
-                                "content", List.of(
-                                        Map.of("type", "input_text", "text", DEV_PROMPT)
-                                )
-                        )
+    // a compacted conversation continues from the summary of its predecessor
+    private Mono<String> createConversation(String summary) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        items.add(Map.of(
+                "role", "developer",
+                "content", List.of(
+                        Map.of("type", "input_text", "text", DEV_PROMPT)
                 )
-        );
-        final String raw;
-        try {
-            raw = webClient.post()
-                    .uri("/v1/conversations")
-                    .bodyValue(body)
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block();
-        } catch (WebClientResponseException e) {
-            log.error("OpenAI /v1/conversations failed. status={} responseBody={}",
-                    e.getStatusCode().value(),
-                    safeBody(e),
-                    e);
-            throw e;
-        }
-
-        if (raw == null || raw.isBlank()) {
-            throw new IllegalStateException("Empty response from OpenAI when creating conversation");
-        }
-
-        try {
-            JsonNode root = om.readTree(raw);
-            String id = root.path("id").asText(null);
-            if (id == null || id.isBlank()) {
-                throw new IllegalStateException("No conversation id returned by OpenAI");
-            }
-            return id;
-        } catch (Exception e) {
-            throw new IllegalStateException("Failed parsing conversation create JSON: " + e.getMessage(), e);
+        ));
+        if (summary != null) {
+            items.add(Map.of(
+                    "role", "developer",
+                    "content", List.of(inputText(ChatHistory.SUMMARY_PREFIX + summary.trim()))
+            ));
         }
-    }
+        Map<String, Object> body = Map.of("items", items);
 
-    public static HttpSession currentSession(boolean create) {
-        var attrs = RequestContextHolder.getRequestAttributes();
-        if (!(attrs instanceof ServletRequestAttributes sra)) return null;
-        HttpServletRequest request = sra.getRequest();
-        return request.getSession(create);
-    }
+        return webClient.post()
+                .uri("/v1/conversations")
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(String.class)
+                .doOnError(WebClientResponseException.class, e -> log.error(
+                        "OpenAI /v1/conversations failed. status={} responseBody={}",
+                        e.getStatusCode().value(),
+                        safeBody(e),
+                        e))
+                .defaultIfEmpty("")
+                .map(raw -> {
+                    if (raw.isBlank()) {
+                        throw new IllegalStateException("Empty response from OpenAI when creating conversation");
+                    }
 
-    private static String extractOutputText(JsonNode root) {
-        StringBuilder sb = new StringBuilder();
-        JsonNode output = root.path("output");
-        if (output.isArray()) {
-            for (JsonNode item : output) {
-                JsonNode content = item.path("content");
-                if (content.isArray()) {
-                    for (JsonNode c : content) {
-                        String t = c.path("text").asText(null);
-                        if (t != null && !t.isBlank()) {
-                            if (!sb.isEmpty()) sb.append('\n');
-                            sb.append(t);
-                        } else {
-                            String t2 = c.path("text").path("value").asText(null);
-                            if (t2 != null && !t2.isBlank()) {
-                                if (!sb.isEmpty()) sb.append('\n');
-                                sb.append(t2);
-                            }
+                    try {
+                        JsonNode root = om.readTree(raw);
+                        String id = root.path("id").asText(null);
+                        if (id == null || id.isBlank()) {
+                            throw new IllegalStateException("No conversation id returned by OpenAI");
                         }
+                        return id;
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Failed parsing conversation create JSON: " + e.getMessage(), e);
                     }
-                }
-            }
-        }
-        String s = sb.toString().trim();
-        return s.isBlank() ? "(no text output)" : s;
+                });
     }
 }
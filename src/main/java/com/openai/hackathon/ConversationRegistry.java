@@ -0,0 +1,135 @@
+package com.openai.hackathon;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/*
+ * The cache is the fast path and the creation lock, the session store keeps the mapping across restarts and
+ * nodes. A cached id the store no longer has was reset or replaced on another node and is dropped.
+ */
+@Component
+public class ConversationRegistry implements StatsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationRegistry.class);
+
+    // session id -> OpenAI conversation id; a pending future doubles as the creation lock for that session
+    private final AsyncCache<String, String> conversations;
+    private final SessionStore store;
+    private final LongAdder restored = new LongAdder();
+    private final LongAdder replaced = new LongAdder();
+    private final LongAdder switched = new LongAdder();
+
+    public ConversationRegistry(OpenAIProps props, SessionStore store) {
+        OpenAIProps.Conversations settings = props.conversations();
+        this.store = store;
+
+        this.conversations = Caffeine.newBuilder()
+                .maximumSize(settings.maxSize())
+                .expireAfterAccess(settings.idleTtl())
+                .evictionListener((String sessionId, String conversationId, RemovalCause cause) ->
+                        log.debug("Evicted conversation {} of session {} ({})", conversationId, sessionId, cause))
+                .recordStats()
+                .buildAsync();
+    }
+
+    // store reads and writes may block on a shared filesystem: they run on boundedElastic, never on an event loop
+    public Mono<String> getOrCreate(String sessionId, Supplier<Mono<String>> creator) {
+        return Mono.fromRunnable(() -> dropIfReplaced(sessionId))
+                .subscribeOn(Schedulers.boundedElastic())
+                // cancel is suppressed: other requests of the same session may be waiting on the same future
+                .then(Mono.fromFuture(() -> conversations.get(sessionId, (key, executor) -> load(key, creator).toFuture()), true));
+    }
+
+    private void dropIfReplaced(String sessionId) {
+        CompletableFuture<String> cached = conversations.asMap().get(sessionId);
+        if (cached != null && cached.isDone() && !cached.isCompletedExceptionally()) {
+            SessionState state = store.get(sessionId);
+            if (state != null && !cached.join().equals(state.conversationId())) {
+                conversations.asMap().remove(sessionId, cached);
+                replaced.increment();
+            }
+        }
+    }
+
+    private Mono<String> load(String sessionId, Supplier<Mono<String>> creator) {
+        return Mono.fromCallable(() -> {
+                    SessionState state = store.get(sessionId);
+                    return state == null ? null : state.conversationId();
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnNext(conversationId -> restored.increment())
+                // when another node created one for the session meanwhile, its conversation wins and ours is unused
+                .switchIfEmpty(Mono.defer(creator::get)
+                        .publishOn(Schedulers.boundedElastic())
+                        .map(conversationId -> store.update(sessionId, s -> s.conversationId() != null ? s
+                                : s.withConversation(conversationId, System.currentTimeMillis())).conversationId()));
+    }
+
+    public String peek(String sessionId) {
+        CompletableFuture<String> future = conversations.asMap().get(sessionId);
+        if (future == null) {
+            // not used since the last restart yet
+            SessionState state = store.get(sessionId);
+            return state == null ? null : state.conversationId();
+        }
+        if (!future.isDone() || future.isCompletedExceptionally()) {
+            return null;
+        }
+        return future.join();
+    }
+
+    // switches the session to a successor of its conversation, unless it was reset or switched meanwhile
+    public boolean replace(String sessionId, String conversationId, String successor) {
+        SessionState state = store.update(sessionId, s -> conversationId.equals(s.conversationId())
+                ? s.withConversation(successor, System.currentTimeMillis()) : s);
+        if (!successor.equals(state.conversationId())) {
+            return false;
+        }
+        conversations.synchronous().put(sessionId, successor);
+        switched.increment();
+        return true;
+    }
+
+    public void remove(String sessionId) {
+        conversations.synchronous().invalidate(sessionId);
+        if (store.get(sessionId) != null) {
+            store.update(sessionId, s -> s.withConversation(null, System.currentTimeMillis()));
+        }
+    }
+
+    @Override
+    public String statsName() {
+        return "conversations";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        CacheStats stats = conversations.synchronous().stats();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", conversations.synchronous().estimatedSize());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("evictions", stats.evictionCount());
+        result.put("creationFailures", stats.loadFailureCount());
+        result.put("restored", restored.sum());
+        result.put("replaced", replaced.sum());
+        result.put("switched", switched.sum());
+        return result;
+    }
+}
@@ -0,0 +1,79 @@
+package com.openai.hackathon;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.publisher.Mono;
+
+// OpenAI-style /embeddings on the local backend; vectors come back unit length so a dot product is the cosine
+@Component
+public class EmbeddingClient {
+
+    private final WebClient webClient;
+    private final RetrievalProps.Embeddings props;
+    private final ObjectMapper om = new ObjectMapper();
+
+    public EmbeddingClient(RetrievalProps props, WebClient localWebClient) {
+        this.webClient = localWebClient;
+        this.props = props.embeddings();
+    }
+
+    public Mono<float[][]> embed(List<String> texts) {
+        if (texts.isEmpty()) {
+            return Mono.just(new float[0][]);
+        }
+        return webClient.post()
+                .uri(props.path())
+                .bodyValue(Map.of("model", props.model(), "input", texts))
+                .retrieve()
+                .bodyToMono(String.class)
+                .timeout(props.timeout())
+                .map(raw -> parse(raw, texts.size()));
+    }
+
+    private float[][] parse(String raw, int expected) {
+        JsonNode data;
+        try {
+            data = om.readTree(raw).path("data");
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed parsing embeddings JSON: " + e.getMessage(), e);
+        }
+        if (data.size() != expected) {
+            throw new IllegalStateException("Expected " + expected + " embeddings, got " + data.size());
+        }
+
+        float[][] vectors = new float[expected][];
+        for (int i = 0; i < expected; i++) {
+            JsonNode item = data.get(i);
+            JsonNode embedding = item.path("embedding");
+            float[] vector = new float[embedding.size()];
+            for (int j = 0; j < vector.length; j++) {
+                vector[j] = (float) embedding.get(j).asDouble();
+            }
+            vectors[item.path("index").asInt(i)] = normalize(vector);
+        }
+        return vectors;
+    }
+
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) {
+            return vector;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+}
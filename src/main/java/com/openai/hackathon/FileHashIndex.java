@@ -0,0 +1,123 @@
+package com.openai.hackathon;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+// content hash -> uploaded OpenAI file, kept as an append-only log of "put" and "del" lines
+@Component
+public class FileHashIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(FileHashIndex.class);
+
+    private final Path path;
+    private final Map<String, Entry> byHash = new ConcurrentHashMap<>();
+    private final Map<String, String> hashByFileId = new ConcurrentHashMap<>();
+    private final FileChannel channel;
+
+    public FileHashIndex(OpenAIProps props) {
+        this.path = props.uploads().indexPath();
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            int lines = load();
+            if (lines > 2 * byHash.size() + 1000) {
+                compact();
+            }
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed opening file hash index " + path, e);
+        }
+        log.info("Loaded {} uploaded file hashes from {}", byHash.size(), path);
+    }
+
+    public Entry lookup(String sha256) {
+        return byHash.get(sha256);
+    }
+
+    public void record(String sha256, String fileId, long size) {
+        Entry previous = byHash.put(sha256, new Entry(fileId, size));
+        if (previous != null) {
+            hashByFileId.remove(previous.fileId());
+        }
+        hashByFileId.put(fileId, sha256);
+        append("put " + sha256 + " " + fileId + " " + size + "\n");
+    }
+
+    public void removeFileId(String fileId) {
+        String sha256 = hashByFileId.remove(fileId);
+        if (sha256 != null) {
+            byHash.remove(sha256);
+            append("del " + fileId + "\n");
+        }
+    }
+
+    public int size() {
+        return byHash.size();
+    }
+
+    private int load() throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        for (String line : lines) {
+            String[] parts = line.split(" ");
+            if (parts.length == 4 && parts[0].equals("put")) {
+                Entry previous = byHash.put(parts[1], new Entry(parts[2], Long.parseLong(parts[3])));
+                if (previous != null) hashByFileId.remove(previous.fileId());
+                hashByFileId.put(parts[2], parts[1]);
+            } else if (parts.length == 2 && parts[0].equals("del")) {
+                String sha256 = hashByFileId.remove(parts[1]);
+                if (sha256 != null) byHash.remove(sha256);
+            }
+        }
+        return lines.size();
+    }
+
+    private void compact() throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        StringBuilder sb = new StringBuilder();
+        byHash.forEach((sha256, entry) -> sb.append("put ").append(sha256).append(' ')
+                .append(entry.fileId()).append(' ').append(entry.size()).append('\n'));
+        Files.writeString(tmp, sb, StandardCharsets.UTF_8);
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private synchronized void append(String line) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            // the in-memory index stays correct, only the next restart loses this entry
+            log.warn("Failed appending to file hash index {}: {}", path, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        channel.close();
+    }
+
+    public record Entry(String fileId, long size) {
+
+    }
+}
@@ -0,0 +1,93 @@
+package com.openai.hackathon;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import reactor.core.publisher.Mono;
+
+@Component
+public class FileMetadataCache implements StatsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(FileMetadataCache.class);
+
+    private final WebClient webClient;
+    private final ObjectMapper om = new ObjectMapper();
+    // fileId -> filename; entries older than refresh-after are served stale while being reloaded
+    private final AsyncLoadingCache<String, String> filenames;
+
+    public FileMetadataCache(OpenAIProps props, WebClient openAiWebClient) {
+        this.webClient = openAiWebClient;
+        this.filenames = Caffeine.newBuilder()
+                .maximumSize(props.files().cacheMaxSize())
+                .refreshAfterWrite(props.files().refreshAfter())
+                .recordStats()
+                .buildAsync((fileId, executor) -> fetchFilename(fileId).toFuture());
+    }
+
+    public Mono<String> filename(String fileId) {
+        return Mono.fromFuture(() -> filenames.get(fileId), true);
+    }
+
+    public void put(String fileId, String filename) {
+        filenames.put(fileId, CompletableFuture.completedFuture(filename));
+    }
+
+    public void invalidate(String fileId) {
+        filenames.synchronous().invalidate(fileId);
+    }
+
+    private Mono<String> fetchFilename(String fileId) {
+        return webClient.get()
+                .uri("/v1/files/{id}", fileId)
+                .retrieve()
+                .bodyToMono(String.class)
+                .<String>handle((fileRaw, sink) -> {
+                    if (fileRaw.isBlank()) return;
+                    try {
+                        String filename = om.readTree(fileRaw).path("filename").asText(null);
+                        if (filename != null && !filename.isBlank()) {
+                            sink.next(filename);
+                        }
+                    } catch (Exception e) {
+                        sink.error(new IllegalStateException("Failed parsing OpenAI file response", e));
+                    }
+                })
+                .onErrorResume(WebClientResponseException.class, e -> {
+                    // hackathon mode: skip broken entries, continue
+                    log.warn("Failed fetching file {} details. status={} body={}",
+                            fileId, e.getStatusCode().value(), ChatService.safeBody(e));
+                    return Mono.empty();
+                });
+    }
+
+    @Override
+    public String statsName() {
+        return "fileMetadata";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        CacheStats stats = filenames.synchronous().stats();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", filenames.synchronous().estimatedSize());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("loads", stats.loadCount());
+        result.put("loadFailures", stats.loadFailureCount());
+        result.put("evictions", stats.evictionCount());
+        return result;
+    }
+}
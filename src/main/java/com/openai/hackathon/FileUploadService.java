@@ -0,0 +1,289 @@
+package com.openai.hackathon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+@Service
+public class FileUploadService implements StatsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(FileUploadService.class);
+
+    private final WebClient webClient;
+    private final FileHashIndex index;
+    private final LocalRetrievalService retrieval;
+    private final boolean dedup;
+    private final int chunkSize;
+    private final Path spoolDir;
+    private final ObjectMapper om = new ObjectMapper();
+
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder uploadMillis = new LongAdder();
+    private final LongAdder uploadedBytes = new LongAdder();
+    private final LongAdder dedupHits = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+    private final LongAdder latencySavedMillis = new LongAdder();
+
+    public FileUploadService(OpenAIProps props, FileHashIndex index, LocalRetrievalService retrieval,
+                             WebClient openAiWebClient) {
+        this.webClient = openAiWebClient;
+        this.index = index;
+        this.retrieval = retrieval;
+        this.dedup = props.uploads().dedup();
+        this.chunkSize = (int) props.uploads().chunkSize().toBytes();
+        try {
+            this.spoolDir = Files.createTempDirectory("hackathon-uploads");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed creating upload spool directory", e);
+        }
+    }
+
+    public Mono<String> upload(MultipartFile file) {
+        String filename = filename(file);
+        return Mono.usingWhen(
+                spool(file),
+                spooled -> deduplicated(spooled.path(), filename, spooled.sha256()),
+                spooled -> delete(spooled.path()));
+    }
+
+    // a document for the vector store: also handed to the local retrieval index
+    public Mono<String> uploadDocument(MultipartFile file) {
+        String filename = filename(file);
+        return Mono.usingWhen(
+                spool(file),
+                spooled -> deduplicated(spooled.path(), filename, spooled.sha256())
+                        .flatMap(fileId -> retrieval.submit(fileId, filename, spooled.path()).thenReturn(fileId)),
+                spooled -> delete(spooled.path()));
+    }
+
+    public Mono<String> uploadDocument(Path path, String filename) {
+        return upload(path, filename).flatMap(fileId -> retrieval.submit(fileId, filename, path).thenReturn(fileId));
+    }
+
+    // the caller keeps ownership of the file at path; nothing streams it before the upload, so hashing reads it once
+    public Mono<String> upload(Path path, String filename) {
+        if (!dedup) {
+            return timedUpload(path, filename);
+        }
+        return Mono.fromCallable(() -> sha256(path))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(sha256 -> deduplicated(path, filename, sha256));
+    }
+
+    // sha256 is null with dedup off
+    private Mono<String> deduplicated(Path path, String filename, String sha256) {
+        if (sha256 == null) {
+            return timedUpload(path, filename);
+        }
+        return Mono.defer(() -> {
+            FileHashIndex.Entry known = index.lookup(sha256);
+            if (known != null) {
+                dedupHits.increment();
+                bytesSaved.add(known.size());
+                latencySavedMillis.add(averageUploadMillis());
+                log.debug("Reusing {} for {} (sha256 {})", known.fileId(), filename, sha256);
+                return Mono.just(known.fileId());
+            }
+            return timedUpload(path, filename).doOnNext(fileId -> index.record(sha256, fileId, sizeOf(path)));
+        });
+    }
+
+    // one-off inputs such as batch jobs: no dedup, the purpose decides what OpenAI may use the file for
+    public Mono<String> upload(Path path, String filename, String purpose) {
+        return post(path, filename, purpose);
+    }
+
+    public void forget(String fileId) {
+        index.removeFileId(fileId);
+        retrieval.remove(fileId);
+    }
+
+    /*
+     * Takes the multipart part out of the container's hands: transferTo is a rename when the part is already
+     * on disk. With dedup the spooled file is then read once for its SHA-256, nothing is written twice.
+     */
+    private Mono<Spooled> spool(MultipartFile file) {
+        return Mono.fromCallable(() -> {
+            Path target = spoolDir.resolve(UUID.randomUUID() + ".part");
+            file.transferTo(target.toFile());
+            if (!dedup) {
+                return new Spooled(target, null);
+            }
+            try {
+                return new Spooled(target, sha256(target));
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(target);
+                throw e;
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // hex, read in chunk-size buffers
+    private String sha256(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] buffer = new byte[chunkSize];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static Mono<Void> delete(Path path) {
+        return Mono.<Void>fromRunnable(() -> {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Failed deleting spooled upload {}: {}", path, e.getMessage());
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<String> timedUpload(Path path, String filename) {
+        long started = System.nanoTime();
+        return post(path, filename, "assistants").doOnNext(fileId -> {
+            uploads.increment();
+            uploadMillis.add(ChatService.elapsedMillis(started));
+            uploadedBytes.add(sizeOf(path));
+        });
+    }
+
+    private Mono<String> post(Path path, String filename, String purpose) {
+        // read lazily in chunk-size buffers, the next chunk is only read once the connection asks for it
+        Flux<DataBuffer> content = DataBufferUtils.read(path, DefaultDataBufferFactory.sharedInstance, chunkSize);
+
+        MultipartBodyBuilder mb = new MultipartBodyBuilder();
+        mb.part("purpose", purpose); // "assistants" for file_search / vector stores
+        mb.asyncPart("file", content, DataBuffer.class)
+                .filename(filename)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM);
+
+        MultiValueMap<String, HttpEntity<?>> multipartBody = mb.build();
+
+        return webClient.post()
+                .uri("/v1/files")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(multipartBody))
+                .retrieve()
+                .bodyToMono(String.class)
+                // This prints OpenAI's real error JSON + full stacktrace
+                .doOnError(WebClientResponseException.class, e -> log.error(
+                        "OpenAI /v1/files failed. status={} responseBody={}",
+                        e.getStatusCode().value(),
+                        ChatService.safeBody(e),
+                        e
+                ))
+                .defaultIfEmpty("")
+                .map(uploadRaw -> {
+                    if (uploadRaw.isBlank()) {
+                        throw new IllegalStateException("Empty response from OpenAI files upload");
+                    }
+
+                    final String fileId;
+                    try {
+                        fileId = om.readTree(uploadRaw).path("id").asText(null);
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Failed parsing file upload JSON: " + e.getMessage(), e);
+                    }
+                    if (fileId == null || fileId.isBlank()) {
+                        throw new IllegalStateException("OpenAI did not return a file id");
+                    }
+                    return fileId;
+                });
+    }
+
+    // uploads still in flight at shutdown leave their spool files, they go with the directory
+    @PreDestroy
+    void removeSpoolDir() throws IOException {
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(spoolDir);
+        } catch (DirectoryNotEmptyException e) {
+            log.warn("Upload spool directory {} was not empty at shutdown", spoolDir);
+        }
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private long averageUploadMillis() {
+        long count = uploads.sum();
+        return count == 0 ? 0 : uploadMillis.sum() / count;
+    }
+
+    static String filename(MultipartFile file) {
+        return file.getOriginalFilename() != null ? file.getOriginalFilename() : "upload.bin";
+    }
+
+    @Override
+    public String statsName() {
+        return "uploads";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("uploads", uploads.sum());
+        result.put("uploadedBytes", uploadedBytes.sum());
+        result.put("averageUploadMillis", averageUploadMillis());
+        result.put("indexedHashes", index.size());
+        result.put("dedupHits", dedupHits.sum());
+        result.put("bytesSaved", bytesSaved.sum());
+        result.put("latencySavedMillis", latencySavedMillis.sum());
+        return result;
+    }
+
+    private record Spooled(Path path, String sha256) {}
+}
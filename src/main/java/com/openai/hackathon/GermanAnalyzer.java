@@ -0,0 +1,228 @@
+package com.openai.hackathon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Terms for the lexical index. Words are lower-cased, umlauts folded (ä, ae -> a), stop words dropped and
+ * inflection endings stripped by a light stemmer. Compounds additionally yield the dictionary words they are
+ * made of, so "Anhaltsquotierungsvarianten" is found by "Quotierung" and the other way round. The dictionary
+ * is german-compounds.txt plus the nouns of the domain prompt.
+ */
+final class GermanAnalyzer {
+
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+(?:-[\\p{L}\\p{N}]+)*");
+    private static final int MIN_PART = 4;
+    private static final int MIN_COMPOUND = 8;
+    private static final int MAX_COMPOUND = 48;
+    private static final String[] LINKS = {"s", "es", "n", "en", "e", "er"};
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "aber", "alle", "als", "also", "am", "an", "auch", "auf", "aus", "bei", "bin", "bis", "bist", "da",
+            "damit", "dann", "das", "dass", "dem", "den", "der", "des", "die", "dies", "diese", "diesem", "diesen",
+            "dieser", "dieses", "doch", "dort", "du", "durch", "ein", "eine", "einem", "einen", "einer", "eines",
+            "er", "es", "fur", "hat", "hatte", "ich", "ihr", "im", "in", "ist", "ja", "jede", "jeder", "kann",
+            "mit", "muss", "nach", "nicht", "noch", "nur", "ob", "oder", "sich", "sie", "sind", "so", "um", "und",
+            "uns", "von", "vor", "war", "was", "welche", "welcher", "wenn", "wer", "wie", "wir", "wird", "wo",
+            "zu", "zum", "zur", "uber", "unter", "a", "and", "are", "as", "be", "by", "for", "how", "is",
+            "it", "of", "on", "or", "the", "to", "what", "when", "which", "with");
+
+    private static final Set<String> DICTIONARY = loadDictionary();
+
+    private GermanAnalyzer() {
+    }
+
+    // every term of the text in order, repeated as often as it occurs
+    static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        Matcher m = WORD.matcher(text);
+        while (m.find()) {
+            String word = normalize(m.group());
+            if (word.indexOf('-') < 0) {
+                addWord(word, terms);
+                continue;
+            }
+            // "Geschäfts-Bezeichnung" counts as its parts and as the word written together
+            StringBuilder joined = new StringBuilder();
+            for (String part : word.split("-")) {
+                addWord(part, terms);
+                joined.append(part);
+            }
+            if (!STOP_WORDS.contains(joined.toString())) {
+                terms.add(stem(joined.toString()));
+            }
+        }
+        return terms;
+    }
+
+    private static void addWord(String word, List<String> terms) {
+        if (word.length() < 2 && !Character.isDigit(word.charAt(0)) || STOP_WORDS.contains(word)) {
+            return;
+        }
+        terms.add(stem(word));
+        if (word.length() >= MIN_COMPOUND && word.length() <= MAX_COMPOUND) {
+            decompose(word, terms);
+        }
+    }
+
+    // the stems of a compound's parts, parts that are compounds themselves are split again
+    private static void decompose(String word, List<String> terms) {
+        List<String> parts = split(word);
+        if (parts == null) {
+            return;
+        }
+        for (String part : parts) {
+            terms.add(stem(part));
+            if (part.length() >= MIN_COMPOUND) {
+                decompose(part, terms);
+            }
+        }
+    }
+
+    // the split into the fewest dictionary words (at least two), optionally joined by a linking element
+    static List<String> split(String word) {
+        int n = word.length();
+        int[] parts = new int[n + 1];
+        int[] from = new int[n + 1];
+        int[] end = new int[n + 1];
+        Arrays.fill(parts, Integer.MAX_VALUE);
+        parts[0] = 0;
+
+        for (int i = 0; i < n; i++) {
+            if (parts[i] == Integer.MAX_VALUE) {
+                continue;
+            }
+            for (int j = i + MIN_PART; j <= n; j++) {
+                if (i == 0 && j == n) {
+                    continue;
+                }
+                if (!DICTIONARY.contains(stem(word.substring(i, j)))) {
+                    continue;
+                }
+                relax(parts, from, end, i, j, j);
+                if (j == n) {
+                    continue;
+                }
+                for (String link : LINKS) {
+                    if (word.startsWith(link, j) && j + link.length() < n) {
+                        relax(parts, from, end, i, j, j + link.length());
+                    }
+                }
+            }
+        }
+        if (parts[n] == Integer.MAX_VALUE) {
+            return null;
+        }
+
+        List<String> result = new ArrayList<>();
+        for (int at = n; at > 0; at = from[at]) {
+            result.addFirst(word.substring(from[at], end[at]));
+        }
+        return result;
+    }
+
+    private static void relax(int[] parts, int[] from, int[] end, int start, int partEnd, int next) {
+        if (parts[start] + 1 < parts[next]) {
+            parts[next] = parts[start] + 1;
+            from[next] = start;
+            end[next] = partEnd;
+        }
+    }
+
+    // lower case, ß -> ss, umlauts and their ae/oe/ue spelling -> plain vowel (not the "ue" of "Quelle" or "Feuer")
+    static String normalize(String word) {
+        String lower = word.toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(lower.length());
+        char previous = 0;
+        boolean umlautPossible = false;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            switch (c) {
+                case 'ä' -> sb.append('a');
+                case 'ö' -> sb.append('o');
+                case 'ü' -> sb.append('u');
+                case 'ß' -> sb.append("ss");
+                case 'e' -> {
+                    if (!umlautPossible) {
+                        sb.append(c);
+                    }
+                }
+                default -> sb.append(c);
+            }
+            umlautPossible = switch (c) {
+                case 'a', 'o' -> true;
+                case 'u' -> previous == 0 || !isVowel(previous) && previous != 'q';
+                default -> false;
+            };
+            previous = c;
+        }
+        return sb.toString();
+    }
+
+    private static boolean isVowel(char c) {
+        return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u' || c == 'y';
+    }
+
+    // light stemming after Savoy: plural and case endings only, so stems stay readable words
+    static String stem(String word) {
+        int len = word.length();
+        if (len > 5 && word.endsWith("ern")) {
+            len -= 3;
+        } else if (len > 4 && word.charAt(len - 2) == 'e' && "mnrs".indexOf(word.charAt(len - 1)) >= 0) {
+            len -= 2;
+        } else if (len > 3 && word.charAt(len - 1) == 'e') {
+            len -= 1;
+        } else if (len > 3 && word.charAt(len - 1) == 's' && stEnding(word.charAt(len - 2))) {
+            len -= 1;
+        }
+
+        if (len > 5 && word.startsWith("est", len - 3)) {
+            len -= 3;
+        } else if (len > 4 && word.charAt(len - 2) == 'e' && (word.charAt(len - 1) == 'r' || word.charAt(len - 1) == 'n')) {
+            len -= 2;
+        } else if (len > 4 && word.startsWith("st", len - 2) && stEnding(word.charAt(len - 3))) {
+            len -= 2;
+        }
+        return word.substring(0, len);
+    }
+
+    private static boolean stEnding(char c) {
+        return "bdfghklmnt".indexOf(c) >= 0;
+    }
+
+    private static Set<String> loadDictionary() {
+        Set<String> dictionary = new HashSet<>();
+        try (InputStream in = GermanAnalyzer.class.getResourceAsStream("/german-compounds.txt")) {
+            if (in != null) {
+                for (String line : new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n")) {
+                    String word = line.strip();
+                    if (!word.isEmpty() && !word.startsWith("#")) {
+                        dictionary.add(stem(normalize(word)));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed reading the compound dictionary", e);
+        }
+
+        // nouns are capitalized in German, the prompt's glossary names the domain's words
+        Matcher m = Pattern.compile("\\p{Lu}\\p{Ll}{" + (MIN_PART - 1) + ",}").matcher(Constants.DEV_PROMPT);
+        while (m.find()) {
+            String word = normalize(m.group());
+            if (!STOP_WORDS.contains(word)) {
+                dictionary.add(stem(word));
+            }
+        }
+        return dictionary;
+    }
+}
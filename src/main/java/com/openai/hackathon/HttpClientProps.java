@@ -0,0 +1,49 @@
+package com.openai.hackathon;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+public record HttpClientProps(
+        @DefaultValue("100") int maxConnections,
+        @DefaultValue("1000") int pendingAcquireMaxCount,
+        @DefaultValue("30s") Duration pendingAcquireTimeout,
+        @DefaultValue("30s") Duration maxIdleTime,
+        @DefaultValue("5m") Duration maxLifeTime,
+        @DefaultValue("5s") Duration connectTimeout,
+        @DefaultValue("120s") Duration responseTimeout,
+        @DefaultValue("false") boolean http2,
+        @DefaultValue("true") boolean compress,
+        @DefaultValue("16MB") DataSize maxInMemorySize,
+        @DefaultValue Limit limit,
+        @DefaultValue RateLimit rateLimit
+) {
+
+    public record Limit(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("20") int initial,
+            @DefaultValue("2") int min,
+            @DefaultValue("200") int max,
+            @DefaultValue("100") int maxQueue,
+            @DefaultValue("5s") Duration maxWait,
+            @DefaultValue("3.0") double tolerance,
+            @DefaultValue("0.9") double backoff
+    ) {}
+
+    public record RateLimit(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("3") int maxRetries,
+            @DefaultValue("500ms") Duration initialBackoff,
+            @DefaultValue("30s") Duration maxBackoff,
+            @DefaultValue("0.2") double paceBelow,
+            @DefaultValue("1000") int estimatedTokens
+    ) {
+        public RateLimit {
+            // reserve() divides the remaining tokens by this estimate
+            if (estimatedTokens < 1) {
+                throw new IllegalArgumentException("rate-limit.estimated-tokens must be at least 1, was " + estimatedTokens);
+            }
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.openai.hackathon;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+/*
+ * Vector-store ingestion as background jobs: upload, attach, then poll the vector-store file until OpenAI
+ * has finished processing it. Workers only upload and attach; polling runs on timers of its own, so files
+ * OpenAI is slow to process do not hold up new uploads. Every state change is appended to a JSON-lines job
+ * log next to the spooled uploads, so unfinished jobs resume from their last state after a restart.
+ */
+@Service
+public class IngestionJobService implements StatsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestionJobService.class);
+    // the log is rewritten once it holds this many lines per known job (and at least MIN_COMPACT_LINES)
+    static final int COMPACT_FACTOR = 4;
+    static final int MIN_COMPACT_LINES = 64;
+
+    private final WebClient webClient;
+    private final FileUploadService fileUploads;
+    private final FileMetadataCache fileMetadata;
+    private final AnswerCache answerCache;
+    private final String vectorStoreId;
+    private final OpenAIProps.Jobs props;
+    private final Path logPath;
+    private FileChannel channel;
+    private int logLines;
+    private final ObjectMapper om = new ObjectMapper();
+
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+    private final Sinks.Many<String> queue;
+    // ids emitted to the queue that no worker has taken yet, a slot is reserved before a job is persisted
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Sinks.Many<IngestionJob> updates = Sinks.many().multicast().directBestEffort();
+    // attached jobs whose vector-store file is being polled, unbounded: each one only costs a timer
+    private final Sinks.Many<IngestionJob> processing = Sinks.many().unicast().onBackpressureBuffer();
+    private final AtomicInteger polling = new AtomicInteger();
+    private Disposable workers;
+    private Disposable pollers;
+
+    public IngestionJobService(OpenAIProps props, FileUploadService fileUploads, FileMetadataCache fileMetadata,
+                               AnswerCache answerCache, WebClient openAiWebClient) {
+        this.webClient = openAiWebClient;
+        this.fileUploads = fileUploads;
+        this.fileMetadata = fileMetadata;
+        this.answerCache = answerCache;
+        this.vectorStoreId = props.vectorStoreId();
+        this.props = props.jobs();
+        this.logPath = this.props.dir().resolve("jobs.log");
+        this.queue = Sinks.many().unicast().onBackpressureBuffer(Queues.<String>get(this.props.queueCapacity()).get());
+        try {
+            Files.createDirectories(this.props.dir());
+            load();
+            compact();
+            this.channel = openLog();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed opening ingestion job log " + logPath, e);
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        workers = queue.asFlux()
+                .doOnNext(id -> queued.decrementAndGet())
+                .flatMap(this::run, props.workers())
+                .subscribe();
+        pollers = processing.asFlux()
+                .flatMap(this::watch, Integer.MAX_VALUE)
+                .subscribe();
+
+        List<IngestionJob> unfinished = jobs.values().stream().filter(job -> !job.terminal()).toList();
+        if (!unfinished.isEmpty()) {
+            log.info("Resuming {} unfinished ingestion jobs", unfinished.size());
+        }
+        for (IngestionJob job : unfinished) {
+            if (reserveSlot()) {
+                enqueue(job);
+            } else {
+                failed(job, "ingestion queue is full");
+            }
+        }
+    }
+
+    public IngestionJob submit(MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("file must not be empty");
+        }
+        if (vectorStoreId == null || vectorStoreId.isBlank()) {
+            throw new IllegalStateException("openai.vector-store-id is missing");
+        }
+        pruneExpired();
+        // nothing is spooled or logged for a job the queue cannot take
+        if (!reserveSlot()) {
+            throw new IngestionQueueFullException(props.queueCapacity(),
+                    Duration.ofSeconds(Math.max(1, props.pollInterval().toSeconds())));
+        }
+
+        String id = UUID.randomUUID().toString();
+        try {
+            file.transferTo(spoolPath(id));
+        } catch (IOException e) {
+            queued.decrementAndGet();
+            deleteSpool(id);
+            throw new UncheckedIOException("Failed spooling upload for ingestion job", e);
+        }
+
+        long now = System.currentTimeMillis();
+        IngestionJob job = update(new IngestionJob(id, FileUploadService.filename(file), Status.QUEUED, null, null, now, now));
+        enqueue(job);
+        return jobs.get(id);
+    }
+
+    public IngestionJob get(String id) {
+        return jobs.get(id);
+    }
+
+    // the current state first, then every change until the job is finished
+    public Flux<IngestionJob> events(String id) {
+        if (!jobs.containsKey(id)) {
+            return Flux.empty();
+        }
+        return Flux.merge(updates.asFlux().filter(job -> job.id().equals(id)), Mono.fromSupplier(() -> jobs.get(id)))
+                .distinctUntilChanged()
+                .takeUntil(IngestionJob::terminal);
+    }
+
+    private boolean reserveSlot() {
+        if (queued.incrementAndGet() > props.queueCapacity()) {
+            queued.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    // with a reserved slot the buffer has room, a failure here means the sink was terminated on shutdown
+    private synchronized void enqueue(IngestionJob job) {
+        if (queue.tryEmitNext(job.id()).isFailure()) {
+            queued.decrementAndGet();
+            failed(job, "ingestion queue is closed");
+        }
+    }
+
+    // resumes at the first step the job has not finished yet; never errors, failures end up in the job
+    // the worker is free again once the file is attached
+    private Mono<IngestionJob> run(String id) {
+        IngestionJob job = jobs.get(id);
+        if (job == null || job.terminal()) {
+            return Mono.empty();
+        }
+
+        Mono<IngestionJob> uploaded = job.fileId() != null
+                ? Mono.just(job)
+                : Mono.defer(() -> fileUploads.uploadDocument(spoolPath(id), job.filename())
+                        .map(fileId -> update(job.with(Status.ATTACHING, fileId))))
+                .doOnSubscribe(s -> update(job.with(Status.UPLOADING, null)));
+
+        return uploaded
+                .flatMap(current -> current.status() == Status.PROCESSING ? Mono.just(current) : attach(current))
+                .doOnNext(this::startPolling)
+                .onErrorResume(e -> {
+                    log.warn("Ingestion job {} ({}) failed: {}", id, job.filename(), e.getMessage());
+                    return Mono.just(failed(jobs.get(id), String.valueOf(e.getMessage())));
+                });
+    }
+
+    private synchronized void startPolling(IngestionJob job) {
+        polling.incrementAndGet();
+        if (processing.tryEmitNext(job).isFailure()) {
+            // shutting down: the job stays PROCESSING in the log and is polled again after the restart
+            polling.decrementAndGet();
+        }
+    }
+
+    private Mono<IngestionJob> watch(IngestionJob job) {
+        return poll(job)
+                .onErrorResume(e -> {
+                    log.warn("Ingestion job {} ({}) failed: {}", job.id(), job.filename(), e.getMessage());
+                    return Mono.just(failed(jobs.get(job.id()), String.valueOf(e.getMessage())));
+                })
+                .doFinally(signal -> polling.decrementAndGet());
+    }
+
+    private Mono<IngestionJob> attach(IngestionJob job) {
+        return webClient.post()
+                .uri("/v1/vector_stores/{vectorStoreId}/files", vectorStoreId)
+                .bodyValue(Map.of("file_id", job.fileId()))
+                .retrieve()
+                .bodyToMono(String.class)
+                .then(Mono.fromSupplier(() -> update(job.with(Status.PROCESSING, job.fileId()))));
+    }
+
+    private Mono<IngestionJob> poll(IngestionJob job) {
+        return webClient.get()
+                .uri("/v1/vector_stores/{vectorStoreId}/files/{fileId}", vectorStoreId, job.fileId())
+                .retrieve()
+                .bodyToMono(String.class)
+                .map(this::readTree)
+                .filter(file -> !"in_progress".equals(file.path("status").asText()))
+                .repeatWhenEmpty(Integer.MAX_VALUE, ticks -> ticks.delayElements(props.pollInterval()))
+                .timeout(props.pollTimeout())
+                .map(file -> {
+                    String status = file.path("status").asText();
+                    if (!"completed".equals(status)) {
+                        return failed(job, file.path("last_error").path("message").asText("vector store file " + status));
+                    }
+                    fileMetadata.put(job.fileId(), job.filename());
+                    answerCache.invalidateAll();
+                    deleteSpool(job.id());
+                    return update(job.with(Status.COMPLETED, job.fileId()));
+                });
+    }
+
+    private IngestionJob failed(IngestionJob job, String error) {
+        deleteSpool(job.id());
+        return update(new IngestionJob(job.id(), job.filename(), Status.FAILED, job.fileId(), error,
+                job.createdAt(), System.currentTimeMillis()));
+    }
+
+    private synchronized IngestionJob update(IngestionJob job) {
+        jobs.put(job.id(), job);
+        append(job);
+        updates.tryEmitNext(job);
+        return job;
+    }
+
+    private void pruneExpired() {
+        long cutoff = System.currentTimeMillis() - props.retention().toMillis();
+        jobs.values().removeIf(job -> job.terminal() && job.updatedAt() < cutoff);
+    }
+
+    private Path spoolPath(String id) {
+        return props.dir().resolve(id + ".part");
+    }
+
+    private void deleteSpool(String id) {
+        try {
+            Files.deleteIfExists(spoolPath(id));
+        } catch (IOException e) {
+            log.warn("Failed deleting spooled upload of ingestion job {}: {}", id, e.getMessage());
+        }
+    }
+
+    private JsonNode readTree(String raw) {
+        try {
+            return om.readTree(raw);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed parsing vector store file JSON: " + e.getMessage(), e);
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(logPath)) {
+            return;
+        }
+        for (String line : Files.readAllLines(logPath, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                IngestionJob job = om.readValue(line, IngestionJob.class);
+                jobs.put(job.id(), job);
+            } catch (IOException e) {
+                // a torn last line after a crash, the previous state of that job still counts
+                log.warn("Skipping unreadable ingestion job log line: {}", e.getMessage());
+            }
+        }
+        pruneExpired();
+
+        for (IngestionJob job : List.copyOf(jobs.values())) {
+            if (!job.terminal() && job.fileId() == null && !Files.exists(spoolPath(job.id()))) {
+                jobs.put(job.id(), new IngestionJob(job.id(), job.filename(), Status.FAILED, null,
+                        "spooled upload is missing", job.createdAt(), System.currentTimeMillis()));
+            }
+        }
+    }
+
+    private FileChannel openLog() throws IOException {
+        return FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // one line per known job; at startup, and while running once the appended lines outgrow the jobs
+    private void compact() throws IOException {
+        Path tmp = logPath.resolveSibling(logPath.getFileName() + ".tmp");
+        StringBuilder sb = new StringBuilder();
+        for (IngestionJob job : jobs.values()) {
+            sb.append(om.writeValueAsString(job)).append('\n');
+        }
+        Files.writeString(tmp, sb, StandardCharsets.UTF_8);
+        Files.move(tmp, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logLines = jobs.size();
+    }
+
+    // called from update(), which holds the lock every write to the log goes through
+    private void compactIfLarge() {
+        if (logLines <= Math.max(MIN_COMPACT_LINES, COMPACT_FACTOR * jobs.size())) {
+            return;
+        }
+        pruneExpired();
+        try {
+            channel.close();
+            compact();
+        } catch (IOException e) {
+            log.warn("Compacting ingestion job log {} failed: {}", logPath, e.getMessage());
+        } finally {
+            try {
+                channel = openLog();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed reopening ingestion job log " + logPath, e);
+            }
+        }
+    }
+
+    private void append(IngestionJob job) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap((om.writeValueAsString(job) + "\n").getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            logLines++;
+        } catch (IOException e) {
+            // the job keeps running, only a restart would resume it from an older state
+            log.warn("Failed appending to ingestion job log {}: {}", logPath, e.getMessage());
+        }
+        compactIfLarge();
+    }
+
+    @PreDestroy
+    synchronized void close() throws IOException {
+        // unfinished jobs stay in the log and are picked up again on the next start
+        if (workers != null) {
+            workers.dispose();
+        }
+        if (pollers != null) {
+            pollers.dispose();
+        }
+        channel.close();
+    }
+
+    @Override
+    public String statsName() {
+        return "ingestionJobs";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<Status, Integer> byStatus = new EnumMap<>(Status.class);
+        for (Status status : Status.values()) {
+            byStatus.put(status, 0);
+        }
+        jobs.values().forEach(job -> byStatus.merge(job.status(), 1, Integer::sum));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("jobs", jobs.size());
+        result.put("polling", polling.get());
+        byStatus.forEach((status, count) -> result.put(status.name().toLowerCase(), count));
+        return result;
+    }
+
+    public enum Status {
+        QUEUED, UPLOADING, ATTACHING, PROCESSING, COMPLETED, FAILED
+    }
+
+    public record IngestionJob(String id, String filename, Status status, String fileId, String error,
+                               long createdAt, long updatedAt) {
+
+        IngestionJob with(Status status, String fileId) {
+            return new IngestionJob(id, filename, status, fileId, null, createdAt, System.currentTimeMillis());
+        }
+
+        boolean terminal() {
+            return status == Status.COMPLETED || status == Status.FAILED;
+        }
+    }
+}
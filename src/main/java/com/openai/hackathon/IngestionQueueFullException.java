@@ -0,0 +1,17 @@
+package com.openai.hackathon;
+
+import java.time.Duration;
+
+public class IngestionQueueFullException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public IngestionQueueFullException(int capacity, Duration retryAfter) {
+        super("Ingestion queue is full (" + capacity + " jobs), retry after " + retryAfter.toSeconds() + "s");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
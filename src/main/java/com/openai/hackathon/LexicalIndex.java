@@ -0,0 +1,700 @@
+package com.openai.hackathon;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/*
+ * BM25 over chunks, kept in immutable segment files. Every added document is written as a small segment of
+ * its own; once merge-factor segments of about the same size exist they are merged into one, which also drops
+ * the chunks of deleted documents. A segment holds the chunk texts, the postings of every term as
+ * variable-byte encoded doc gaps and frequencies, a fixed-size record per chunk, the sorted term dictionary
+ * and the files the chunks belong to; it is memory-mapped for reading. The "segments" file names the live
+ * segments, any other segment file in the directory is left over from an interrupted write and deleted.
+ * A delete covers the segments written before it: a file added again after its delete lives in newer
+ * segments, while its old chunks stay deleted until a merge drops them.
+ */
+final class LexicalIndex implements Closeable {
+
+    private static final int MAGIC = 0x424d3235; // "BM25"
+    private static final int VERSION = 1;
+    private static final int DOC_BYTES = 16;     // text offset, text length, term count, file
+    private static final int FOOTER_BYTES = 40;
+
+    private final Path dir;
+    private final int mergeFactor;
+    private final long maxSegmentBytes;
+    private final double k1;
+    private final double b;
+
+    // fileId of a deleted document -> the first segment generation its delete does not cover
+    private final Map<String, Integer> deleted = new ConcurrentHashMap<>();
+    private final Set<Segment> merging = new HashSet<>();
+    private volatile List<Segment> segments = List.of();
+    private int nextGeneration;
+
+    private LexicalIndex(Path dir, int mergeFactor, long maxSegmentBytes, double k1, double b) {
+        this.dir = dir;
+        this.mergeFactor = Math.max(2, mergeFactor);
+        this.maxSegmentBytes = Math.min(maxSegmentBytes, Integer.MAX_VALUE);
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    static LexicalIndex open(Path dir, int mergeFactor, long maxSegmentBytes, double k1, double b) throws IOException {
+        Files.createDirectories(dir);
+        LexicalIndex index = new LexicalIndex(dir, mergeFactor, maxSegmentBytes, k1, b);
+        index.load();
+        return index;
+    }
+
+    private void load() throws IOException {
+        Path manifest = dir.resolve("segments");
+        Set<String> live = new LinkedHashSet<>();
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    live.add(line.strip());
+                }
+            }
+        }
+
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.startsWith("seg-")) {
+                    nextGeneration = Math.max(nextGeneration, generation(name) + 1);
+                    if (!live.contains(name)) {
+                        Files.delete(file);
+                    }
+                }
+            }
+        }
+
+        List<Segment> opened = new ArrayList<>();
+        for (String name : live) {
+            opened.add(Segment.open(name, dir.resolve(name)));
+        }
+
+        Path deletedPath = dir.resolve("deleted.txt");
+        if (Files.exists(deletedPath)) {
+            for (String line : Files.readAllLines(deletedPath, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                // "fileId generation"; a line without one is older than every live segment and covers them all
+                int space = line.lastIndexOf(' ');
+                String fileId = space < 0 ? line.strip() : line.substring(0, space);
+                int before = space < 0 ? nextGeneration : Integer.parseInt(line.substring(space + 1).strip());
+                deleted.merge(fileId, before, Math::max);
+            }
+            // a delete only matters while a segment it covers still has chunks of the file
+            deleted.entrySet().removeIf(e -> opened.stream()
+                    .noneMatch(segment -> segment.generation < e.getValue() && segment.fileIndex.containsKey(e.getKey())));
+            List<String> lines = new ArrayList<>();
+            deleted.forEach((fileId, before) -> lines.add(fileId + " " + before));
+            Files.write(deletedPath, lines, StandardCharsets.UTF_8);
+        }
+        opened.forEach(segment -> segment.markDeleted(deleted));
+        segments = List.copyOf(opened);
+    }
+
+    private static int generation(String name) {
+        String digits = name.substring(4).replaceAll("\\D.*$", "");
+        return digits.isEmpty() ? 0 : Integer.parseInt(digits);
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    int chunkCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            count += segment.docCount - segment.deletedDocs;
+        }
+        return count;
+    }
+
+    boolean contains(String fileId) {
+        for (Segment segment : segments) {
+            if (segment.fileIndex.containsKey(fileId) && !deletedIn(segment, fileId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean deletedIn(Segment segment, String fileId) {
+        Integer before = deleted.get(fileId);
+        return before != null && segment.generation < before;
+    }
+
+    // one document, all its chunks, as a new segment
+    void add(String fileId, String filename, List<String> chunks) throws IOException {
+        TreeMap<String, Postings> postings = new TreeMap<>();
+        List<byte[]> texts = new ArrayList<>(chunks.size());
+        int[] lengths = new int[chunks.size()];
+        for (int doc = 0; doc < chunks.size(); doc++) {
+            List<String> terms = GermanAnalyzer.terms(chunks.get(doc));
+            lengths[doc] = terms.size();
+            Map<String, Integer> frequencies = new HashMap<>();
+            terms.forEach(term -> frequencies.merge(term, 1, Integer::sum));
+            for (Map.Entry<String, Integer> e : frequencies.entrySet()) {
+                postings.computeIfAbsent(e.getKey(), term -> new Postings()).add(doc, e.getValue());
+            }
+            texts.add(chunks.get(doc).getBytes(StandardCharsets.UTF_8));
+        }
+
+        String name = nextName();
+        Path tmp = dir.resolve(name + ".tmp");
+        try (SegmentWriter writer = new SegmentWriter(tmp)) {
+            int file = writer.file(fileId, filename);
+            for (int doc = 0; doc < texts.size(); doc++) {
+                writer.doc(file, texts.get(doc), lengths[doc]);
+            }
+            for (Map.Entry<String, Postings> e : postings.entrySet()) {
+                writer.term(e.getKey(), e.getValue().count, e.getValue().bytes, e.getValue().size);
+            }
+        }
+        Files.move(tmp, dir.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+        Segment segment = Segment.open(name, dir.resolve(name));
+
+        synchronized (this) {
+            List<Segment> next = new ArrayList<>(segments);
+            next.add(segment);
+            install(next);
+        }
+    }
+
+    synchronized boolean delete(String fileId) throws IOException {
+        if (!contains(fileId)) {
+            return false;
+        }
+        // covers every segment named so far, also one an add or a merge is still writing
+        int before = nextGeneration;
+        deleted.put(fileId, before);
+        Files.writeString(dir.resolve("deleted.txt"), fileId + " " + before + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        segments.forEach(segment -> segment.markDeleted(deleted));
+        return true;
+    }
+
+    private synchronized String nextName() {
+        return "seg-%08d.lex".formatted(nextGeneration++);
+    }
+
+    /*
+     * Log-structured merging: a segment's level is the order of magnitude (base merge-factor) of its chunk
+     * count. Merge-factor segments on one level are merged into one segment on the next, a segment that lost
+     * more than half of its chunks to deletes is rewritten on its own. Null when nothing needs merging.
+     */
+    synchronized List<Segment> nextMerge() {
+        Map<Integer, List<Segment>> levels = new TreeMap<>();
+        for (Segment segment : segments) {
+            if (merging.contains(segment)) {
+                continue;
+            }
+            if (segment.deletedDocs * 2 > segment.docCount) {
+                merging.add(segment);
+                return List.of(segment);
+            }
+            int level = (int) (Math.log(Math.max(1, segment.docCount)) / Math.log(mergeFactor));
+            levels.computeIfAbsent(level, l -> new ArrayList<>()).add(segment);
+        }
+        for (List<Segment> level : levels.values()) {
+            if (level.size() < mergeFactor) {
+                continue;
+            }
+            List<Segment> candidates = level.subList(0, mergeFactor);
+            long bytes = candidates.stream().mapToLong(segment -> segment.bytes).sum();
+            if (bytes <= maxSegmentBytes) {
+                merging.addAll(candidates);
+                return List.copyOf(candidates);
+            }
+        }
+        return null;
+    }
+
+    // writes the merged segment outside the lock, searches and adds go on meanwhile
+    void merge(List<Segment> inputs) throws IOException {
+        try {
+            String name = nextName();
+            Path tmp = dir.resolve(name + ".tmp");
+            try (SegmentWriter writer = new SegmentWriter(tmp)) {
+                int[][] docMaps = new int[inputs.size()][];
+                for (int s = 0; s < inputs.size(); s++) {
+                    Segment segment = inputs.get(s);
+                    int[] fileMap = new int[segment.fileIds.length];
+                    for (int f = 0; f < fileMap.length; f++) {
+                        fileMap[f] = deletedIn(segment, segment.fileIds[f]) ? -1 : writer.file(segment.fileIds[f], segment.filenames[f]);
+                    }
+                    docMaps[s] = new int[segment.docCount];
+                    for (int doc = 0; doc < segment.docCount; doc++) {
+                        int file = fileMap[segment.file(doc)];
+                        docMaps[s][doc] = file < 0 ? -1 : writer.doc(file, segment.textBytes(doc), segment.length(doc));
+                    }
+                }
+                mergeTerms(inputs, docMaps, writer);
+            }
+            Files.move(tmp, dir.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+            Segment merged = Segment.open(name, dir.resolve(name));
+
+            synchronized (this) {
+                List<Segment> next = new ArrayList<>(segments);
+                next.removeAll(inputs);
+                if (merged.docCount > 0) {
+                    next.add(merged);
+                }
+                install(next);
+                if (merged.docCount == 0) {
+                    Files.deleteIfExists(merged.path);
+                }
+            }
+            for (Segment input : inputs) {
+                Files.deleteIfExists(input.path);
+            }
+        } finally {
+            synchronized (this) {
+                inputs.forEach(merging::remove);
+            }
+        }
+    }
+
+    // all inputs' dictionaries in term order; postings of a term are appended input by input, renumbered
+    private static void mergeTerms(List<Segment> inputs, int[][] docMaps, SegmentWriter writer) throws IOException {
+        PriorityQueue<int[]> cursors = new PriorityQueue<>(Comparator
+                .<int[], String>comparing(c -> inputs.get(c[0]).terms[c[1]])
+                .thenComparingInt(c -> c[0]));
+        for (int s = 0; s < inputs.size(); s++) {
+            if (inputs.get(s).terms.length > 0) {
+                cursors.add(new int[]{s, 0});
+            }
+        }
+
+        Postings postings = new Postings();
+        while (!cursors.isEmpty()) {
+            String term = inputs.get(cursors.peek()[0]).terms[cursors.peek()[1]];
+            postings.clear();
+            while (!cursors.isEmpty() && inputs.get(cursors.peek()[0]).terms[cursors.peek()[1]].equals(term)) {
+                int[] cursor = cursors.poll();
+                Segment segment = inputs.get(cursor[0]);
+                int[] docMap = docMaps[cursor[0]];
+                segment.forEachPosting(cursor[1], (doc, frequency) -> {
+                    if (docMap[doc] >= 0) {
+                        postings.add(docMap[doc], frequency);
+                    }
+                });
+                if (++cursor[1] < segment.terms.length) {
+                    cursors.add(cursor);
+                }
+            }
+            if (postings.count > 0) {
+                writer.term(term, postings.count, postings.bytes, postings.size);
+            }
+        }
+    }
+
+    private void install(List<Segment> next) throws IOException {
+        next.forEach(segment -> segment.markDeleted(deleted));
+        Path manifest = dir.resolve("segments");
+        Path tmp = dir.resolve("segments.tmp");
+        Files.write(tmp, next.stream().map(segment -> segment.name).toList(), StandardCharsets.UTF_8);
+        Files.move(tmp, manifest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        segments = List.copyOf(next);
+    }
+
+    List<Hit> search(String query, int k) {
+        List<Segment> current = segments;
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(GermanAnalyzer.terms(query)));
+        if (current.isEmpty() || terms.isEmpty()) {
+            return List.of();
+        }
+
+        // collection statistics over all segments, chunks of deleted files included until they are merged away
+        long docs = 0;
+        long totalLength = 0;
+        for (Segment segment : current) {
+            docs += segment.docCount;
+            totalLength += segment.totalLength;
+        }
+        double averageLength = Math.max(1.0, (double) totalLength / docs);
+        double[] idf = new double[terms.size()];
+        for (int t = 0; t < terms.size(); t++) {
+            long df = 0;
+            for (Segment segment : current) {
+                df += segment.docFreq(terms.get(t));
+            }
+            idf[t] = Math.log(1 + (docs - df + 0.5) / (df + 0.5));
+        }
+
+        TopK top = new TopK(k);
+        for (Segment segment : current) {
+            float[] scores = null;
+            for (int t = 0; t < terms.size(); t++) {
+                int ordinal = Arrays.binarySearch(segment.terms, terms.get(t));
+                if (ordinal < 0) {
+                    continue;
+                }
+                if (scores == null) {
+                    scores = new float[segment.docCount];
+                }
+                float[] s = scores;
+                double weight = idf[t];
+                segment.forEachPosting(ordinal, (doc, frequency) -> {
+                    double norm = k1 * (1 - b + b * segment.length(doc) / averageLength);
+                    s[doc] += (float) (weight * frequency * (k1 + 1) / (frequency + norm));
+                });
+            }
+            if (scores == null) {
+                continue;
+            }
+            for (int doc = 0; doc < scores.length; doc++) {
+                if (scores[doc] > 0 && !segment.deletedFiles[segment.file(doc)]) {
+                    top.offer(segment, doc, scores[doc]);
+                }
+            }
+        }
+        return top.hits();
+    }
+
+    @Override
+    public void close() {
+        segments = List.of();
+    }
+
+    record Hit(String fileId, String filename, float score, String text) {}
+
+    interface PostingConsumer {
+        void accept(int doc, int frequency);
+    }
+
+    // doc gaps and frequencies as variable-byte integers, 7 bits per byte, high bit set on all but the last byte
+    static final class Postings {
+
+        byte[] bytes = new byte[64];
+        int size;
+        int count;
+        private int lastDoc = -1;
+
+        void add(int doc, int frequency) {
+            writeVInt(doc - lastDoc - 1);
+            writeVInt(frequency);
+            lastDoc = doc;
+            count++;
+        }
+
+        void clear() {
+            size = 0;
+            count = 0;
+            lastDoc = -1;
+        }
+
+        private void writeVInt(int value) {
+            if (size + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7f) != 0) {
+                bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+    }
+
+    static final class Segment {
+
+        final String name;
+        final int generation;
+        final Path path;
+        final long bytes;
+        final int docCount;
+        final long totalLength;
+        final String[] terms;
+        final String[] fileIds;
+        final String[] filenames;
+        final Map<String, Integer> fileIndex = new HashMap<>();
+        final boolean[] deletedFiles;
+        volatile int deletedDocs;
+
+        private final MappedByteBuffer buffer;
+        private final int docsOffset;
+        private final int[] docFreqs;
+        private final int[] postingOffsets;
+        private final int[] fileDocs;
+
+        private Segment(String name, Path path, MappedByteBuffer buffer) {
+            this.name = name;
+            this.generation = generation(name);
+            this.path = path;
+            this.buffer = buffer;
+            this.bytes = buffer.capacity();
+
+            int footer = buffer.capacity() - FOOTER_BYTES;
+            if (footer < 0 || buffer.getInt(footer + 36) != MAGIC || buffer.getInt(footer + 32) != VERSION) {
+                throw new IllegalStateException("Not a lexical index segment: " + path);
+            }
+            this.docsOffset = buffer.getInt(footer);
+            int termsOffset = buffer.getInt(footer + 4);
+            int filesOffset = buffer.getInt(footer + 8);
+            this.docCount = buffer.getInt(footer + 12);
+            int termCount = buffer.getInt(footer + 16);
+            int fileCount = buffer.getInt(footer + 20);
+            this.totalLength = buffer.getLong(footer + 24);
+
+            this.terms = new String[termCount];
+            this.docFreqs = new int[termCount];
+            this.postingOffsets = new int[termCount];
+            int[] at = {termsOffset};
+            for (int t = 0; t < termCount; t++) {
+                terms[t] = readString(at);
+                docFreqs[t] = readVInt(at);
+                postingOffsets[t] = buffer.getInt(at[0]);
+                at[0] += 4;
+            }
+
+            this.fileIds = new String[fileCount];
+            this.filenames = new String[fileCount];
+            at[0] = filesOffset;
+            for (int f = 0; f < fileCount; f++) {
+                fileIds[f] = readString(at);
+                filenames[f] = readString(at);
+                fileIndex.put(fileIds[f], f);
+            }
+            this.deletedFiles = new boolean[fileCount];
+            this.fileDocs = new int[fileCount];
+            for (int doc = 0; doc < docCount; doc++) {
+                fileDocs[file(doc)]++;
+            }
+        }
+
+        static Segment open(String name, Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return new Segment(name, path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        void markDeleted(Map<String, Integer> deleted) {
+            int count = 0;
+            for (int f = 0; f < fileIds.length; f++) {
+                Integer before = deleted.get(fileIds[f]);
+                deletedFiles[f] = before != null && generation < before;
+                if (deletedFiles[f]) {
+                    count += fileDocs[f];
+                }
+            }
+            deletedDocs = count;
+        }
+
+        int docFreq(String term) {
+            int ordinal = Arrays.binarySearch(terms, term);
+            return ordinal < 0 ? 0 : docFreqs[ordinal];
+        }
+
+        void forEachPosting(int ordinal, PostingConsumer consumer) {
+            int[] at = {postingOffsets[ordinal]};
+            int doc = -1;
+            for (int i = 0; i < docFreqs[ordinal]; i++) {
+                doc += readVInt(at) + 1;
+                consumer.accept(doc, readVInt(at));
+            }
+        }
+
+        int file(int doc) {
+            return buffer.getInt(docsOffset + doc * DOC_BYTES + 12);
+        }
+
+        int length(int doc) {
+            return buffer.getInt(docsOffset + doc * DOC_BYTES + 8);
+        }
+
+        byte[] textBytes(int doc) {
+            int record = docsOffset + doc * DOC_BYTES;
+            byte[] text = new byte[buffer.getInt(record + 4)];
+            buffer.get(buffer.getInt(record), text);
+            return text;
+        }
+
+        String text(int doc) {
+            return new String(textBytes(doc), StandardCharsets.UTF_8);
+        }
+
+        private int readVInt(int[] at) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get(at[0]++);
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        private String readString(int[] at) {
+            byte[] utf8 = new byte[readVInt(at)];
+            buffer.get(at[0], utf8);
+            at[0] += utf8.length;
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+    }
+
+    // texts first, then postings term by term; records, dictionary, files and footer are written on close
+    static final class SegmentWriter implements Closeable {
+
+        private final DataOutputStream out;
+        private final Map<String, Integer> files = new HashMap<>();
+        private final List<String> fileNames = new ArrayList<>();
+        private final List<String> termList = new ArrayList<>();
+        private int[] docs = new int[DOC_BYTES / 4 * 16];
+        private int[] termMeta = new int[32];
+        private int docCount;
+        private long totalLength;
+
+        SegmentWriter(Path path) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+        }
+
+        int file(String fileId, String filename) {
+            return files.computeIfAbsent(fileId, id -> {
+                fileNames.add(id);
+                fileNames.add(filename == null ? "" : filename);
+                return files.size();
+            });
+        }
+
+        int doc(int file, byte[] text, int length) throws IOException {
+            if ((docCount + 1) * 4 > docs.length) {
+                docs = Arrays.copyOf(docs, docs.length * 2);
+            }
+            int record = docCount * 4;
+            docs[record] = position();
+            docs[record + 1] = text.length;
+            docs[record + 2] = length;
+            docs[record + 3] = file;
+            out.write(text);
+            totalLength += length;
+            return docCount++;
+        }
+
+        void term(String term, int docFreq, byte[] postings, int size) throws IOException {
+            if ((termList.size() + 1) * 2 > termMeta.length) {
+                termMeta = Arrays.copyOf(termMeta, termMeta.length * 2);
+            }
+            termMeta[termList.size() * 2] = docFreq;
+            termMeta[termList.size() * 2 + 1] = position();
+            termList.add(term);
+            out.write(postings, 0, size);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (out) {
+                int docsOffset = position();
+                for (int i = 0; i < docCount * 4; i++) {
+                    out.writeInt(docs[i]);
+                }
+                int termsOffset = position();
+                for (int t = 0; t < termList.size(); t++) {
+                    writeString(termList.get(t));
+                    writeVInt(termMeta[t * 2]);
+                    out.writeInt(termMeta[t * 2 + 1]);
+                }
+                int filesOffset = position();
+                for (String value : fileNames) {
+                    writeString(value);
+                }
+
+                out.writeInt(docsOffset);
+                out.writeInt(termsOffset);
+                out.writeInt(filesOffset);
+                out.writeInt(docCount);
+                out.writeInt(termList.size());
+                out.writeInt(files.size());
+                out.writeLong(totalLength);
+                out.writeInt(VERSION);
+                out.writeInt(MAGIC);
+            }
+        }
+
+        private int position() {
+            if (out.size() < 0 || out.size() == Integer.MAX_VALUE) {
+                throw new IllegalStateException("Lexical index segment exceeds 2 GB");
+            }
+            return out.size();
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVInt(utf8.length);
+            out.write(utf8);
+        }
+
+        private void writeVInt(int value) throws IOException {
+            while ((value & ~0x7f) != 0) {
+                out.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+
+    private static final class TopK {
+
+        private final Segment[] segments;
+        private final int[] docs;
+        private final float[] scores;
+        private int size;
+
+        TopK(int k) {
+            this.segments = new Segment[Math.max(1, k)];
+            this.docs = new int[Math.max(1, k)];
+            this.scores = new float[Math.max(1, k)];
+        }
+
+        void offer(Segment segment, int doc, float score) {
+            if (size == scores.length && score <= scores[size - 1]) {
+                return;
+            }
+            int i = size == scores.length ? size - 1 : size++;
+            while (i > 0 && scores[i - 1] < score) {
+                scores[i] = scores[i - 1];
+                docs[i] = docs[i - 1];
+                segments[i] = segments[i - 1];
+                i--;
+            }
+            scores[i] = score;
+            docs[i] = doc;
+            segments[i] = segment;
+        }
+
+        List<Hit> hits() {
+            List<Hit> hits = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int file = segments[i].file(docs[i]);
+                hits.add(new Hit(segments[i].fileIds[file], segments[i].filenames[file], scores[i], segments[i].text(docs[i])));
+            }
+            return hits;
+        }
+    }
+}
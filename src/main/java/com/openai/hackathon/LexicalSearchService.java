@@ -0,0 +1,175 @@
+package com.openai.hackathon;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.openai.hackathon.LocalRetrievalService.Passage;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/*
+ * Exact-term search over the chunks of uploaded documents, answered in-process without an upstream call.
+ * Embeddings blur rare domain terms like "Anhaltsquotierungsvarianten"; BM25 over German-analyzed terms
+ * finds them. The hits are context for OpenAI prompts and are fused with the vector hits for the local model.
+ */
+@Service
+public class LexicalSearchService implements StatsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(LexicalSearchService.class);
+
+    private final SearchProps props;
+    private final AnswerCache answerCache;
+    private final AtomicBoolean merging = new AtomicBoolean();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder queryMicros = new LongAdder();
+    private final LongAdder merges = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private volatile LexicalIndex index;
+
+    public LexicalSearchService(SearchProps props, AnswerCache answerCache) {
+        this.props = props;
+        this.answerCache = answerCache;
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!props.enabled()) {
+            return;
+        }
+        index = LexicalIndex.open(props.dir(), props.mergeFactor(), props.maxSegmentSize().toBytes(), props.k1(), props.b());
+        log.info("Loaded lexical index: {} chunks in {} segments", index.chunkCount(), index.segmentCount());
+        mergeInBackground();
+    }
+
+    public boolean enabled() {
+        return index != null;
+    }
+
+    public boolean contains(String fileId) {
+        LexicalIndex current = index;
+        return current != null && current.contains(fileId);
+    }
+
+    public void add(String fileId, String filename, List<String> chunks) {
+        LexicalIndex current = index;
+        if (current == null || chunks.isEmpty() || current.contains(fileId)) {
+            return;
+        }
+        try {
+            current.add(fileId, filename, chunks);
+            answerCache.invalidateAll();
+            log.debug("Indexed {} ({}) for lexical search: {} chunks", fileId, filename, chunks.size());
+        } catch (IOException e) {
+            failed.increment();
+            log.warn("Indexing {} ({}) for lexical search failed: {}", fileId, filename, e.getMessage());
+            return;
+        }
+        mergeInBackground();
+    }
+
+    public void remove(String fileId) {
+        LexicalIndex current = index;
+        if (current == null) {
+            return;
+        }
+        try {
+            if (current.delete(fileId)) {
+                answerCache.invalidateAll();
+                mergeInBackground();
+            }
+        } catch (IOException e) {
+            log.warn("Recording the deletion of {} in the lexical index failed: {}", fileId, e.getMessage());
+        }
+    }
+
+    public List<Passage> search(String query, int k) {
+        LexicalIndex current = index;
+        if (current == null || query == null || query.isBlank()) {
+            return List.of();
+        }
+        long started = System.nanoTime();
+        List<Passage> passages = current.search(query, k).stream()
+                .map(hit -> new Passage(hit.fileId(), hit.filename(), hit.score(), hit.text()))
+                .toList();
+        queries.increment();
+        queryMicros.add((System.nanoTime() - started) / 1000);
+        return passages;
+    }
+
+    // the instructions block for an OpenAI prompt, empty when disabled or nothing matches
+    public String context(String query) {
+        if (!props.openaiContext()) {
+            return "";
+        }
+        try {
+            return LocalRetrievalService.format(search(query, props.topK()), props.maxContextChars());
+        } catch (RuntimeException e) {
+            log.warn("Lexical search failed, answering without its context: {}", e.getMessage());
+            return "";
+        }
+    }
+
+    // one merge at a time, on a worker; a finished merge may make the next level mergeable
+    private void mergeInBackground() {
+        LexicalIndex current = index;
+        if (current == null || !merging.compareAndSet(false, true)) {
+            return;
+        }
+        Mono.fromRunnable(() -> {
+                    try {
+                        List<LexicalIndex.Segment> inputs;
+                        while ((inputs = current.nextMerge()) != null) {
+                            long started = System.nanoTime();
+                            current.merge(inputs);
+                            merges.increment();
+                            log.debug("Merged {} lexical index segments in {} ms", inputs.size(), ChatService.elapsedMillis(started));
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        failed.increment();
+                        log.warn("Merging lexical index segments failed: {}", e.getMessage());
+                    } finally {
+                        merging.set(false);
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe();
+    }
+
+    @PreDestroy
+    void close() {
+        if (index != null) {
+            index.close();
+        }
+    }
+
+    @Override
+    public String statsName() {
+        return "search";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        LexicalIndex current = index;
+        long count = queries.sum();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("chunks", current == null ? 0 : current.chunkCount());
+        result.put("segments", current == null ? 0 : current.segmentCount());
+        result.put("merges", merges.sum());
+        result.put("queries", count);
+        result.put("averageQueryMicros", count == 0 ? 0 : queryMicros.sum() / count);
+        result.put("failed", failed.sum());
+        return result;
+    }
+}
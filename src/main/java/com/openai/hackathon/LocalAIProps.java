@@ -1,13 +1,23 @@
 package com.openai.hackathon;
 
+import java.time.Duration;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
 
 @ConfigurationProperties(prefix = "local")
 public record LocalAIProps(
         String token,
         String baseUrl,
-        String model
+        String model,
+        @DefaultValue History history,
+        @DefaultValue HttpClientProps http
 ) {
 
+    public record History(
+            @DefaultValue("4096") int maxTokens,
+            @DefaultValue("false") boolean summarize,
+            @DefaultValue("10000") int maxSessions,
+            @DefaultValue("30m") Duration idleTtl
+    ) {}
 }
-
@@ -0,0 +1,116 @@
+package com.openai.hackathon;
+
+import static com.openai.hackathon.Constants.DEV_PROMPT;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/*
+ * Live histories in a cache; every change is written through to the session store, a miss restores from it.
+ * A cached history older than the stored state was continued on another node and is restored again.
+ * Writes apply the turn to the stored state, not the local window, so a turn another node stored in between
+ * is kept. The store may block on a shared filesystem: callers stay off the event loop.
+ */
+@Component
+public class LocalChatHistories implements StatsSource {
+
+    private static final Map<String, String> SYSTEM_MESSAGE = Map.of("role", "system", "content", DEV_PROMPT);
+
+    private final LocalAIProps.History settings;
+    private final Cache<String, ChatHistory> histories;
+    private final SessionStore store;
+    private final LongAdder droppedMessages = new LongAdder();
+    private final LongAdder summaries = new LongAdder();
+    private final LongAdder restored = new LongAdder();
+    private final LongAdder refreshed = new LongAdder();
+
+    public LocalChatHistories(LocalAIProps props, SessionStore store) {
+        this.settings = props.history();
+        this.store = store;
+        this.histories = Caffeine.newBuilder()
+                .maximumSize(settings.maxSessions())
+                .expireAfterAccess(settings.idleTtl())
+                .build();
+    }
+
+    public ChatHistory forSession(String sessionKey) {
+        if (sessionKey == null) {
+            return newHistory(null);
+        }
+        ChatHistory history = histories.get(sessionKey, key -> restore(key, store.get(key), restored));
+        SessionState state = store.get(sessionKey);
+        if (state != null && state.version() > history.version()) {
+            history = restore(sessionKey, state, refreshed);
+            histories.put(sessionKey, history);
+        }
+        return history;
+    }
+
+    private ChatHistory restore(String sessionKey, SessionState state, LongAdder counter) {
+        ChatHistory history = newHistory(sessionKey);
+        if (state != null) {
+            history.restore(state.summary(), state.history(), state.version());
+            if (!state.history().isEmpty() || state.summary() != null) {
+                counter.increment();
+            }
+        }
+        return history;
+    }
+
+    public void append(ChatHistory history, Map<String, String> userMessage, Map<String, String> assistantMessage) {
+        droppedMessages.add(history.append(userMessage, assistantMessage));
+        persist(history, s -> s.withHistory(s.summary(),
+                history.appendTo(s.history(), s.summary(), userMessage, assistantMessage), System.currentTimeMillis()));
+    }
+
+    // a version that moved by more than this write means another writer came first: the cached copy is stale
+    private void persist(ChatHistory history, UnaryOperator<SessionState> change) {
+        if (history.key() == null) {
+            return;
+        }
+        long known = history.version();
+        SessionState state = store.update(history.key(), change);
+        if (state.version() == known + 1) {
+            history.stored(state.version());
+        } else {
+            histories.asMap().remove(history.key(), history);
+        }
+    }
+
+    public boolean summarizeEnabled() {
+        return settings.summarize();
+    }
+
+    void summarized(ChatHistory history) {
+        summaries.increment();
+        String summary = history.summaryText();
+        persist(history, s -> s.withHistory(summary, s.history(), System.currentTimeMillis()));
+    }
+
+    private ChatHistory newHistory(String sessionKey) {
+        return new ChatHistory(sessionKey, SYSTEM_MESSAGE, settings.maxTokens(), settings.summarize());
+    }
+
+    @Override
+    public String statsName() {
+        return "localHistories";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sessions", histories.estimatedSize());
+        result.put("droppedMessages", droppedMessages.sum());
+        result.put("summaries", summaries.sum());
+        result.put("restored", restored.sum());
+        result.put("refreshed", refreshed.sum());
+        return result;
+    }
+}
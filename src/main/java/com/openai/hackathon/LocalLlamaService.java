@@ -6,77 +6,207 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.springframework.http.HttpHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
 @Service
 public class LocalLlamaService {
 
-    private static final List<Map<String, String>> HISTORY = new ArrayList<>();
+    private static final Logger log = LoggerFactory.getLogger(LocalLlamaService.class);
+
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE =
+            new ParameterizedTypeReference<>() {
+            };
+
+    private static final String SUMMARY_INSTRUCTION = """
+            Summarize the following conversation in a few sentences.
+            Keep names, numbers, document references and open questions. Answer with the summary only.
+            """;
 
     private final WebClient webui;
     private final ObjectMapper om = new ObjectMapper();
     private final LocalAIProps props;
-
-    public LocalLlamaService(LocalAIProps props) {
+    private final LocalChatHistories histories;
+    private final AnswerCache answerCache;
+    private final SingleFlight singleFlight;
+    private final UpstreamMetrics metrics;
+    private final LocalRetrievalService retrieval;
+
+    public LocalLlamaService(LocalAIProps props, LocalChatHistories histories, AnswerCache answerCache,
+                             SingleFlight singleFlight, UpstreamMetrics metrics, LocalRetrievalService retrieval,
+                             WebClient localWebClient) {
         this.props = props;
+        this.histories = histories;
+        this.answerCache = answerCache;
+        this.singleFlight = singleFlight;
+        this.metrics = metrics;
+        this.retrieval = retrieval;
+        this.webui = localWebClient;
+    }
 
-        synchronized (HISTORY) {
-            if (HISTORY.isEmpty()) {
-                HISTORY.add(msg("system", DEV_PROMPT));
-            }
-        }
+    public Mono<String> chat(String userInput) {
+        Map<String, String> userMessage = msg("user", userInput);
+
+        return history(SessionKeys.current(true))
+                .flatMap(history -> withContext(history.snapshotWith(userMessage), userInput)
+                        .flatMap(this::complete)
+                        .flatMap(answer -> remember(history, userMessage, answer).thenReturn(answer)));
+    }
 
-        this.webui = WebClient.builder()
-                .baseUrl(props.baseUrl())
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + props.token())
-                .build();
+    public Mono<String> chatStateless(String userInput) {
+        String key = AnswerCache.key("local", props.model(), "", DEV_PROMPT, userInput);
+        List<Map<String, String>> messages = List.of(msg("system", DEV_PROMPT), msg("user", userInput));
+
+        return answerCache.getOrCompute(key, () -> singleFlight.run(
+                singleFlight.fingerprint("POST", "/api/chat/completions", Map.of("model", props.model(), "messages", messages)),
+                () -> withContext(messages, userInput).flatMap(this::complete)));
     }
 
-    public String chat(String userInput) {
+    public Flux<String> chatStream(String userInput) {
+        String session = SessionKeys.current(true);
+        Map<String, String> userMessage = msg("user", userInput);
 
-        List<Map<String, String>> snapshot;
-        synchronized (HISTORY) {
-            HISTORY.add(msg("user", userInput));
-            snapshot = List.copyOf(HISTORY);
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("model", props.model());
+        payload.put("stream", true);
+
+        long started = System.nanoTime();
+        AtomicBoolean firstToken = new AtomicBoolean(true);
+        StringBuilder answer = new StringBuilder();
+
+        return history(session).flatMapMany(history -> withContext(history.snapshotWith(userMessage), userInput)
+                .flatMapMany(messages -> {
+                    payload.put("messages", messages);
+                    return webui.post()
+                            .uri("/api/chat/completions")
+                            .accept(MediaType.TEXT_EVENT_STREAM)
+                            .bodyValue(payload)
+                            .retrieve()
+                            .bodyToFlux(SSE_TYPE);
+                })
+                .takeWhile(event -> !"[DONE]".equals(event.data()))
+                .<String>handle((event, sink) -> {
+                    String data = event.data();
+                    if (data == null || data.isBlank()) return;
+                    try {
+                        JsonNode root = om.readTree(data);
+                        String delta = root.path("choices").path(0).path("delta").path("content").asText("");
+                        if (!delta.isEmpty()) sink.next(delta);
+                    } catch (Exception e) {
+                        sink.error(new RuntimeException("Failed to parse OpenWebUI stream chunk", e));
+                    }
+                })
+                .doOnNext(delta -> {
+                    if (firstToken.compareAndSet(true, false)) {
+                        metrics.firstToken("local", started);
+                        log.debug("OpenWebUI stream first token after {} ms", ChatService.elapsedMillis(started));
+                    }
+                    answer.append(delta);
+                })
+                // history only sees the turn once the model has finished answering
+                .concatWith(Mono.defer(() -> remember(history, userMessage, answer.toString())).then(Mono.empty()))
+                .doOnComplete(() -> log.debug("OpenWebUI stream completed after {} ms", ChatService.elapsedMillis(started))));
+    }
+
+    // retrieved passages go in as a system message right before the user's turn; the history keeps the bare prompt
+    private Mono<List<Map<String, String>>> withContext(List<Map<String, String>> messages, String userInput) {
+        if (!retrieval.enabled()) {
+            return Mono.just(messages);
         }
+        return retrieval.context(userInput).map(context -> {
+            if (context.isEmpty()) {
+                return messages;
+            }
+            List<Map<String, String>> augmented = new ArrayList<>(messages);
+            augmented.add(augmented.size() - 1, msg("system", context));
+            return augmented;
+        });
+    }
 
+    private Mono<String> complete(List<Map<String, String>> messages) {
         Map<String, Object> payload = new LinkedHashMap<>();
         payload.put("model", props.model());
         payload.put("stream", false);
-        payload.put("messages", snapshot);
+        payload.put("messages", messages);
 
-        String raw = webui.post()
+        return webui.post()
                 .uri("/api/chat/completions")
                 .bodyValue(payload)
                 .retrieve()
                 .bodyToMono(String.class)
-                .block();
+                .defaultIfEmpty("")
+                .map(raw -> {
+                    if (raw.isBlank()) {
+                        throw new IllegalStateException("Empty response from OpenWebUI");
+                    }
+
+                    try {
+                        JsonNode root = om.readTree(raw);
+                        JsonNode usage = root.path("usage");
+                        metrics.usage("local", usage.path("prompt_tokens").asLong(), usage.path("completion_tokens").asLong());
+                        return root.path("choices").path(0).path("message").path("content").asText();
+                    } catch (Exception e) {
+                        throw new RuntimeException("Failed to parse OpenWebUI response", e);
+                    }
+                });
+    }
 
-        if (raw == null || raw.isBlank()) {
-            throw new IllegalStateException("Empty response from OpenWebUI");
-        }
+    // session store reads and writes may block on a shared filesystem, they run off the event loop
+    private Mono<ChatHistory> history(String session) {
+        return Mono.fromCallable(() -> histories.forSession(session)).subscribeOn(Schedulers.boundedElastic());
+    }
 
-        String answer;
-        try {
-            JsonNode root = om.readTree(raw);
-            answer = root.path("choices").path(0).path("message").path("content").asText();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to parse OpenWebUI response", e);
+    private Mono<Void> remember(ChatHistory history, Map<String, String> userMessage, String answer) {
+        return Mono.<Void>fromRunnable(() -> {
+            histories.append(history, userMessage, msg("assistant", answer));
+            if (histories.summarizeEnabled()) {
+                summarizeDropped(history);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // folds turns that left the window into the running summary, one batch per history at a time
+    private void summarizeDropped(ChatHistory history) {
+        List<Map<String, String>> batch = history.takeForSummary();
+        if (batch.isEmpty()) {
+            return;
         }
 
-        synchronized (HISTORY) {
-            HISTORY.add(msg("assistant", answer));
+        StringBuilder transcript = new StringBuilder();
+        String previous = history.summaryText();
+        if (previous != null) {
+            transcript.append(ChatHistory.SUMMARY_PREFIX).append(previous).append("\n\n");
+        }
+        for (Map<String, String> m : batch) {
+            transcript.append(m.get("role")).append(": ").append(m.get("content")).append('\n');
         }
 
-        return answer;
+        complete(List.of(msg("system", SUMMARY_INSTRUCTION), msg("user", transcript.toString())))
+                .publishOn(Schedulers.boundedElastic())
+                .subscribe(
+                        summary -> {
+                            history.summarized(summary);
+                            histories.summarized(history);
+                            summarizeDropped(history);
+                        },
+                        e -> {
+                            log.warn("Summarizing local chat history failed, dropped turns are lost: {}", e.getMessage());
+                            history.summarized(null);
+                        });
     }
 
     private static Map<String, String> msg(String role, String content) {
@@ -0,0 +1,462 @@
+package com.openai.hackathon;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+
+/*
+ * Retrieval for the local backend, the counterpart of OpenAI's file_search. Uploaded documents are
+ * extracted and chunked on upload, embedded by a single background worker and appended to the on-disk
+ * VectorIndex; docs.jsonl records which document ordinal belongs to which file id. A document only
+ * becomes searchable once all its chunks are in, a crash in between leaves chunks nobody looks at.
+ * The same chunks go to the lexical index, the context for a prompt fuses both rankings. A file removed while
+ * it is queued or being embedded is remembered and its document is never committed.
+ */
+@Service
+public class LocalRetrievalService implements StatsSource {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalRetrievalService.class);
+    private static final int RRF_K = 60;
+
+    static final String CONTEXT_PREFIX = """
+            Use the following excerpts from our documents if they help to answer. \
+            Name the document you rely on.
+            """;
+
+    private final RetrievalProps props;
+    private final EmbeddingClient embeddings;
+    private final LexicalSearchService lexical;
+    private final AnswerCache answerCache;
+    private final ObjectMapper om = new ObjectMapper();
+
+    // doc ordinal -> document, file id -> live doc ordinal
+    private final Map<Integer, Document> documents = new ConcurrentHashMap<>();
+    private final Map<String, Integer> byFileId = new ConcurrentHashMap<>();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final Set<String> removedWhilePending = ConcurrentHashMap.newKeySet();
+    private final Sinks.Many<Pending> queue;
+    private final AtomicBoolean training = new AtomicBoolean();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder queryMicros = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private volatile VectorIndex index;
+    private FileChannel docLog;
+    private int nextDoc;
+    private Disposable worker;
+
+    public LocalRetrievalService(RetrievalProps props, EmbeddingClient embeddings, LexicalSearchService lexical,
+                                 AnswerCache answerCache) {
+        this.props = props;
+        this.embeddings = embeddings;
+        this.lexical = lexical;
+        this.answerCache = answerCache;
+        this.queue = Sinks.many().unicast().onBackpressureBuffer(Queues.<Pending>get(props.queueCapacity()).get());
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!props.enabled()) {
+            return;
+        }
+        Files.createDirectories(props.dir());
+        loadDocuments();
+        Integer dim = readMeta();
+        if (dim != null) {
+            index = VectorIndex.open(props.dir(), dim);
+            // chunks of a document that was never committed keep their ordinal, it must not be handed out again
+            nextDoc = Math.max(nextDoc, index.maxDoc() + 1);
+            log.info("Loaded local retrieval index: {} chunks of {} documents", index.size(), byFileId.size());
+            trainInBackground();
+        }
+        docLog = FileChannel.open(props.dir().resolve("docs.jsonl"), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+
+        // one document at a time: embedding is the bottleneck and the index has a single writer
+        worker = queue.asFlux()
+                .concatMap(this::indexDocument)
+                .subscribe();
+    }
+
+    public boolean enabled() {
+        return props.enabled() || lexical.enabled();
+    }
+
+    // extracts and chunks now, while the caller still owns the file; embedding happens in the background
+    public Mono<Void> submit(String fileId, String filename, Path path) {
+        boolean embed = props.enabled() && !byFileId.containsKey(fileId);
+        if (!embed && !(lexical.enabled() && !lexical.contains(fileId))) {
+            return Mono.empty();
+        }
+        if (!TextExtractor.supported(filename)) {
+            skipped.increment();
+            return Mono.empty();
+        }
+        return Mono.fromCallable(() -> {
+                    String text = TextExtractor.extract(path, filename);
+                    return text == null ? List.<String>of() : TextChunker.chunk(text, props.chunkSize(), props.chunkOverlap());
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnNext(chunks -> {
+                    if (chunks.isEmpty()) {
+                        skipped.increment();
+                        return;
+                    }
+                    lexical.add(fileId, filename, chunks);
+                    if (!embed) {
+                        return;
+                    }
+                    if (!pending.add(fileId)) {
+                        log.debug("{} is already queued for local retrieval", fileId);
+                    } else if (emit(new Pending(fileId, filename, chunks)).isFailure()) {
+                        pending.remove(fileId);
+                        failed.increment();
+                        log.warn("Local retrieval queue is full, {} ({}) is not indexed", fileId, filename);
+                    }
+                })
+                .onErrorResume(e -> {
+                    failed.increment();
+                    log.warn("Extracting text from {} ({}) failed: {}", fileId, filename, e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private synchronized Sinks.EmitResult emit(Pending next) {
+        return queue.tryEmitNext(next);
+    }
+
+    // synchronized with commit(): a removal either sees the committed document or stops the commit
+    public synchronized void remove(String fileId) {
+        if (pending.contains(fileId)) {
+            removedWhilePending.add(fileId);
+        }
+        lexical.remove(fileId);
+        Integer doc = byFileId.remove(fileId);
+        if (doc != null) {
+            Document removed = documents.get(doc).asDeleted();
+            documents.put(doc, removed);
+            appendDocument(removed);
+            answerCache.invalidateAll();
+        }
+    }
+
+    public Mono<List<Passage>> search(String query, int k) {
+        VectorIndex current = index;
+        if (!props.enabled() || current == null || query == null || query.isBlank()) {
+            return Mono.just(List.of());
+        }
+        return embeddings.embed(List.of(query))
+                .publishOn(Schedulers.boundedElastic())
+                .map(vectors -> {
+                    long started = System.nanoTime();
+                    List<Passage> passages = new ArrayList<>();
+                    for (VectorIndex.Hit hit : current.search(vectors[0], k, props.nprobe(), this::live)) {
+                        if (hit.score() < props.minScore()) {
+                            continue;
+                        }
+                        Document document = documents.get(hit.doc());
+                        passages.add(new Passage(document.fileId(), document.filename(), hit.score(), text(current, hit.ordinal())));
+                    }
+                    queries.increment();
+                    queryMicros.add((System.nanoTime() - started) / 1000);
+                    return passages;
+                });
+    }
+
+    // the system message with the best passages, empty when nothing relevant is indexed or retrieval fails
+    public Mono<String> context(String query) {
+        return search(query, props.topK())
+                .onErrorResume(e -> {
+                    log.warn("Local retrieval failed, answering with lexical hits only: {}", e.getMessage());
+                    return Mono.just(List.of());
+                })
+                .map(semantic -> format(fuse(semantic, lexical.search(query, props.topK()), props.topK()),
+                        props.maxContextChars()))
+                .onErrorResume(e -> {
+                    log.warn("Local retrieval failed, answering without document context: {}", e.getMessage());
+                    return Mono.just("");
+                });
+    }
+
+    // reciprocal rank fusion: cosine and BM25 scores are not comparable, ranks are
+    static List<Passage> fuse(List<Passage> semantic, List<Passage> lexical, int k) {
+        Map<String, Passage> passages = new LinkedHashMap<>();
+        Map<String, Double> scores = new HashMap<>();
+        for (List<Passage> ranking : List.of(semantic, lexical)) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Passage passage = ranking.get(rank);
+                String key = passage.fileId() + "\n" + passage.text();
+                passages.putIfAbsent(key, passage);
+                scores.merge(key, 1.0 / (RRF_K + rank + 1), Double::sum);
+            }
+        }
+        return passages.keySet().stream()
+                .sorted(Comparator.comparing(scores::get).reversed())
+                .limit(k)
+                .map(passages::get)
+                .toList();
+    }
+
+    static String format(List<Passage> passages, int maxChars) {
+        if (passages.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(CONTEXT_PREFIX);
+        for (Passage passage : passages) {
+            String block = "\n[" + passage.filename() + "]\n" + passage.text() + "\n";
+            if (sb.length() + block.length() > maxChars) {
+                break;
+            }
+            sb.append(block);
+        }
+        return sb.length() == CONTEXT_PREFIX.length() ? "" : sb.toString();
+    }
+
+    private boolean live(int doc) {
+        Document document = documents.get(doc);
+        return document != null && !document.deleted();
+    }
+
+    private Mono<Void> indexDocument(Pending next) {
+        int batchSize = props.embeddings().batchSize();
+        List<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < next.chunks().size(); i += batchSize) {
+            batches.add(next.chunks().subList(i, Math.min(i + batchSize, next.chunks().size())));
+        }
+        if (removedWhilePending.contains(next.fileId())) {
+            finished(next.fileId());
+            return Mono.empty();
+        }
+        int doc = reserveDoc();
+
+        return Flux.fromIterable(batches)
+                .concatMap(batch -> embeddings.embed(batch)
+                        .publishOn(Schedulers.boundedElastic())
+                        .doOnNext(vectors -> append(doc, batch, vectors)))
+                .then(Mono.fromRunnable(() -> {
+                    if (!commit(new Document(doc, next.fileId(), next.filename(), next.chunks().size(), false))) {
+                        log.info("{} ({}) was removed while it was indexed, its chunks stay unused", next.fileId(),
+                                next.filename());
+                        return;
+                    }
+                    log.info("Indexed {} ({}) for local retrieval: {} chunks", next.fileId(), next.filename(),
+                            next.chunks().size());
+                    trainInBackground();
+                }))
+                .onErrorResume(e -> {
+                    failed.increment();
+                    log.warn("Indexing {} ({}) for local retrieval failed: {}", next.fileId(), next.filename(), e.getMessage());
+                    return Mono.empty();
+                })
+                .doFinally(signal -> finished(next.fileId()))
+                .then();
+    }
+
+    private synchronized boolean commit(Document document) {
+        if (removedWhilePending.contains(document.fileId())) {
+            return false;
+        }
+        appendDocument(document);
+        documents.put(document.doc(), document);
+        byFileId.put(document.fileId(), document.doc());
+        answerCache.invalidateAll();
+        return true;
+    }
+
+    private synchronized void finished(String fileId) {
+        removedWhilePending.remove(fileId);
+        pending.remove(fileId);
+    }
+
+    private synchronized int reserveDoc() {
+        return nextDoc++;
+    }
+
+    private void append(int doc, List<String> texts, float[][] vectors) {
+        try {
+            if (index == null) {
+                openIndex(vectors[0].length);
+            }
+            index.addAll(doc, texts, vectors);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed appending to local retrieval index", e);
+        }
+    }
+
+    // the first embedding decides the dimension; another model later means a fresh index
+    private synchronized void openIndex(int dim) throws IOException {
+        if (index != null) {
+            return;
+        }
+        Map<String, Object> meta = Map.of("dim", dim, "model", props.embeddings().model());
+        Files.writeString(props.dir().resolve("meta.json"), om.writeValueAsString(meta), StandardCharsets.UTF_8);
+        index = VectorIndex.open(props.dir(), dim);
+    }
+
+    private Integer readMeta() throws IOException {
+        Path metaPath = props.dir().resolve("meta.json");
+        if (!Files.exists(metaPath)) {
+            return null;
+        }
+        var meta = om.readTree(Files.readString(metaPath, StandardCharsets.UTF_8));
+        if (!props.embeddings().model().equals(meta.path("model").asText())) {
+            // vectors of two models are not comparable: start over, documents have to be uploaded again
+            log.warn("Embedding model changed from {} to {}, discarding the local retrieval index",
+                    meta.path("model").asText(), props.embeddings().model());
+            clearIndexFiles();
+            return null;
+        }
+        return meta.path("dim").asInt();
+    }
+
+    private void clearIndexFiles() throws IOException {
+        try (var files = Files.list(props.dir())) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        documents.clear();
+        byFileId.clear();
+        nextDoc = 0;
+    }
+
+    private void trainInBackground() {
+        VectorIndex current = index;
+        if (current == null || !current.needsTraining(props.trainThreshold()) || !training.compareAndSet(false, true)) {
+            return;
+        }
+        Mono.fromRunnable(() -> {
+                    long started = System.nanoTime();
+                    try {
+                        current.train(System.nanoTime());
+                        log.info("Trained local retrieval index: {} lists over {} chunks in {} ms",
+                                current.listCount(), current.size(), ChatService.elapsedMillis(started));
+                    } catch (IOException e) {
+                        log.warn("Training the local retrieval index failed: {}", e.getMessage());
+                    } finally {
+                        training.set(false);
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe();
+    }
+
+    private String text(VectorIndex current, int ordinal) {
+        try {
+            return current.text(ordinal);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed reading chunk text", e);
+        }
+    }
+
+    private void loadDocuments() throws IOException {
+        Path path = props.dir().resolve("docs.jsonl");
+        if (!Files.exists(path)) {
+            return;
+        }
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                Document document = om.readValue(line, Document.class);
+                documents.put(document.doc(), document);
+                nextDoc = Math.max(nextDoc, document.doc() + 1);
+            } catch (IOException e) {
+                log.warn("Skipping unreadable local retrieval document line: {}", e.getMessage());
+            }
+        }
+        documents.values().stream()
+                .filter(document -> !document.deleted())
+                .forEach(document -> byFileId.put(document.fileId(), document.doc()));
+    }
+
+    private synchronized void appendDocument(Document document) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap((om.writeValueAsString(document) + "\n").getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                docLog.write(buffer);
+            }
+        } catch (IOException e) {
+            log.warn("Failed appending to local retrieval document log: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        if (worker != null) {
+            worker.dispose();
+        }
+        if (index != null) {
+            index.close();
+        }
+        if (docLog != null) {
+            docLog.close();
+        }
+    }
+
+    @Override
+    public String statsName() {
+        return "retrieval";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        VectorIndex current = index;
+        long count = queries.sum();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("documents", byFileId.size());
+        result.put("chunks", current == null ? 0 : current.size());
+        result.put("trained", current != null && current.trained());
+        result.put("lists", current == null ? 0 : current.listCount());
+        result.put("queries", count);
+        result.put("averageQueryMicros", count == 0 ? 0 : queryMicros.sum() / count);
+        result.put("pending", pending.size());
+        result.put("skipped", skipped.sum());
+        result.put("failed", failed.sum());
+        return result;
+    }
+
+    record Pending(String fileId, String filename, List<String> chunks) {}
+
+    public record Passage(String fileId, String filename, float score, String text) {}
+
+    public record Document(int doc, String fileId, String filename, int chunks, boolean deleted) {
+
+        Document asDeleted() {
+            return new Document(doc, fileId, filename, chunks, true);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.openai.hackathon;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/*
+ * Disk tier of the answer cache: one memory-mapped file of append-only records
+ *   [32 byte key][long expiresAt][long latencyMillis][int length][utf-8 answer]
+ * behind a 16 byte header (magic, unused, write position). The offset index is rebuilt by
+ * scanning the records on open. When the file is full it starts over from the header.
+ */
+final class MappedAnswerStore implements AutoCloseable {
+
+    private static final int MAGIC = 0x414e5331; // "ANS1"
+    private static final int HEADER_SIZE = 16;
+    private static final int KEY_SIZE = 32;
+    private static final int RECORD_OVERHEAD = KEY_SIZE + 8 + 8 + 4;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final Map<String, Integer> offsets = new HashMap<>();
+
+    MappedAnswerStore(Path path, int capacity) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        if (buffer.getInt(0) != MAGIC) {
+            reset();
+        } else {
+            scan();
+        }
+    }
+
+    synchronized CachedAnswer get(String key, long now) {
+        Integer offset = offsets.get(key);
+        if (offset == null) {
+            return null;
+        }
+        long expiresAt = buffer.getLong(offset + KEY_SIZE);
+        if (expiresAt < now) {
+            offsets.remove(key);
+            return null;
+        }
+        long latencyMillis = buffer.getLong(offset + KEY_SIZE + 8);
+        int length = buffer.getInt(offset + KEY_SIZE + 16);
+        byte[] bytes = new byte[length];
+        buffer.get(offset + RECORD_OVERHEAD, bytes);
+        return new CachedAnswer(new String(bytes, StandardCharsets.UTF_8), latencyMillis, expiresAt);
+    }
+
+    synchronized void put(String key, CachedAnswer answer) {
+        byte[] bytes = answer.text().getBytes(StandardCharsets.UTF_8);
+        int recordSize = RECORD_OVERHEAD + bytes.length;
+        if (recordSize > buffer.capacity() - HEADER_SIZE) {
+            return;
+        }
+
+        int offset = (int) buffer.getLong(8);
+        if (offset + recordSize > buffer.capacity()) {
+            reset();
+            offset = HEADER_SIZE;
+        }
+
+        buffer.put(offset, HexFormat.of().parseHex(key));
+        buffer.putLong(offset + KEY_SIZE, answer.expiresAt());
+        buffer.putLong(offset + KEY_SIZE + 8, answer.latencyMillis());
+        buffer.putInt(offset + KEY_SIZE + 16, bytes.length);
+        buffer.put(offset + RECORD_OVERHEAD, bytes);
+        buffer.putLong(8, offset + recordSize);
+        offsets.put(key, offset);
+    }
+
+    synchronized void clear() {
+        reset();
+    }
+
+    synchronized int size() {
+        return offsets.size();
+    }
+
+    private void reset() {
+        buffer.putInt(0, MAGIC);
+        buffer.putLong(8, HEADER_SIZE);
+        offsets.clear();
+    }
+
+    private void scan() {
+        long end = buffer.getLong(8);
+        if (end < HEADER_SIZE || end > buffer.capacity()) {
+            reset();
+            return;
+        }
+
+        byte[] key = new byte[KEY_SIZE];
+        int offset = HEADER_SIZE;
+        while (offset + RECORD_OVERHEAD <= end) {
+            int length = buffer.getInt(offset + KEY_SIZE + 16);
+            if (length < 0 || offset + RECORD_OVERHEAD + length > end) {
+                break;
+            }
+            buffer.get(offset, key);
+            offsets.put(HexFormat.of().formatHex(key), offset);
+            offset += RECORD_OVERHEAD + length;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    // expiresAt: epoch millis, the same for both tiers
+    record CachedAnswer(String text, long latencyMillis, long expiresAt) {
+
+    }
+}
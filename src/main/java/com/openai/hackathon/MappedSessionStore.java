@@ -0,0 +1,360 @@
+package com.openai.hackathon;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/*
+ * sessions.store=file: all session states in memory, every change appended to a memory-mapped log
+ *   [int length][int crc32][utf-8 JSON {key, state}]
+ * behind a 24 byte header (magic, unused, generation, write position). A snapshot of all states
+ * periodically starts the next log generation and replaces sessions.snapshot, after which older logs are
+ * deleted, so disk use stays at about one snapshot plus one log. Startup reads the snapshot and replays
+ * only the logs written after it; a record with a bad checksum ends the replay of its log.
+ * Beyond max-sessions the least recently touched session is dropped. Nothing is logged for that: replay
+ * may bring evicted sessions back, trimming by touchedAt after loading drops them again.
+ */
+final class MappedSessionStore implements SessionStore {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedSessionStore.class);
+
+    private static final int MAGIC = 0x53455331; // "SES1"
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_OVERHEAD = 8;
+    private static final String SNAPSHOT = "sessions.snapshot";
+
+    private final Path dir;
+    private final int logSize;
+    private final Duration idleTtl;
+    private final int maxSessions;
+    private final ObjectMapper om = new ObjectMapper();
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+    // keys from least to most recently touched, guarded by this like every change to sessions
+    private final LinkedHashMap<String, Boolean> recency = new LinkedHashMap<>(16, 0.75f, true);
+    private final Object snapshotLock = new Object();
+    private final LongAdder appends = new LongAdder();
+    private final LongAdder snapshots = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long generation;
+    private volatile boolean dirty;
+    private boolean closed;
+    private long replayedRecords;
+    private long startupMillis;
+    private Disposable timer;
+
+    private MappedSessionStore(Path dir, int logSize, Duration idleTtl, int maxSessions) {
+        this.dir = dir;
+        this.logSize = logSize;
+        this.idleTtl = idleTtl;
+        this.maxSessions = maxSessions;
+    }
+
+    static MappedSessionStore open(SessionProps props) throws IOException {
+        MappedSessionStore store = new MappedSessionStore(props.dir(), (int) props.logSize().toBytes(), props.idleTtl(),
+                props.maxSessions());
+        store.load();
+        store.timer = Flux.interval(props.snapshotInterval(), Schedulers.boundedElastic())
+                .subscribe(tick -> store.snapshotIfDirty());
+        return store;
+    }
+
+    private void load() throws IOException {
+        long started = System.nanoTime();
+        Files.createDirectories(dir);
+
+        long covered = -1;
+        Path snapshotPath = dir.resolve(SNAPSHOT);
+        if (Files.exists(snapshotPath)) {
+            Snapshot snapshot = om.readValue(snapshotPath.toFile(), Snapshot.class);
+            covered = snapshot.generation();
+            sessions.putAll(snapshot.sessions());
+        }
+
+        // logs the snapshot already contains are left over from a snapshot that could not delete them
+        List<Long> generations = logGenerations();
+        for (long gen : generations) {
+            if (gen <= covered) {
+                Files.deleteIfExists(logPath(gen));
+            } else {
+                replay(gen);
+            }
+        }
+        long last = generations.isEmpty() ? -1 : generations.getLast();
+        openLog(last > covered ? last : covered + 1);
+
+        synchronized (this) {
+            sessions.entrySet().stream()
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().touchedAt()))
+                    .forEach(entry -> recency.put(entry.getKey(), Boolean.TRUE));
+            removeExpired();
+            evictBeyondMax();
+        }
+        startupMillis = ChatService.elapsedMillis(started);
+        log.info("Loaded {} sessions in {} ms ({} log records replayed)", sessions.size(), startupMillis, replayedRecords);
+    }
+
+    private void replay(long gen) throws IOException {
+        try (FileChannel file = FileChannel.open(logPath(gen), StandardOpenOption.READ)) {
+            MappedByteBuffer records = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            if (records.capacity() < HEADER_SIZE || records.getInt(0) != MAGIC) {
+                return;
+            }
+            long end = Math.min(records.getLong(16), records.capacity());
+            CRC32 crc = new CRC32();
+            int offset = HEADER_SIZE;
+            while (offset + RECORD_OVERHEAD <= end) {
+                int length = records.getInt(offset);
+                if (length <= 0 || offset + RECORD_OVERHEAD + length > end) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                records.get(offset + RECORD_OVERHEAD, bytes);
+                crc.reset();
+                crc.update(bytes);
+                if ((int) crc.getValue() != records.getInt(offset + 4)) {
+                    log.warn("Session log {} is damaged at offset {}, ignoring the rest", gen, offset);
+                    break;
+                }
+                Entry entry = om.readValue(bytes, Entry.class);
+                sessions.put(entry.key(), entry.state());
+                replayedRecords++;
+                offset += RECORD_OVERHEAD + length;
+            }
+        }
+    }
+
+    @Override
+    public SessionState get(String key) {
+        return sessions.get(key);
+    }
+
+    // one lock for map and log: a snapshot never sees a change that is only in a log it is about to delete
+    @Override
+    public synchronized SessionState update(String key, UnaryOperator<SessionState> change) {
+        SessionState state = sessions.get(key);
+        SessionState previous = state == null ? SessionState.empty(System.currentTimeMillis()) : state;
+        SessionState next = change.apply(previous).after(previous);
+        sessions.put(key, next);
+        recency.put(key, Boolean.TRUE);
+        append(key, next);
+        evictBeyondMax();
+        return next;
+    }
+
+    private void evictBeyondMax() {
+        Iterator<String> oldest = recency.keySet().iterator();
+        while (recency.size() > maxSessions) {
+            sessions.remove(oldest.next());
+            oldest.remove();
+            evicted.increment();
+        }
+    }
+
+    private void removeExpired() {
+        long cutoff = System.currentTimeMillis() - idleTtl.toMillis();
+        sessions.entrySet().removeIf(entry -> {
+            if (entry.getValue().touchedAt() >= cutoff) {
+                return false;
+            }
+            recency.remove(entry.getKey());
+            return true;
+        });
+    }
+
+    private void append(String key, SessionState state) {
+        byte[] bytes;
+        try {
+            bytes = om.writeValueAsBytes(new Entry(key, state));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed serializing session state", e);
+        }
+        int recordSize = RECORD_OVERHEAD + bytes.length;
+        if (recordSize > logSize - HEADER_SIZE) {
+            log.warn("Session state of {} is too large for the log ({} bytes), it will not survive a restart", key, bytes.length);
+            return;
+        }
+
+        int offset = (int) buffer.getLong(16);
+        if (offset + recordSize > logSize) {
+            // full: continue in the next generation now, a snapshot in the background makes this one obsolete
+            rotate();
+            offset = HEADER_SIZE;
+            Schedulers.boundedElastic().schedule(this::snapshot);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        buffer.putInt(offset, bytes.length);
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        buffer.put(offset + RECORD_OVERHEAD, bytes);
+        buffer.putLong(16, offset + recordSize);
+        appends.increment();
+        dirty = true;
+    }
+
+    private void snapshotIfDirty() {
+        if (dirty) {
+            snapshot();
+        }
+    }
+
+    // one snapshot at a time; appends only wait for the switch to the next log, not for the snapshot file
+    void snapshot() {
+        synchronized (snapshotLock) {
+            if (closed) {
+                return;
+            }
+            long started = System.nanoTime();
+            Snapshot snapshot;
+            synchronized (this) {
+                removeExpired();
+                snapshot = new Snapshot(generation, new HashMap<>(sessions));
+                rotate();
+                dirty = false;
+            }
+
+            try {
+                // the logs go right after: snapshot data and rename have to be on disk before that
+                Path tmp = dir.resolve(SNAPSHOT + ".tmp");
+                ByteBuffer bytes = ByteBuffer.wrap(om.writeValueAsBytes(snapshot));
+                try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    while (bytes.hasRemaining()) {
+                        out.write(bytes);
+                    }
+                    out.force(true);
+                }
+                Files.move(tmp, dir.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                syncDirectory();
+                for (long gen : logGenerations()) {
+                    if (gen <= snapshot.generation()) {
+                        Files.deleteIfExists(logPath(gen));
+                    }
+                }
+                snapshots.increment();
+                log.debug("Snapshot of {} sessions up to log {} in {} ms", snapshot.sessions().size(), snapshot.generation(),
+                        ChatService.elapsedMillis(started));
+            } catch (IOException e) {
+                // the logs stay, nothing is lost; the next snapshot tries again
+                dirty = true;
+                log.warn("Writing the session snapshot failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void syncDirectory() throws IOException {
+        try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows cannot open a directory; NTFS journals the rename itself
+            log.debug("Cannot sync directory {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private synchronized void rotate() {
+        try {
+            openLog(generation + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed opening the next session log", e);
+        }
+    }
+
+    private void openLog(long gen) throws IOException {
+        if (channel != null) {
+            buffer.force();
+            channel.close();
+        }
+        channel = FileChannel.open(logPath(gen), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, logSize);
+        generation = gen;
+        if (buffer.getInt(0) != MAGIC || buffer.getLong(16) < HEADER_SIZE || buffer.getLong(16) > logSize) {
+            buffer.putInt(0, MAGIC);
+            buffer.putLong(8, gen);
+            buffer.putLong(16, HEADER_SIZE);
+        }
+    }
+
+    private Path logPath(long gen) {
+        return dir.resolve("sessions-%08d.log".formatted(gen));
+    }
+
+    private List<Long> logGenerations() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.matches("sessions-\\d+\\.log"))
+                    .map(name -> Long.parseLong(name.substring(9, name.length() - 4)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    // a last snapshot makes the next startup a plain snapshot read
+    @Override
+    public void close() {
+        if (timer != null) {
+            timer.dispose();
+        }
+        synchronized (snapshotLock) {
+            snapshotIfDirty();
+            closed = true;
+        }
+        synchronized (this) {
+            try {
+                buffer.force();
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Closing the session log failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sessions", sessions.size());
+        result.put("logGeneration", generation);
+        result.put("logBytes", buffer.getLong(16));
+        result.put("appends", appends.sum());
+        result.put("snapshots", snapshots.sum());
+        result.put("maxSessions", maxSessions);
+        result.put("evicted", evicted.sum());
+        result.put("replayedRecords", replayedRecords);
+        result.put("startupMillis", startupMillis);
+        return result;
+    }
+
+    record Entry(String key, SessionState state) {}
+
+    record Snapshot(long generation, Map<String, SessionState> sessions) {}
+}
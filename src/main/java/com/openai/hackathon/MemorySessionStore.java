@@ -0,0 +1,43 @@
+package com.openai.hackathon;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+// sessions.store=memory: state lives as long as the process, idle sessions expire, the least used beyond max-sessions are evicted
+final class MemorySessionStore implements SessionStore {
+
+    private final Cache<String, SessionState> sessions;
+
+    MemorySessionStore(Duration idleTtl, int maxSessions) {
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(maxSessions)
+                .expireAfterAccess(idleTtl)
+                .build();
+    }
+
+    @Override
+    public SessionState get(String key) {
+        return sessions.getIfPresent(key);
+    }
+
+    @Override
+    public SessionState update(String key, UnaryOperator<SessionState> change) {
+        long now = System.currentTimeMillis();
+        return sessions.asMap().compute(key, (k, state) -> {
+            SessionState previous = state == null ? SessionState.empty(now) : state;
+            return change.apply(previous).after(previous);
+        });
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sessions", sessions.estimatedSize());
+        return result;
+    }
+}
@@ -0,0 +1,137 @@
+package com.openai.hackathon;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+@Configuration
+public class MetricsConfig implements WebMvcConfigurer {
+
+    // stats such as per-operation latencies or cache tiers only show up once traffic produced them
+    private static final Duration RESCAN_INTERVAL = Duration.ofSeconds(30);
+
+    private final MeterRegistry registry;
+    private final List<StatsSource> sources;
+    private final Set<String> bound = ConcurrentHashMap.newKeySet();
+    private Disposable rescan;
+
+    public MetricsConfig(MeterRegistry registry, List<StatsSource> sources) {
+        this.registry = registry;
+        this.sources = sources;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry interceptors) {
+        interceptors.addInterceptor(new InflightInterceptor(registry)).addPathPatterns("/api/**");
+    }
+
+    // every numeric /api/stats value as app.stats{source, stat}, nested maps flattened with dots
+    @EventListener(ApplicationReadyEvent.class)
+    void startBinding() {
+        bindStats();
+        rescan = Flux.interval(RESCAN_INTERVAL, Schedulers.boundedElastic()).subscribe(tick -> bindStats());
+    }
+
+    @PreDestroy
+    void stopBinding() {
+        if (rescan != null) {
+            rescan.dispose();
+        }
+    }
+
+    // binds the keys not seen before, gauges of keys that disappear again report NaN
+    void bindStats() {
+        for (StatsSource source : sources) {
+            bind(source, "", source.stats());
+        }
+    }
+
+    private void bind(StatsSource source, String prefix, Map<String, Object> stats) {
+        stats.forEach((key, value) -> {
+            String stat = prefix + key;
+            if (value instanceof Number && bound.add(source.statsName() + " " + stat)) {
+                Gauge.builder("app.stats", source, s -> lookup(s.stats(), stat))
+                        .tags("source", source.statsName(), "stat", stat)
+                        .register(registry);
+            } else if (value instanceof Map<?, ?> nested) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> children = (Map<String, Object>) nested;
+                bind(source, stat + ".", children);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static double lookup(Map<String, Object> stats, String stat) {
+        Object value = stats;
+        for (String key : stat.split("\\.")) {
+            if (!(value instanceof Map<?, ?> map)) {
+                return Double.NaN;
+            }
+            value = ((Map<String, Object>) map).get(key);
+        }
+        return value instanceof Number number ? number.doubleValue() : Double.NaN;
+    }
+
+    /*
+     * http.server.inflight{method, endpoint}: counted up on the first dispatch and down on the last one.
+     * Mono/Flux handlers finish on an ASYNC re-dispatch, the first dispatch of those only starts the work.
+     */
+    private static final class InflightInterceptor implements AsyncHandlerInterceptor {
+
+        private static final String COUNTED = InflightInterceptor.class.getName() + ".counted";
+
+        private final MeterRegistry registry;
+        private final Map<Tags, AtomicInteger> inflight = new ConcurrentHashMap<>();
+
+        InflightInterceptor(MeterRegistry registry) {
+            this.registry = registry;
+        }
+
+        @Override
+        public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+            if (request.getDispatcherType() == DispatcherType.REQUEST) {
+                AtomicInteger gauge = gauge(request);
+                gauge.incrementAndGet();
+                request.setAttribute(COUNTED, gauge);
+            }
+            return true;
+        }
+
+        @Override
+        public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+            if (request.getAttribute(COUNTED) instanceof AtomicInteger gauge) {
+                gauge.decrementAndGet();
+                request.removeAttribute(COUNTED);
+            }
+        }
+
+        private AtomicInteger gauge(HttpServletRequest request) {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            Tags tags = Tags.of("method", request.getMethod(), "endpoint", pattern == null ? "UNKNOWN" : pattern.toString());
+            return inflight.computeIfAbsent(tags, t -> registry.gauge("http.server.inflight", t, new AtomicInteger()));
+        }
+    }
+}
@@ -1,23 +1,48 @@
 package com.openai.hackathon;
 
+import java.io.IOException;
+
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.client.WebClient;
 
 @Configuration
-@EnableConfigurationProperties({OpenAIProps.class, LocalAIProps.class})
+@EnableConfigurationProperties({OpenAIProps.class, LocalAIProps.class, AnswerCacheProps.class, BatchProps.class,
+        RouterProps.class, RetrievalProps.class, SearchProps.class, SessionProps.class})
 public class OpenAIConfig {
 
     @Bean
-    WebClient openAiWebClient(OpenAIProps props) {
+    WebClient openAiWebClient(OpenAIProps props, WebClientFactory factory) {
+        if (props.apiKey() == null || props.apiKey().isBlank()) {
+            throw new IllegalStateException("Missing OpenAI API key. Set openai.api-key (or env mapping to it).");
+        }
+
+        String baseUrl = (props.baseUrl() == null || props.baseUrl().isBlank())
+                ? "https://api.openai.com"
+                : props.baseUrl().trim();
 
-        System.out.println("OpenAIProps - model: " + props.model());
+        return factory.create("openai", baseUrl, props.http(), builder -> builder
+                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + props.apiKey().trim())
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE));
+    }
 
-        return WebClient.builder()
-                .baseUrl(props.baseUrl())
-                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + props.apiKey())
-                .build();
+    @Bean
+    WebClient localWebClient(LocalAIProps props, WebClientFactory factory) {
+        return factory.create("local", props.baseUrl(), props.http(), builder -> builder
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + props.token()));
+    }
+
+    // closed on shutdown, which writes a final snapshot for the file store
+    @Bean
+    SessionStore sessionStore(SessionProps props) throws IOException {
+        return switch (props.store()) {
+            case MEMORY -> new MemorySessionStore(props.idleTtl(), props.maxSessions());
+            case FILE -> MappedSessionStore.open(props);
+            case SHARED -> SharedSessionStore.open(props);
+        };
     }
 }
@@ -1,12 +1,57 @@
 package com.openai.hackathon;
 
 
+import java.nio.file.Path;
+import java.time.Duration;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
 
 @ConfigurationProperties(prefix = "openai")
 public record OpenAIProps(
         String apiKey,
         String baseUrl,
         String model,
-        String vectorStoreId
-) {}
+        String vectorStoreId,
+        @DefaultValue Conversations conversations,
+        @DefaultValue HttpClientProps http,
+        @DefaultValue Files files,
+        @DefaultValue Uploads uploads,
+        @DefaultValue Jobs jobs
+) {
+
+    // compactAboveTokens: input tokens of a turn above which the conversation is summarized into a new one, 0 = never
+    public record Conversations(
+            @DefaultValue("10000") int maxSize,
+            @DefaultValue("30m") Duration idleTtl,
+            @DefaultValue("100000") long compactAboveTokens,
+            @DefaultValue("2000") int summaryMaxTokens
+    ) {}
+
+    public record Files(
+            @DefaultValue("100") int pageSize,
+            @DefaultValue("8") int metadataConcurrency,
+            @DefaultValue("10000") int cacheMaxSize,
+            @DefaultValue("10m") Duration refreshAfter
+    ) {}
+
+    public record Uploads(
+            @DefaultValue("true") boolean dedup,
+            @DefaultValue("data/file-index.log") Path indexPath,
+            @DefaultValue("64KB") DataSize chunkSize,
+            @DefaultValue("4") int parallelism,
+            @DefaultValue("500") int attachBatchSize,
+            @DefaultValue("5000") int maxArchiveEntries,
+            @DefaultValue("2GB") DataSize maxArchiveSize
+    ) {}
+
+    public record Jobs(
+            @DefaultValue("4") int workers,
+            @DefaultValue("1000") int queueCapacity,
+            @DefaultValue("data/jobs") Path dir,
+            @DefaultValue("2s") Duration pollInterval,
+            @DefaultValue("30m") Duration pollTimeout,
+            @DefaultValue("7d") Duration retention
+    ) {}
+}
@@ -0,0 +1,238 @@
+package com.openai.hackathon;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+import reactor.core.publisher.Mono;
+
+/*
+ * Client side of the upstream's quota. The x-ratelimit-* headers of every response reset a request and a
+ * token bucket; each call takes one request and an estimated number of tokens from them. Once a bucket
+ * runs below pace-below of its limit the remaining budget is spread evenly until its reset instead of
+ * being burnt right away, and an empty bucket holds calls until the reset. A 429 pauses all calls for its
+ * retry-after. Retries use full-jitter exponential backoff, never shorter than retry-after: a 429 was not
+ * processed and is always retried, other 5xx only for idempotent methods. A POST is retried on 502, 503 and
+ * 504 only when it has no side effects: uploads, conversations, batches, vector-store attaches and requests
+ * marked with SIDE_EFFECTS (a turn of a conversation) could be applied twice.
+ */
+public final class RateLimitScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(RateLimitScheduler.class);
+    // request attribute, true for calls the upstream must not see twice that the path does not give away
+    public static final String SIDE_EFFECTS = RateLimitScheduler.class.getName() + ".sideEffects";
+
+    private static final Set<HttpMethod> IDEMPOTENT = Set.of(
+            HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.PUT, HttpMethod.DELETE);
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private final String upstream;
+    private final HttpClientProps.RateLimit settings;
+
+    private long limitRequests;
+    private long remainingRequests;
+    private long requestsResetAt;
+    private long limitTokens;
+    private long remainingTokens;
+    private long tokensResetAt;
+    private long pausedUntil;
+    private long nextSlot;
+
+    private long paced;
+    private long pacedNanos;
+    private long retries;
+    private long throttled;
+
+    public RateLimitScheduler(String upstream, HttpClientProps.RateLimit settings) {
+        this.upstream = upstream;
+        this.settings = settings;
+    }
+
+    public ExchangeFilterFunction filter() {
+        return (request, next) -> attempt(request, next, 0);
+    }
+
+    private Mono<ClientResponse> attempt(ClientRequest request, ExchangeFunction next, int attempt) {
+        return Mono.defer(() -> {
+                    long delay = reserve(System.nanoTime());
+                    return delay > 0 ? Mono.delay(Duration.ofNanos(delay)).then() : Mono.<Void>empty();
+                })
+                .then(Mono.defer(() -> next.exchange(request)))
+                .flatMap(response -> {
+                    HttpHeaders headers = response.headers().asHttpHeaders();
+                    int status = response.statusCode().value();
+                    update(headers, System.nanoTime());
+                    if (!retryable(request, status) || attempt >= settings.maxRetries()) {
+                        return Mono.just(response);
+                    }
+
+                    Duration retryAfter = retryAfter(headers);
+                    Duration delay = backoff(attempt, retryAfter);
+                    if (status == 429) {
+                        pause(retryAfter != null ? retryAfter : delay);
+                    }
+                    log.debug("{} {} {} answered {}, retry {} in {} ms", upstream, request.method(), request.url().getPath(),
+                            status, attempt + 1, delay.toMillis());
+                    // the body is drained so the connection goes back to the pool before waiting
+                    return response.releaseBody()
+                            .then(Mono.delay(delay))
+                            .then(attempt(request, next, attempt + 1));
+                });
+    }
+
+    static boolean retryable(ClientRequest request, int status) {
+        if (status == 429) {
+            return true;
+        }
+        if (status < 500) {
+            return false;
+        }
+        if (IDEMPOTENT.contains(request.method())) {
+            return true;
+        }
+        return (status == 502 || status == 503 || status == 504) && !sideEffects(request);
+    }
+
+    private static boolean sideEffects(ClientRequest request) {
+        if (Boolean.TRUE.equals(request.attribute(SIDE_EFFECTS).orElse(null))) {
+            return true;
+        }
+        String path = request.url().getPath();
+        return path.contains("/v1/files") || path.contains("/v1/conversations") || path.contains("/v1/batches")
+                || path.contains("/v1/vector_stores/") && (path.contains("/files") || path.contains("/file_batches"));
+    }
+
+    // nanoseconds the call has to wait before it may go out, its share of both budgets is taken right away
+    synchronized long reserve(long now) {
+        long start = Math.max(now, pausedUntil);
+        long interval = 0;
+        int estimate = settings.estimatedTokens();
+
+        if (limitRequests > 0 && requestsResetAt > now) {
+            if (remainingRequests <= 0) {
+                start = Math.max(start, requestsResetAt);
+            } else if (remainingRequests < limitRequests * settings.paceBelow()) {
+                interval = Math.max(interval, (requestsResetAt - now) / remainingRequests);
+            }
+        }
+        if (limitTokens > 0 && tokensResetAt > now) {
+            if (remainingTokens < estimate) {
+                start = Math.max(start, tokensResetAt);
+            } else if (remainingTokens < limitTokens * settings.paceBelow()) {
+                interval = Math.max(interval, (tokensResetAt - now) / (remainingTokens / estimate));
+            }
+        }
+
+        start = Math.max(start, nextSlot);
+        nextSlot = start + interval;
+        remainingRequests--;
+        remainingTokens -= estimate;
+
+        long delay = start - now;
+        if (delay > 0) {
+            paced++;
+            pacedNanos += delay;
+        }
+        return delay;
+    }
+
+    // the upstream's numbers win over the local estimate, they already include calls of other clients
+    synchronized void update(HttpHeaders headers, long now) {
+        Long limit = number(headers.getFirst("x-ratelimit-limit-requests"));
+        Long remaining = number(headers.getFirst("x-ratelimit-remaining-requests"));
+        Duration reset = duration(headers.getFirst("x-ratelimit-reset-requests"));
+        if (limit != null) limitRequests = limit;
+        if (remaining != null) remainingRequests = remaining;
+        if (reset != null) requestsResetAt = now + reset.toNanos();
+
+        limit = number(headers.getFirst("x-ratelimit-limit-tokens"));
+        remaining = number(headers.getFirst("x-ratelimit-remaining-tokens"));
+        reset = duration(headers.getFirst("x-ratelimit-reset-tokens"));
+        if (limit != null) limitTokens = limit;
+        if (remaining != null) remainingTokens = remaining;
+        if (reset != null) tokensResetAt = now + reset.toNanos();
+    }
+
+    private synchronized void pause(Duration duration) {
+        throttled++;
+        pausedUntil = Math.max(pausedUntil, System.nanoTime() + duration.toNanos());
+    }
+
+    private synchronized Duration backoff(int attempt, Duration retryAfter) {
+        retries++;
+        long cap = Math.min(settings.maxBackoff().toMillis(), settings.initialBackoff().toMillis() << Math.min(attempt, 20));
+        long millis = ThreadLocalRandom.current().nextLong(cap + 1);
+        if (retryAfter != null) {
+            millis = Math.max(millis, retryAfter.toMillis());
+        }
+        return Duration.ofMillis(millis);
+    }
+
+    static Duration retryAfter(HttpHeaders headers) {
+        Long millis = number(headers.getFirst("retry-after-ms"));
+        if (millis != null) {
+            return Duration.ofMillis(millis);
+        }
+        // the HTTP-date form is not used by the APIs we call
+        Long seconds = number(headers.getFirst(HttpHeaders.RETRY_AFTER));
+        return seconds != null ? Duration.ofSeconds(seconds) : null;
+    }
+
+    // OpenAI resets look like "1s", "6m0s", "20ms" or "1h2m3.5s"
+    static Duration duration(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        Matcher m = DURATION_PART.matcher(value.trim());
+        double millis = 0;
+        boolean matched = false;
+        while (m.find()) {
+            matched = true;
+            double amount = Double.parseDouble(m.group(1));
+            millis += switch (m.group(2)) {
+                case "h" -> amount * 3_600_000;
+                case "m" -> amount * 60_000;
+                case "s" -> amount * 1000;
+                default -> amount;
+            };
+        }
+        return matched ? Duration.ofMillis((long) Math.ceil(millis)) : null;
+    }
+
+    private static Long number(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return (long) Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    synchronized Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("limitRequests", limitRequests);
+        result.put("remainingRequests", Math.max(0, remainingRequests));
+        result.put("limitTokens", limitTokens);
+        result.put("remainingTokens", Math.max(0, remainingTokens));
+        result.put("paced", paced);
+        result.put("pacedMillis", pacedNanos / 1_000_000);
+        result.put("retries", retries);
+        result.put("throttled", throttled);
+        return result;
+    }
+}
@@ -0,0 +1,185 @@
+package com.openai.hackathon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Single pass over a Responses API body: only output_text, output[].content[].text and usage are
+ * materialized, everything else (file_search results, annotations, reasoning, ...) is skipped
+ * token by token without building strings or a tree.
+ */
+public final class ResponsesParser {
+
+    static final String NO_TEXT_OUTPUT = "(no text output)";
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private ResponsesParser() {
+    }
+
+    public static Mono<ParsedResponse> parse(Flux<DataBuffer> body, int maxBytes) {
+        return DataBufferUtils.join(body, maxBytes)
+                .map(buffer -> {
+                    try (InputStream in = buffer.asInputStream(true)) {
+                        return parse(in);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Failed parsing OpenAI response JSON: " + e.getMessage(), e);
+                    }
+                })
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("Empty response from OpenAI")));
+    }
+
+    public static ParsedResponse parse(byte[] body) {
+        try {
+            return parse(JSON.createParser(body));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static ParsedResponse parse(InputStream in) throws IOException {
+        return parse(JSON.createParser(in));
+    }
+
+    private static ParsedResponse parse(JsonParser p) throws IOException {
+        try (p) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalStateException("OpenAI response is not a JSON object");
+            }
+
+            String outputText = null;
+            StringBuilder text = new StringBuilder(1024);
+            Usage usage = Usage.NONE;
+
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                if ("output_text".equals(field) && value == JsonToken.VALUE_STRING) {
+                    outputText = p.getText();
+                } else if ("output".equals(field) && value == JsonToken.START_ARRAY) {
+                    readOutput(p, text);
+                } else if ("usage".equals(field) && value == JsonToken.START_OBJECT) {
+                    usage = readUsage(p);
+                } else {
+                    p.skipChildren();
+                }
+            }
+
+            if (outputText != null && !outputText.isBlank()) {
+                return new ParsedResponse(outputText, usage);
+            }
+            String s = text.toString().trim();
+            return new ParsedResponse(s.isBlank() ? NO_TEXT_OUTPUT : s, usage);
+        }
+    }
+
+    private static void readOutput(JsonParser p, StringBuilder text) throws IOException {
+        JsonToken item;
+        while ((item = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (item != JsonToken.START_OBJECT) {
+                p.skipChildren();
+                continue;
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                if ("content".equals(field) && value == JsonToken.START_ARRAY) {
+                    readContent(p, text);
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+    }
+
+    private static void readContent(JsonParser p, StringBuilder text) throws IOException {
+        JsonToken item;
+        while ((item = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (item != JsonToken.START_OBJECT) {
+                p.skipChildren();
+                continue;
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                if ("text".equals(field) && value == JsonToken.VALUE_STRING) {
+                    appendText(p, text);
+                } else if ("text".equals(field) && value == JsonToken.START_OBJECT) {
+                    // older shape: {"text": {"value": "..."}}
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        String inner = p.currentName();
+                        if (p.nextToken() == JsonToken.VALUE_STRING && "value".equals(inner)) {
+                            appendText(p, text);
+                        } else {
+                            p.skipChildren();
+                        }
+                    }
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+    }
+
+    // copies straight from the parser's char buffer, no intermediate String per text item
+    private static void appendText(JsonParser p, StringBuilder text) throws IOException {
+        char[] chars = p.getTextCharacters();
+        int offset = p.getTextOffset();
+        int length = p.getTextLength();
+
+        boolean blank = true;
+        for (int i = offset; i < offset + length; i++) {
+            if (!Character.isWhitespace(chars[i])) {
+                blank = false;
+                break;
+            }
+        }
+        if (blank) {
+            return;
+        }
+        if (!text.isEmpty()) text.append('\n');
+        text.append(chars, offset, length);
+    }
+
+    private static Usage readUsage(JsonParser p) throws IOException {
+        long input = 0;
+        long output = 0;
+        long total = 0;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if (value == JsonToken.VALUE_NUMBER_INT) {
+                switch (field) {
+                    case "input_tokens" -> input = p.getLongValue();
+                    case "output_tokens" -> output = p.getLongValue();
+                    case "total_tokens" -> total = p.getLongValue();
+                    default -> {
+                    }
+                }
+            } else {
+                p.skipChildren();
+            }
+        }
+        return new Usage(input, output, total);
+    }
+
+    public record ParsedResponse(String text, Usage usage) {
+
+    }
+
+    public record Usage(long inputTokens, long outputTokens, long totalTokens) {
+
+        static final Usage NONE = new Usage(0, 0, 0);
+    }
+}
@@ -0,0 +1,67 @@
+package com.openai.hackathon;
+
+import static com.openai.hackathon.Constants.DEV_PROMPT;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// /v1/responses request bodies; plain maps the WebClient encodes, built without any service around them
+final class ResponsesPayloads {
+
+    private final String model;
+    private final String vectorStoreId;
+
+    ResponsesPayloads(String model, String vectorStoreId) {
+        this.model = (model == null || model.isBlank()) ? "gpt-4.1-mini" : model.trim();
+        this.vectorStoreId = vectorStoreId == null ? "" : vectorStoreId.trim();
+    }
+
+    static ResponsesPayloads of(OpenAIProps props) {
+        return new ResponsesPayloads(props.model(), props.vectorStoreId());
+    }
+
+    String model() {
+        return model;
+    }
+
+    String vectorStoreId() {
+        return vectorStoreId;
+    }
+
+    // one user turn, appended to the conversation when there is one
+    Map<String, Object> turn(String conversationId, List<Map<String, String>> content) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("model", model);
+        if (conversationId != null) {
+            payload.put("conversation", conversationId);
+        }
+        payload.put("input", List.of(
+                Map.of(
+                        "role", "user",
+                        "content", content
+                )
+        ));
+
+        if (!vectorStoreId.isBlank()) {
+            payload.put("tools", List.of(
+                    Map.of(
+                            "type", "file_search",
+                            "vector_store_ids", List.of(vectorStoreId)
+                    )
+            ));
+        }
+        return payload;
+    }
+
+    // no conversation: the prompt goes along as instructions
+    Map<String, Object> stateless(String prompt) {
+        Map<String, Object> payload = turn(null, List.of(inputText(prompt)));
+        payload.put("instructions", DEV_PROMPT);
+        return payload;
+    }
+
+    static Map<String, String> inputText(String text) {
+        return Map.of("type", "input_text", "text", text);
+    }
+}
@@ -0,0 +1,30 @@
+package com.openai.hackathon;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "retrieval")
+public record RetrievalProps(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("data/retrieval") Path dir,
+        @DefaultValue Embeddings embeddings,
+        @DefaultValue("1200") int chunkSize,
+        @DefaultValue("200") int chunkOverlap,
+        @DefaultValue("4") int topK,
+        @DefaultValue("0.0") double minScore,
+        @DefaultValue("6000") int maxContextChars,
+        @DefaultValue("20000") int trainThreshold,
+        @DefaultValue("8") int nprobe,
+        @DefaultValue("1000") int queueCapacity
+) {
+
+    public record Embeddings(
+            @DefaultValue("/api/embeddings") String path,
+            @DefaultValue("nomic-embed-text") String model,
+            @DefaultValue("32") int batchSize,
+            @DefaultValue("30s") Duration timeout
+    ) {}
+}
@@ -0,0 +1,18 @@
+package com.openai.hackathon;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "router")
+public record RouterProps(
+        @DefaultValue("local") String prefer,
+        @DefaultValue("15s") Duration budget,
+        @DefaultValue("1500") int localMaxPromptTokens,
+        @DefaultValue("false") boolean fileSearchByDefault,
+        @DefaultValue("0.25") double maxErrorRate,
+        @DefaultValue("5") int minSamples,
+        @DefaultValue("5m") Duration window,
+        @DefaultValue("true") boolean hedge
+) {}
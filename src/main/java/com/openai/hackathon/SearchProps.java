@@ -0,0 +1,20 @@
+package com.openai.hackathon;
+
+import java.nio.file.Path;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties(prefix = "search")
+public record SearchProps(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("data/search") Path dir,
+        @DefaultValue("4") int topK,
+        @DefaultValue("4000") int maxContextChars,
+        @DefaultValue("true") boolean openaiContext,
+        @DefaultValue("10") int mergeFactor,
+        @DefaultValue("1GB") DataSize maxSegmentSize,
+        @DefaultValue("1.2") double k1,
+        @DefaultValue("0.75") double b
+) {}
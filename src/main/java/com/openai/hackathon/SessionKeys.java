@@ -0,0 +1,73 @@
+package com.openai.hackathon;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.regex.Pattern;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+
+/*
+ * The key chat state is stored under: a random id in a long-lived cookie. Servlet session ids die with the
+ * JVM that issued them, this one survives restarts and redeploys.
+ */
+public final class SessionKeys {
+
+    static final String COOKIE = "COBO_SESSION";
+    private static final Duration MAX_AGE = Duration.ofDays(365);
+    private static final Pattern VALID = Pattern.compile("[A-Za-z0-9_-]{22}");
+    private static final String ATTRIBUTE = SessionKeys.class.getName();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private SessionKeys() {
+    }
+
+    // has to run on the request thread; null outside a request or when there is no key and create is false
+    public static String current(boolean create) {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes sra)) {
+            return null;
+        }
+        HttpServletRequest request = sra.getRequest();
+        if (request.getAttribute(ATTRIBUTE) instanceof String key) {
+            return key;
+        }
+
+        String key = fromCookie(request);
+        if (key == null) {
+            if (!create || sra.getResponse() == null) {
+                return null;
+            }
+            byte[] random = new byte[16];
+            RANDOM.nextBytes(random);
+            key = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+            ResponseCookie cookie = ResponseCookie.from(COOKIE, key)
+                    .httpOnly(true)
+                    .secure(request.isSecure())
+                    .sameSite("Lax")
+                    .path("/")
+                    .maxAge(MAX_AGE)
+                    .build();
+            sra.getResponse().addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+        }
+        request.setAttribute(ATTRIBUTE, key);
+        return key;
+    }
+
+    private static String fromCookie(HttpServletRequest request) {
+        if (request.getCookies() == null) {
+            return null;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (COOKIE.equals(cookie.getName()) && VALID.matcher(cookie.getValue()).matches()) {
+                return cookie.getValue();
+            }
+        }
+        return null;
+    }
+}
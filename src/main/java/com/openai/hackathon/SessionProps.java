@@ -0,0 +1,33 @@
+package com.openai.hackathon;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties(prefix = "sessions")
+public record SessionProps(
+        @DefaultValue("file") Store store,
+        @DefaultValue("data/sessions") Path dir,
+        @DefaultValue("64MB") DataSize logSize,
+        @DefaultValue("5m") Duration snapshotInterval,
+        @DefaultValue("30d") Duration idleTtl,
+        @DefaultValue("10000") int maxSessions,
+        @DefaultValue Shared shared
+) {
+
+    public enum Store {
+        MEMORY, FILE, SHARED
+    }
+
+    // sessions.store=shared: a directory all nodes mount
+    public record Shared(
+            @DefaultValue("data/shared-sessions") Path dir,
+            @DefaultValue("0s") Duration nearCacheTtl,
+            @DefaultValue("100000") int nearCacheSize,
+            @DefaultValue("10m") Duration sweepInterval,
+            @DefaultValue("16") int maxAttempts
+    ) {}
+}
@@ -0,0 +1,35 @@
+package com.openai.hackathon;
+
+import java.util.List;
+import java.util.Map;
+
+/*
+ * What a session key keeps across restarts and nodes: its OpenAI conversation, the local history window and
+ * timestamps. The store counts version up on every update; 0 is a state that was never stored.
+ */
+public record SessionState(
+        String conversationId,
+        String summary,
+        List<Map<String, String>> history,
+        long createdAt,
+        long touchedAt,
+        long version
+) {
+
+    static SessionState empty(long now) {
+        return new SessionState(null, null, List.of(), now, now, 0);
+    }
+
+    SessionState withConversation(String conversationId, long now) {
+        return new SessionState(conversationId, summary, history, createdAt, now, version);
+    }
+
+    SessionState withHistory(String summary, List<Map<String, String>> history, long now) {
+        return new SessionState(conversationId, summary, List.copyOf(history), createdAt, now, version);
+    }
+
+    // the state a change makes of previous, as the next version
+    SessionState after(SessionState previous) {
+        return new SessionState(conversationId, summary, history, createdAt, touchedAt, previous.version() + 1);
+    }
+}
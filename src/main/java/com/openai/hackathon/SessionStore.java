@@ -0,0 +1,26 @@
+package com.openai.hackathon;
+
+import java.io.Closeable;
+import java.util.function.UnaryOperator;
+
+// durable per-session state behind ConversationRegistry and LocalChatHistories, chosen by sessions.store
+public interface SessionStore extends StatsSource, Closeable {
+
+    SessionState get(String key);
+
+    /*
+     * Applies the change atomically to the key's state, an empty one for unknown keys, and keeps the result
+     * as the next version. A shared store may apply the change more than once when another node wrote in
+     * between, so it has to be a function of the state it is given.
+     */
+    SessionState update(String key, UnaryOperator<SessionState> change);
+
+    @Override
+    default String statsName() {
+        return "sessions";
+    }
+
+    @Override
+    default void close() {
+    }
+}
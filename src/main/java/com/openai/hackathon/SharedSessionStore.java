@@ -0,0 +1,264 @@
+package com.openai.hackathon;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/*
+ * sessions.store=shared: session states in a directory every node mounts, so any node serves any session.
+ * Each version of a state is its own file, <dir>/<first two key chars>/<key>/<version>.json. A write is a
+ * compare-and-set: the next version is written to a temp file and hard-linked to its final name, which fails
+ * when another node created that version first; the change is then applied again to the newer state.
+ * Reads go through a near-cache that revalidates an entry by listing the key's directory and reads the file
+ * only when the version changed. With a near-cache-ttl above 0 an entry is trusted that long without the
+ * listing, and a node may continue a local history from a window up to that old.
+ */
+final class SharedSessionStore implements SessionStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedSessionStore.class);
+
+    private static final Pattern KEY = Pattern.compile("[A-Za-z0-9_-]+");
+    private static final Pattern VERSION_FILE = Pattern.compile("\\d+\\.json");
+
+    private final Path dir;
+    private final long nearCacheTtlNanos;
+    private final Duration idleTtl;
+    private final int maxAttempts;
+    private final ObjectMapper om = new ObjectMapper();
+    private final Cache<String, Cached> nearCache;
+    private final LongAdder nearHits = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder swept = new LongAdder();
+
+    private Disposable sweeper;
+
+    private SharedSessionStore(SessionProps props) {
+        SessionProps.Shared shared = props.shared();
+        this.dir = shared.dir();
+        this.nearCacheTtlNanos = shared.nearCacheTtl().toNanos();
+        this.idleTtl = props.idleTtl();
+        this.maxAttempts = shared.maxAttempts();
+        this.nearCache = Caffeine.newBuilder()
+                .maximumSize(shared.nearCacheSize())
+                .build();
+    }
+
+    static SharedSessionStore open(SessionProps props) throws IOException {
+        SharedSessionStore store = new SharedSessionStore(props);
+        Files.createDirectories(store.dir);
+        store.sweeper = Flux.interval(props.shared().sweepInterval(), Schedulers.boundedElastic())
+                .subscribe(tick -> store.sweep());
+        log.info("Sharing session state in {}", store.dir.toAbsolutePath());
+        return store;
+    }
+
+    @Override
+    public SessionState get(String key) {
+        Cached cached = nearCache.getIfPresent(key);
+        if (cached != null && System.nanoTime() - cached.checkedAt() < nearCacheTtlNanos) {
+            nearHits.increment();
+            return cached.state();
+        }
+        return load(key, cached);
+    }
+
+    // the latest version on disk; the cached state stays when it still is the latest
+    private SessionState load(String key, Cached cached) {
+        Path keyDir = keyDir(key);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                long latest = latestVersion(keyDir);
+                SessionState state;
+                if (latest == 0) {
+                    state = null;
+                } else if (cached != null && cached.state() != null && cached.state().version() == latest) {
+                    revalidations.increment();
+                    state = cached.state();
+                } else {
+                    state = om.readValue(versionFile(keyDir, latest).toFile(), SessionState.class);
+                    reads.increment();
+                }
+                nearCache.put(key, new Cached(state, System.nanoTime()));
+                return state;
+            } catch (NoSuchFileException e) {
+                // a writer removed the version between listing and reading, there is a newer one
+                if (attempt >= maxAttempts) {
+                    throw new UncheckedIOException("Session state of " + key + " keeps changing", e);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed reading session state of " + key, e);
+            }
+        }
+    }
+
+    @Override
+    public SessionState update(String key, UnaryOperator<SessionState> change) {
+        Path keyDir = keyDir(key);
+        SessionState current = load(key, nearCache.getIfPresent(key));
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            SessionState previous = current == null ? SessionState.empty(System.currentTimeMillis()) : current;
+            SessionState next = change.apply(previous).after(previous);
+            try {
+                if (write(keyDir, next)) {
+                    writes.increment();
+                    nearCache.put(key, new Cached(next, System.nanoTime()));
+                    deleteOlderThan(keyDir, previous.version());
+                    return next;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed writing session state of " + key, e);
+            }
+            // another node wrote this version first, apply the change to what it wrote
+            conflicts.increment();
+            current = load(key, null);
+        }
+        throw new IllegalStateException("Session state of " + key + " kept changing during " + maxAttempts + " attempts");
+    }
+
+    // false when the version already exists, or is an old one that was deleted and is superseded
+    private boolean write(Path keyDir, SessionState state) throws IOException {
+        Files.createDirectories(keyDir);
+        Path tmp = Files.createTempFile(keyDir, "write-", ".tmp");
+        Path target = versionFile(keyDir, state.version());
+        try {
+            om.writeValue(tmp.toFile(), state);
+            Files.createLink(target, tmp);
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        // the latest version is never deleted, so nobody read this one as latest when a newer one exists
+        if (latestVersion(keyDir) > state.version()) {
+            Files.deleteIfExists(target);
+            return false;
+        }
+        return true;
+    }
+
+    // the previous version stays, a reader on another node may have just listed it
+    private void deleteOlderThan(Path keyDir, long version) throws IOException {
+        for (long old : versions(keyDir)) {
+            if (old < version) {
+                Files.deleteIfExists(versionFile(keyDir, old));
+            }
+        }
+    }
+
+    private long latestVersion(Path keyDir) throws IOException {
+        List<Long> versions = versions(keyDir);
+        return versions.isEmpty() ? 0 : versions.getLast();
+    }
+
+    private List<Long> versions(Path keyDir) throws IOException {
+        if (!Files.isDirectory(keyDir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(keyDir)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> VERSION_FILE.matcher(name).matches())
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - 5)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path keyDir(String key) {
+        if (!KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid session key");
+        }
+        return dir.resolve(key.substring(0, Math.min(2, key.length()))).resolve(key);
+    }
+
+    private static Path versionFile(Path keyDir, long version) {
+        return keyDir.resolve(version + ".json");
+    }
+
+    // every node sweeps, deleting what another node deletes at the same time is harmless
+    void sweep() {
+        long cutoff = System.currentTimeMillis() - idleTtl.toMillis();
+        try (Stream<Path> shards = Files.list(dir)) {
+            for (Path shard : shards.toList()) {
+                try (Stream<Path> keys = Files.list(shard)) {
+                    for (Path keyDir : keys.toList()) {
+                        try {
+                            long latest = latestVersion(keyDir);
+                            if (latest == 0 || Files.getLastModifiedTime(versionFile(keyDir, latest)).toMillis() < cutoff) {
+                                deleteSession(keyDir, cutoff);
+                            }
+                        } catch (NoSuchFileException e) {
+                            // swept by another node
+                        }
+                    }
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Sweeping idle sessions failed: {}", e.getMessage());
+        }
+    }
+
+    // files written after the cutoff, by a node that just used the session again, stay
+    private void deleteSession(Path keyDir, long cutoff) throws IOException {
+        try (Stream<Path> files = Files.list(keyDir)) {
+            for (Path file : files.toList()) {
+                if (Files.getLastModifiedTime(file).toMillis() < cutoff) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        try {
+            Files.deleteIfExists(keyDir);
+            nearCache.invalidate(keyDir.getFileName().toString());
+            swept.increment();
+        } catch (IOException e) {
+            // written again meanwhile, the session lives on
+        }
+    }
+
+    @Override
+    public void close() {
+        if (sweeper != null) {
+            sweeper.dispose();
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("nearCacheSize", nearCache.estimatedSize());
+        result.put("nearHits", nearHits.sum());
+        result.put("revalidations", revalidations.sum());
+        result.put("reads", reads.sum());
+        result.put("writes", writes.sum());
+        result.put("conflicts", conflicts.sum());
+        result.put("swept", swept.sum());
+        return result;
+    }
+
+    private record Cached(SessionState state, long checkedAt) {}
+}
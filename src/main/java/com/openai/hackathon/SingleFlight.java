@@ -0,0 +1,84 @@
+package com.openai.hackathon;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.publisher.Mono;
+
+// concurrent callers with the same upstream fingerprint share one in-flight call; nothing is kept after it completes
+@Component
+public class SingleFlight implements StatsSource {
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final ObjectMapper om = new ObjectMapper();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder merged = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> run(String key, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            CompletableFuture<Object> mine = new CompletableFuture<>();
+            CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+            if (existing != null) {
+                merged.increment();
+                return Mono.fromFuture((CompletableFuture<T>) existing, true);
+            }
+
+            calls.increment();
+            // subscribed detached from the first caller: its cancel must not fail the followers
+            call.get().subscribe(
+                    value -> {
+                        inFlight.remove(key, mine);
+                        mine.complete(value);
+                    },
+                    error -> {
+                        inFlight.remove(key, mine);
+                        mine.completeExceptionally(error);
+                    },
+                    () -> {
+                        inFlight.remove(key, mine);
+                        mine.complete(null);
+                    });
+            return Mono.fromFuture((CompletableFuture<T>) mine, true);
+        });
+    }
+
+    public String fingerprint(String method, String uri, Object body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((method + ' ' + uri + '\n').getBytes(StandardCharsets.UTF_8));
+            if (body != null) {
+                digest.update(om.writeValueAsBytes(body));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed fingerprinting upstream request", e);
+        }
+    }
+
+    @Override
+    public String statsName() {
+        return "singleFlight";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("inFlight", inFlight.size());
+        result.put("upstreamCalls", calls.sum());
+        result.put("mergedRequests", merged.sum());
+        return result;
+    }
+}
@@ -0,0 +1,33 @@
+package com.openai.hackathon;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@RestController
+@RequestMapping("/api")
+public class StatsController {
+
+    private final List<StatsSource> sources;
+
+    public StatsController(List<StatsSource> sources) {
+        this.sources = sources;
+    }
+
+    @GetMapping(value = "/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Tag(name = "Stats")
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (StatsSource source : sources) {
+            result.put(source.statsName(), source.stats());
+        }
+        return result;
+    }
+}
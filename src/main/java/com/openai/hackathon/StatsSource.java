@@ -0,0 +1,10 @@
+package com.openai.hackathon;
+
+import java.util.Map;
+
+public interface StatsSource {
+
+    String statsName();
+
+    Map<String, Object> stats();
+}
@@ -0,0 +1,57 @@
+package com.openai.hackathon;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Splits text into chunks of at most size characters that overlap by about overlap characters. A chunk
+ * ends at the last paragraph break, else sentence end, else whitespace in its second half, so chunks
+ * rarely cut through a sentence.
+ */
+final class TextChunker {
+
+    private TextChunker() {
+    }
+
+    static List<String> chunk(String text, int size, int overlap) {
+        if (overlap >= size) {
+            throw new IllegalArgumentException("chunk overlap must be smaller than the chunk size");
+        }
+        String normalized = text.replace("\r\n", "\n").replaceAll("[ \\t\\x0B\\f]+", " ").replaceAll("\n{3,}", "\n\n").strip();
+        List<String> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < normalized.length()) {
+            int end = Math.min(normalized.length(), start + size);
+            if (end < normalized.length()) {
+                end = boundary(normalized, start + size / 2, end);
+            }
+            String chunk = normalized.substring(start, end).strip();
+            if (!chunk.isEmpty()) {
+                chunks.add(chunk);
+            }
+            if (end >= normalized.length()) {
+                break;
+            }
+            int next = end - overlap;
+            // restart the overlap at a word so no chunk begins mid-word
+            int space = normalized.indexOf(' ', next);
+            start = space > next && space < end ? space + 1 : Math.max(next, start + 1);
+        }
+        return chunks;
+    }
+
+    private static int boundary(String text, int from, int to) {
+        int paragraph = text.lastIndexOf("\n\n", to - 2);
+        if (paragraph >= from) {
+            return paragraph + 2;
+        }
+        for (int i = to - 1; i >= from; i--) {
+            char c = text.charAt(i);
+            if ((c == '.' || c == '!' || c == '?') && i + 1 < text.length() && Character.isWhitespace(text.charAt(i + 1))) {
+                return i + 1;
+            }
+        }
+        int space = text.lastIndexOf(' ', to - 1);
+        return space >= from ? space + 1 : to;
+    }
+}
@@ -0,0 +1,77 @@
+package com.openai.hackathon;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+// plain text of an uploaded document, null for formats the local index cannot read
+final class TextExtractor {
+
+    private static final Set<String> TEXT_TYPES = Set.of("txt", "md", "csv", "json", "jsonl", "xml", "yaml", "yml",
+            "log", "java", "py", "js", "ts", "sql", "properties");
+    private static final Set<String> MARKUP_TYPES = Set.of("html", "htm");
+    // what Office exports CSV and text as on German Windows; a superset of ISO-8859-1
+    private static final Charset FALLBACK = Charset.forName("windows-1252");
+
+    private TextExtractor() {
+    }
+
+    static String extract(Path path, String filename) throws IOException {
+        String extension = extension(filename);
+        if ("pdf".equals(extension)) {
+            try (PDDocument document = Loader.loadPDF(path.toFile())) {
+                return new PDFTextStripper().getText(document);
+            }
+        }
+        if (TEXT_TYPES.contains(extension)) {
+            return read(path);
+        }
+        if (MARKUP_TYPES.contains(extension)) {
+            return read(path)
+                    .replaceAll("(?is)<(script|style)[^>]*>.*?</\\1>", " ")
+                    .replaceAll("<[^>]+>", " ")
+                    .replace("&nbsp;", " ")
+                    .replace("&amp;", "&");
+        }
+        return null;
+    }
+
+    // UTF-8 if the bytes are valid UTF-8, otherwise Windows-1252 with unmapped bytes replaced
+    private static String read(Path path) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(bytes)
+                    .toString();
+        } catch (CharacterCodingException e) {
+            return FALLBACK.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(bytes.rewind())
+                    .toString();
+        }
+    }
+
+    static boolean supported(String filename) {
+        String extension = extension(filename);
+        return "pdf".equals(extension) || TEXT_TYPES.contains(extension) || MARKUP_TYPES.contains(extension);
+    }
+
+    private static String extension(String filename) {
+        int dot = filename == null ? -1 : filename.lastIndexOf('.');
+        return dot < 0 ? "" : filename.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
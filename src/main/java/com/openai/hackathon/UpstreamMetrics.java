@@ -0,0 +1,140 @@
+package com.openai.hackathon;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.reactive.ClientHttpRequestDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/*
+ * Per upstream operation: upstream.requests (until the body is fully read), upstream.ttfb (until the
+ * response headers), request/response payload sizes, plus token usage and time to first streamed token
+ * reported by the services.
+ */
+@Component
+public class UpstreamMetrics {
+
+    private final MeterRegistry registry;
+
+    public UpstreamMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public ExchangeFilterFunction filter(String upstream) {
+        return (request, next) -> {
+            String operation = operation(request.method(), request.url().getPath());
+            long started = System.nanoTime();
+            AtomicLong requestBytes = new AtomicLong();
+            AtomicLong responseBytes = new AtomicLong();
+            AtomicReference<String> status = new AtomicReference<>("IO_ERROR");
+
+            ClientRequest counted = ClientRequest.from(request)
+                    .body((outputMessage, context) -> request.body().insert(new ClientHttpRequestDecorator(outputMessage) {
+                        @Override
+                        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                            return super.writeWith(Flux.from(body).doOnNext(b -> requestBytes.addAndGet(b.readableByteCount())));
+                        }
+                    }, context))
+                    .build();
+
+            return next.exchange(counted)
+                    .doOnNext(response -> {
+                        status.set(String.valueOf(response.statusCode().value()));
+                        timer("upstream.ttfb", upstream, operation, null)
+                                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                        summary("upstream.request.bytes", upstream, operation).record(requestBytes.get());
+                    })
+                    .doOnError(e -> timer("upstream.requests", upstream, operation, status.get())
+                            .record(System.nanoTime() - started, TimeUnit.NANOSECONDS))
+                    .map(response -> response.mutate()
+                            .body(body -> body
+                                    .doOnNext(b -> responseBytes.addAndGet(b.readableByteCount()))
+                                    .doFinally(signal -> {
+                                        // bodiless calls release the body by cancelling, that still counts as the HTTP status
+                                        String outcome = signal == SignalType.ON_ERROR ? "IO_ERROR" : status.get();
+                                        timer("upstream.requests", upstream, operation, outcome)
+                                                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                                        summary("upstream.response.bytes", upstream, operation).record(responseBytes.get());
+                                    }))
+                            .build());
+        };
+    }
+
+    public void usage(String upstream, long inputTokens, long outputTokens) {
+        if (inputTokens > 0) tokens(upstream, "input").record(inputTokens);
+        if (outputTokens > 0) tokens(upstream, "output").record(outputTokens);
+    }
+
+    public void firstToken(String upstream, long startedNanos) {
+        timer("upstream.first.token", upstream, "stream", null).record(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(String name, String upstream, String operation, String status) {
+        Timer.Builder builder = Timer.builder(name)
+                .tag("upstream", upstream)
+                .tag("operation", operation)
+                .publishPercentileHistogram();
+        if (status != null) {
+            builder.tag("status", status);
+        }
+        return builder.register(registry);
+    }
+
+    private DistributionSummary summary(String name, String upstream, String operation) {
+        return DistributionSummary.builder(name)
+                .baseUnit("bytes")
+                .tag("upstream", upstream)
+                .tag("operation", operation)
+                .register(registry);
+    }
+
+    private DistributionSummary tokens(String upstream, String type) {
+        return DistributionSummary.builder("upstream.tokens")
+                .baseUnit("tokens")
+                .tag("upstream", upstream)
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    // ids in /v1 paths sit at every other segment after the collection name: /v1/vector_stores/{id}/files/{id}
+    static String operation(HttpMethod method, String path) {
+        String[] segments = path.split("/");
+        if (segments.length > 1 && "v1".equals(segments[1])) {
+            for (int i = 3; i < segments.length; i += 2) {
+                segments[i] = "{id}";
+            }
+        }
+        String template = String.join("/", segments);
+
+        return switch (method.name() + " " + template) {
+            case "POST /v1/conversations" -> "create_conversation";
+            case "POST /v1/responses" -> "responses";
+            case "POST /v1/files" -> "file_upload";
+            case "GET /v1/files/{id}" -> "file_get";
+            case "GET /v1/files/{id}/content" -> "file_content";
+            case "GET /v1/vector_stores/{id}/files" -> "list";
+            case "POST /v1/vector_stores/{id}/files" -> "attach";
+            case "GET /v1/vector_stores/{id}/files/{id}" -> "attach_status";
+            case "DELETE /v1/vector_stores/{id}/files/{id}" -> "delete";
+            case "POST /v1/vector_stores/{id}/file_batches" -> "attach_batch";
+            case "POST /v1/batches" -> "batch_submit";
+            case "GET /v1/batches/{id}" -> "batch_get";
+            case "POST /api/chat/completions" -> "chat_completion";
+            default -> method.name() + " " + template;
+        };
+    }
+}
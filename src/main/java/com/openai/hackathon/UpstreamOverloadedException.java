@@ -0,0 +1,23 @@
+package com.openai.hackathon;
+
+import java.time.Duration;
+
+public class UpstreamOverloadedException extends RuntimeException {
+
+    private final String upstream;
+    private final Duration retryAfter;
+
+    public UpstreamOverloadedException(String upstream, Duration retryAfter) {
+        super("Upstream " + upstream + " is overloaded, retry after " + retryAfter.toSeconds() + "s");
+        this.upstream = upstream;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getUpstream() {
+        return upstream;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
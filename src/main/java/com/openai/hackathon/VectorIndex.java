@@ -0,0 +1,550 @@
+package com.openai.hackathon;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/*
+ * Append-only vector store with an IVF (inverted file) index. Unit-length float32 vectors live off-heap in
+ * memory-mapped segment files of SEGMENT_VECTORS vectors each; per chunk the heap only holds 20 bytes
+ * (text offset/length, document, IVF list), persisted as fixed records in chunks.idx. A chunk counts once
+ * its record is written, so a crash mid-append only loses that batch.
+ *
+ * Until train() has run, queries scan every vector. Training clusters a sample with spherical k-means
+ * into about sqrt(n) lists and stores the centroids in ivf.bin; queries then only scan the nprobe lists
+ * whose centroids are closest to the query.
+ */
+final class VectorIndex implements Closeable {
+
+    static final int SEGMENT_VECTORS = 65_536;
+    private static final int RECORD_BYTES = 20;
+    private static final int MAX_TRAINING_SAMPLE = 16_384;
+    private static final int TRAINING_ITERATIONS = 8;
+
+    private final Path dir;
+    private final int dim;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // copy-on-write: training reads vectors without holding the lock while the writer maps new segments
+    private final List<FileChannel> segmentChannels = new CopyOnWriteArrayList<>();
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+    private final List<FloatBuffer> segmentFloats = new CopyOnWriteArrayList<>();
+    private final FileChannel texts;
+    private FileChannel records;
+
+    private int count;
+    private long textsSize;
+    private long[] textOffsets = new long[1024];
+    private int[] textLengths = new int[1024];
+    private int[] docs = new int[1024];
+    private int[] lists = new int[1024];
+
+    private float[] centroids;
+    private int nlist;
+    private int[][] members;
+    private int[] memberCounts;
+    private int trainedCount;
+
+    private VectorIndex(Path dir, int dim) throws IOException {
+        this.dir = dir;
+        this.dim = dim;
+        Files.createDirectories(dir);
+        this.texts = FileChannel.open(dir.resolve("texts.utf8"), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.records = FileChannel.open(dir.resolve("chunks.idx"), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    static VectorIndex open(Path dir, int dim) throws IOException {
+        VectorIndex index = new VectorIndex(dir, dim);
+        index.load();
+        return index;
+    }
+
+    int dimension() {
+        return dim;
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean trained() {
+        lock.readLock().lock();
+        try {
+            return centroids != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int listCount() {
+        lock.readLock().lock();
+        try {
+            return nlist;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int maxDoc() {
+        lock.readLock().lock();
+        try {
+            int max = -1;
+            for (int ordinal = 0; ordinal < count; ordinal++) {
+                max = Math.max(max, docs[ordinal]);
+            }
+            return max;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     * Single writer: vectors and texts go past the published count where queries do not look, are flushed,
+     * then the records are written and the new chunks published under the write lock.
+     */
+    synchronized void addAll(int doc, List<String> chunkTexts, float[][] vectors) throws IOException {
+        if (chunkTexts.size() != vectors.length) {
+            throw new IllegalArgumentException("one vector per chunk text expected");
+        }
+        int n = vectors.length;
+        if (n == 0) {
+            return;
+        }
+
+        ByteBuffer recordBuffer = ByteBuffer.allocate(RECORD_BYTES * n).order(ByteOrder.LITTLE_ENDIAN);
+        long[] offsets = new long[n];
+        int[] lengths = new int[n];
+        int[] assigned = new int[n];
+        long offset = textsSize;
+        for (int i = 0; i < n; i++) {
+            if (vectors[i].length != dim) {
+                throw new IllegalArgumentException("vector has " + vectors[i].length + " dimensions, index has " + dim);
+            }
+            int ordinal = count + i;
+            segmentFor(ordinal).put((ordinal % SEGMENT_VECTORS) * dim, vectors[i]);
+
+            byte[] bytes = chunkTexts.get(i).getBytes(StandardCharsets.UTF_8);
+            writeFully(texts, ByteBuffer.wrap(bytes), offset);
+            offsets[i] = offset;
+            lengths[i] = bytes.length;
+            assigned[i] = centroids == null ? -1 : nearest(vectors[i], 0, centroids, nlist);
+            recordBuffer.putLong(offset).putInt(bytes.length).putInt(doc).putInt(assigned[i]);
+            offset += bytes.length;
+        }
+        for (int s = count / SEGMENT_VECTORS; s <= (count + n - 1) / SEGMENT_VECTORS; s++) {
+            segments.get(s).force();
+        }
+        texts.force(false);
+        writeFully(records, recordBuffer.flip(), (long) count * RECORD_BYTES);
+        records.force(false);
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < n; i++) {
+                remember(count + i, offsets[i], lengths[i], doc, assigned[i]);
+                if (assigned[i] >= 0) {
+                    addMember(assigned[i], count + i);
+                }
+            }
+            count += n;
+            textsSize = offset;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    List<Hit> search(float[] query, int k, int nprobe, IntPredicate liveDoc) {
+        lock.readLock().lock();
+        try {
+            TopK top = new TopK(k);
+            float[] scratch = new float[dim];
+            if (centroids == null) {
+                for (int ordinal = 0; ordinal < count; ordinal++) {
+                    if (liveDoc.test(docs[ordinal])) {
+                        top.offer(ordinal, score(query, ordinal, scratch));
+                    }
+                }
+            } else {
+                for (int list : closestLists(query, Math.min(nprobe, nlist))) {
+                    int[] ordinals = members[list];
+                    for (int i = 0; i < memberCounts[list]; i++) {
+                        int ordinal = ordinals[i];
+                        if (liveDoc.test(docs[ordinal])) {
+                            top.offer(ordinal, score(query, ordinal, scratch));
+                        }
+                    }
+                }
+            }
+            return top.hits(docs);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    String text(int ordinal) throws IOException {
+        long offset;
+        int length;
+        lock.readLock().lock();
+        try {
+            offset = textOffsets[ordinal];
+            length = textLengths[ordinal];
+        } finally {
+            lock.readLock().unlock();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (texts.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("chunk text beyond the end of texts.utf8");
+            }
+        }
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+
+    boolean needsTraining(int threshold) {
+        lock.readLock().lock();
+        try {
+            return count >= threshold && (centroids == null || count >= 2L * trainedCount);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the expensive part runs without the lock, queries keep using the previous lists meanwhile
+    void train(long seed) throws IOException {
+        int n = size();
+        int sampleSize = Math.min(n, MAX_TRAINING_SAMPLE);
+        int lists = Math.max(1, Math.min((int) Math.round(Math.sqrt(n)), sampleSize / 8));
+        Random random = new Random(seed);
+
+        float[] sample = new float[sampleSize * dim];
+        int[] picked = random.ints(0, n).distinct().limit(sampleSize).toArray();
+        for (int i = 0; i < sampleSize; i++) {
+            vector(picked[i], sample, i * dim);
+        }
+
+        float[] trained = new float[lists * dim];
+        for (int c = 0; c < lists; c++) {
+            System.arraycopy(sample, c * dim, trained, c * dim, dim);
+        }
+        int[] assignment = new int[sampleSize];
+        for (int iteration = 0; iteration < TRAINING_ITERATIONS; iteration++) {
+            for (int i = 0; i < sampleSize; i++) {
+                assignment[i] = nearest(sample, i * dim, trained, lists);
+            }
+            float[] sums = new float[lists * dim];
+            int[] sizes = new int[lists];
+            for (int i = 0; i < sampleSize; i++) {
+                int c = assignment[i];
+                sizes[c]++;
+                for (int d = 0; d < dim; d++) {
+                    sums[c * dim + d] += sample[i * dim + d];
+                }
+            }
+            for (int c = 0; c < lists; c++) {
+                if (sizes[c] == 0) {
+                    // an empty list restarts at a random sample vector
+                    System.arraycopy(sample, random.nextInt(sampleSize) * dim, sums, c * dim, dim);
+                }
+                normalize(sums, c * dim);
+            }
+            trained = sums;
+        }
+
+        int[] assigned = new int[n];
+        float[] scratch = new float[dim];
+        for (int ordinal = 0; ordinal < n; ordinal++) {
+            vector(ordinal, scratch, 0);
+            assigned[ordinal] = nearest(scratch, 0, trained, lists);
+        }
+        install(trained, lists, assigned, n);
+    }
+
+    private synchronized void install(float[] trained, int lists, int[] assigned, int n) throws IOException {
+        lock.writeLock().lock();
+        try {
+            centroids = trained;
+            nlist = lists;
+            trainedCount = count;
+            float[] scratch = new float[dim];
+            for (int ordinal = 0; ordinal < count; ordinal++) {
+                if (ordinal < n) {
+                    this.lists[ordinal] = assigned[ordinal];
+                } else {
+                    vector(ordinal, scratch, 0);
+                    this.lists[ordinal] = nearest(scratch, 0, trained, lists);
+                }
+            }
+            rebuildMembers();
+            writeCentroids();
+            rewriteRecords();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void load() throws IOException {
+        long size = records.size();
+        int loaded = (int) (size / RECORD_BYTES);
+        if (size % RECORD_BYTES != 0) {
+            records.truncate((long) loaded * RECORD_BYTES); // torn record of an interrupted append
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(loaded * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (records.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        for (int ordinal = 0; ordinal < loaded; ordinal++) {
+            remember(ordinal, buffer.getLong(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+            textsSize = Math.max(textsSize, textOffsets[ordinal] + textLengths[ordinal]);
+        }
+        count = loaded;
+        for (int s = 0; s * SEGMENT_VECTORS < count; s++) {
+            mapSegment(s);
+        }
+
+        Path ivf = dir.resolve("ivf.bin");
+        if (Files.exists(ivf)) {
+            ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(ivf)).order(ByteOrder.LITTLE_ENDIAN);
+            int lists = header.getInt();
+            if (header.getInt() == dim) {
+                trainedCount = header.getInt();
+                float[] trained = new float[lists * dim];
+                header.asFloatBuffer().get(trained);
+                centroids = trained;
+                nlist = lists;
+                float[] scratch = new float[dim];
+                for (int ordinal = 0; ordinal < count; ordinal++) {
+                    if (this.lists[ordinal] < 0 || this.lists[ordinal] >= lists) {
+                        vector(ordinal, scratch, 0);
+                        this.lists[ordinal] = nearest(scratch, 0, trained, lists);
+                    }
+                }
+                rebuildMembers();
+            }
+        }
+    }
+
+    private void remember(int ordinal, long offset, int length, int doc, int list) {
+        if (ordinal == docs.length) {
+            int capacity = docs.length * 2;
+            textOffsets = Arrays.copyOf(textOffsets, capacity);
+            textLengths = Arrays.copyOf(textLengths, capacity);
+            docs = Arrays.copyOf(docs, capacity);
+            lists = Arrays.copyOf(lists, capacity);
+        }
+        textOffsets[ordinal] = offset;
+        textLengths[ordinal] = length;
+        docs[ordinal] = doc;
+        lists[ordinal] = list;
+    }
+
+    private void rebuildMembers() {
+        members = new int[nlist][];
+        memberCounts = new int[nlist];
+        for (int c = 0; c < nlist; c++) {
+            members[c] = new int[16];
+        }
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            addMember(lists[ordinal], ordinal);
+        }
+    }
+
+    private void addMember(int list, int ordinal) {
+        if (memberCounts[list] == members[list].length) {
+            members[list] = Arrays.copyOf(members[list], members[list].length * 2);
+        }
+        members[list][memberCounts[list]++] = ordinal;
+    }
+
+    private int[] closestLists(float[] query, int probes) {
+        TopK top = new TopK(probes);
+        for (int c = 0; c < nlist; c++) {
+            top.offer(c, dot(query, 0, centroids, c * dim, dim));
+        }
+        return top.ordinals();
+    }
+
+    private float score(float[] query, int ordinal, float[] scratch) {
+        vector(ordinal, scratch, 0);
+        return dot(query, 0, scratch, 0, dim);
+    }
+
+    private void vector(int ordinal, float[] target, int offset) {
+        segmentFloats.get(ordinal / SEGMENT_VECTORS).get((ordinal % SEGMENT_VECTORS) * dim, target, offset, dim);
+    }
+
+    private int nearest(float[] vector, int offset, float[] candidates, int candidateCount) {
+        int best = 0;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int c = 0; c < candidateCount; c++) {
+            float score = dot(vector, offset, candidates, c * dim, dim);
+            if (score > bestScore) {
+                bestScore = score;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    // four independent sums let the JIT keep several multiply-adds in flight
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    private void normalize(float[] vectors, int offset) {
+        double norm = 0;
+        for (int d = offset; d < offset + dim; d++) {
+            norm += vectors[d] * vectors[d];
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int d = offset; d < offset + dim; d++) {
+                vectors[d] *= scale;
+            }
+        }
+    }
+
+    private FloatBuffer segmentFor(int ordinal) throws IOException {
+        int segment = ordinal / SEGMENT_VECTORS;
+        while (segments.size() <= segment) {
+            mapSegment(segments.size());
+        }
+        return segmentFloats.get(segment);
+    }
+
+    // mapped at full size right away; the file stays sparse until vectors are written
+    private void mapSegment(int segment) throws IOException {
+        FileChannel channel = FileChannel.open(dir.resolve(String.format("vectors-%05d.f32", segment)),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) SEGMENT_VECTORS * dim * Float.BYTES);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        segmentChannels.add(channel);
+        segments.add(mapped);
+        segmentFloats.add(mapped.asFloatBuffer());
+    }
+
+    private void writeCentroids() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(12 + centroids.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(nlist).putInt(dim).putInt(trainedCount);
+        buffer.asFloatBuffer().put(centroids);
+        Path tmp = dir.resolve("ivf.bin.tmp");
+        Files.write(tmp, buffer.array());
+        Files.move(tmp, dir.resolve("ivf.bin"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void rewriteRecords() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(count * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            buffer.putLong(textOffsets[ordinal]).putInt(textLengths[ordinal]).putInt(docs[ordinal]).putInt(lists[ordinal]);
+        }
+        Path tmp = dir.resolve("chunks.idx.tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            writeFully(channel, buffer.flip(), 0);
+            channel.force(false);
+        }
+        records.close();
+        Files.move(tmp, dir.resolve("chunks.idx"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        records = FileChannel.open(dir.resolve("chunks.idx"), StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+            for (FileChannel channel : segmentChannels) {
+                channel.close();
+            }
+            texts.close();
+            records.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    record Hit(int ordinal, int doc, float score) {}
+
+    // the k best by score, k is small enough that insertion into a sorted array beats a heap
+    private static final class TopK {
+
+        private final int[] ordinals;
+        private final float[] scores;
+        private int size;
+
+        TopK(int k) {
+            this.ordinals = new int[Math.max(1, k)];
+            this.scores = new float[Math.max(1, k)];
+        }
+
+        void offer(int ordinal, float score) {
+            if (size == scores.length && score <= scores[size - 1]) {
+                return;
+            }
+            int i = size == scores.length ? size - 1 : size++;
+            while (i > 0 && scores[i - 1] < score) {
+                scores[i] = scores[i - 1];
+                ordinals[i] = ordinals[i - 1];
+                i--;
+            }
+            scores[i] = score;
+            ordinals[i] = ordinal;
+        }
+
+        int[] ordinals() {
+            return Arrays.copyOf(ordinals, size);
+        }
+
+        List<Hit> hits(int[] docs) {
+            List<Hit> hits = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                hits.add(new Hit(ordinals[i], docs[ordinals[i]], scores[i]));
+            }
+            return hits;
+        }
+    }
+}
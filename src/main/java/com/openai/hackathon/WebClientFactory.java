@@ -0,0 +1,124 @@
+package com.openai.hackathon;
+
+import java.net.SocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.netty.channel.ChannelOption;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+@Component
+public class WebClientFactory implements StatsSource {
+
+    private final ObjectProvider<WebClient.Builder> builders;
+    private final UpstreamMetrics metrics;
+    private final Map<String, HttpClientProps> settings = new ConcurrentHashMap<>();
+    private final Map<String, AdaptiveLimiter> limiters = new ConcurrentHashMap<>();
+    private final Map<String, RateLimitScheduler> schedulers = new ConcurrentHashMap<>();
+    // pool name -> remote address -> live pool metrics, registered by reactor-netty as pools get created
+    private final Map<String, Map<SocketAddress, ConnectionPoolMetrics>> pools = new ConcurrentHashMap<>();
+
+    public WebClientFactory(ObjectProvider<WebClient.Builder> builders, UpstreamMetrics metrics) {
+        this.builders = builders;
+        this.metrics = metrics;
+    }
+
+    public WebClient create(String name, String baseUrl, HttpClientProps http, Consumer<WebClient.Builder> customizer) {
+        settings.put(name, http);
+
+        ConnectionProvider provider = ConnectionProvider.builder(name)
+                .maxConnections(http.maxConnections())
+                .pendingAcquireMaxCount(http.pendingAcquireMaxCount())
+                .pendingAcquireTimeout(http.pendingAcquireTimeout())
+                .maxIdleTime(http.maxIdleTime())
+                .maxLifeTime(http.maxLifeTime())
+                .evictInBackground(http.maxIdleTime())
+                .metrics(true, () -> (poolName, id, remoteAddress, metrics) ->
+                        pools.computeIfAbsent(poolName, k -> new ConcurrentHashMap<>()).put(remoteAddress, metrics))
+                .build();
+
+        HttpClient client = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) http.connectTimeout().toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(http.responseTimeout())
+                .compress(http.compress());
+
+        if (http.http2()) {
+            // h2 is negotiated via ALPN on TLS, plain http upstreams get an h2c upgrade attempt
+            client = baseUrl.startsWith("https")
+                    ? client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11)
+                    : client.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+
+        WebClient.Builder builder = builders.getObject()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(client))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize((int) http.maxInMemorySize().toBytes()));
+        if (http.rateLimit().enabled()) {
+            // outermost: quota pacing and retry backoff wait without holding a concurrency permit
+            RateLimitScheduler scheduler = new RateLimitScheduler(name, http.rateLimit());
+            schedulers.put(name, scheduler);
+            builder.filter(scheduler.filter());
+        }
+        if (http.limit().enabled()) {
+            // every attempt takes its own permit, so a latency sample is a single exchange; it wraps the
+            // metrics filter so upstream timings exclude the wait for a permit
+            AdaptiveLimiter limiter = new AdaptiveLimiter(name, http.limit(), http.maxConnections());
+            limiters.put(name, limiter);
+            builder.filter(limiter.filter());
+        }
+        builder.filter(metrics.filter(name));
+        customizer.accept(builder);
+        return builder.build();
+    }
+
+    @Override
+    public String statsName() {
+        return "httpPools";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        settings.forEach((name, http) -> {
+            int active = 0;
+            int idle = 0;
+            int allocated = 0;
+            int pending = 0;
+            for (ConnectionPoolMetrics m : pools.getOrDefault(name, Map.of()).values()) {
+                active += m.acquiredSize();
+                idle += m.idleSize();
+                allocated += m.allocatedSize();
+                pending += m.pendingAcquireSize();
+            }
+
+            Map<String, Object> pool = new LinkedHashMap<>();
+            pool.put("active", active);
+            pool.put("idle", idle);
+            pool.put("allocated", allocated);
+            pool.put("pendingAcquires", pending);
+            pool.put("maxConnections", http.maxConnections());
+            pool.put("maxPendingAcquires", http.pendingAcquireMaxCount());
+            AdaptiveLimiter limiter = limiters.get(name);
+            if (limiter != null) {
+                pool.put("concurrencyLimit", limiter.stats());
+            }
+            RateLimitScheduler scheduler = schedulers.get(name);
+            if (scheduler != null) {
+                pool.put("rateLimit", scheduler.stats());
+            }
+            result.put(name, pool);
+        });
+        return result;
+    }
+}
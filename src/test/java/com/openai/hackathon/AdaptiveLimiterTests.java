@@ -0,0 +1,133 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+class AdaptiveLimiterTests {
+
+    private static HttpClientProps.Limit limit(int initial, int maxQueue, Duration maxWait) {
+        return new HttpClientProps.Limit(true, initial, 1, 50, maxQueue, maxWait, 3.0, 0.5);
+    }
+
+    @Test
+    void rejectsOnceLimitAndQueueAreFull() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("openai", limit(1, 1, Duration.ofSeconds(5)), 100);
+
+        limiter.acquire("responses").block();
+        AtomicReference<Long> granted = new AtomicReference<>();
+        Disposable waiting = limiter.acquire("responses").subscribe(granted::set);
+        assertEquals(1, limiter.stats().get("queued"));
+
+        Object rejected = limiter.acquire("responses").map(Object.class::cast).onErrorResume(e -> Mono.just(e)).block();
+        UpstreamOverloadedException overloaded = assertInstanceOf(UpstreamOverloadedException.class, rejected);
+        assertEquals("openai", overloaded.getUpstream());
+        assertTrue(overloaded.getRetryAfter().toSeconds() >= 1);
+        assertEquals(1L, limiter.stats().get("rejected"));
+
+        // the queued caller gets the slot as soon as it is released
+        limiter.release("responses", 0, false);
+        assertTrue(granted.get() != null);
+        assertEquals(1, limiter.stats().get("inflight"));
+        waiting.dispose();
+    }
+
+    @Test
+    void queuedCallsTimeOut() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("local", limit(1, 10, Duration.ofMillis(50)), 100);
+        limiter.acquire("responses").block();
+
+        Object result = limiter.acquire("responses").map(Object.class::cast).onErrorResume(e -> Mono.just(e))
+                .block(Duration.ofSeconds(5));
+        assertInstanceOf(UpstreamOverloadedException.class, result);
+        assertEquals(1L, limiter.stats().get("queueTimeouts"));
+        assertEquals(0, limiter.stats().get("queued"));
+        assertEquals(1, limiter.stats().get("inflight"));
+    }
+
+    @Test
+    void dropsShrinkAndFastSamplesGrowTheLimit() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("openai", limit(8, 10, Duration.ofSeconds(1)), 100);
+
+        limiter.acquire("responses").block();
+        limiter.release("responses", 0, true);
+        assertEquals(4, limiter.stats().get("limit"));
+
+        // saturated and as fast as the no-load latency: additive increase
+        for (int i = 0; i < 40; i++) {
+            for (int j = 0; j < 4; j++) {
+                limiter.acquire("responses").block();
+            }
+            for (int j = 0; j < 4; j++) {
+                limiter.release("responses", 1_000_000, false);
+            }
+        }
+        assertTrue((int) limiter.stats().get("limit") > 4);
+
+        // latency far above the no-load baseline shrinks it again
+        int before = (int) limiter.stats().get("limit");
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire("responses").block();
+            limiter.release("responses", 50_000_000, false);
+        }
+        assertTrue((int) limiter.stats().get("limit") < before);
+        assertEquals(0, limiter.stats().get("inflight"));
+    }
+
+    @Test
+    void latencyIsComparedPerOperation() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("openai", limit(8, 10, Duration.ofSeconds(1)), 100);
+
+        // a fast listing and a slow responses call both stay at their own baseline
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire("list").block();
+            limiter.release("list", 5_000_000, false);
+            limiter.acquire("responses").block();
+            limiter.release("responses", 2_000_000_000L, false);
+        }
+        assertEquals(8, limiter.stats().get("limit"));
+    }
+
+    @Test
+    void retryBackoffHoldsNoPermitAndStaysOutOfTheSample() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("openai", limit(8, 10, Duration.ofSeconds(1)), 100);
+        RateLimitScheduler scheduler = new RateLimitScheduler("openai",
+                new HttpClientProps.RateLimit(true, 2, Duration.ofMillis(10), Duration.ofMillis(50), 0.2, 100));
+        ExchangeFilterFunction filters = scheduler.filter().andThen(limiter.filter());
+        ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("http://upstream/v1/files")).build();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<ClientResponse> response = filters.filter(request, r -> Mono.fromSupplier(() ->
+                calls.incrementAndGet() == 1
+                        ? ClientResponse.create(HttpStatus.TOO_MANY_REQUESTS).header("retry-after-ms", "400").build()
+                        : ClientResponse.create(HttpStatus.OK).build())).toFuture();
+
+        Thread.sleep(150);
+        assertEquals(1, calls.get());
+        assertEquals(0, limiter.stats().get("inflight"));
+
+        response.get(5, TimeUnit.SECONDS).releaseBody().block(Duration.ofSeconds(5));
+        assertEquals(2, calls.get());
+        assertEquals(0, limiter.stats().get("inflight"));
+        Map<?, ?> latency = (Map<?, ?>) ((Map<?, ?>) limiter.stats().get("latency")).get("GET /v1/files");
+        assertTrue((long) latency.get("smoothedMillis") < 400);
+    }
+}
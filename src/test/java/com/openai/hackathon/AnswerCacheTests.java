@@ -0,0 +1,107 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class AnswerCacheTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void keyIgnoresCaseAndWhitespace() {
+        assertEquals(
+                AnswerCache.key("openai", "m", "vs", "sys", "Was ist eine Vertragshistorisierung?"),
+                AnswerCache.key("openai", "m", "vs", "sys", "  was ist  eine\nvertragshistorisierung? "));
+        assertNotEquals(
+                AnswerCache.key("openai", "m", "vs", "sys", "Was ist eine Vertragshistorisierung?"),
+                AnswerCache.key("openai", "m", "vs-2", "sys", "Was ist eine Vertragshistorisierung?"));
+    }
+
+    @Test
+    void diskTierSurvivesRestartUntilInvalidated() throws Exception {
+        AnswerCacheProps props = new AnswerCacheProps(DataSize.ofMegabytes(1), Duration.ofHours(1),
+                true, dir.resolve("answers.bin"), DataSize.ofMegabytes(1));
+        String key = AnswerCache.key("local", "m", "", "sys", "frage");
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        Mono<String> upstream = Mono.fromSupplier(() -> "antwort " + upstreamCalls.incrementAndGet());
+
+        AnswerCache first = new AnswerCache(props);
+        assertEquals("antwort 1", first.getOrCompute(key, () -> upstream).block());
+        assertEquals("antwort 1", first.getOrCompute(key, () -> upstream).block());
+        first.close();
+
+        AnswerCache reopened = new AnswerCache(props);
+        assertEquals("antwort 1", reopened.getOrCompute(key, () -> upstream).block());
+        assertEquals(1L, reopened.stats().get("diskHits"));
+
+        reopened.invalidateAll();
+        assertEquals("antwort 2", reopened.getOrCompute(key, () -> upstream).block());
+        reopened.close();
+    }
+
+    @Test
+    void aDiskHitExpiresWithItsDiskEntry() throws Exception {
+        AnswerCacheProps props = new AnswerCacheProps(DataSize.ofMegabytes(1), Duration.ofMillis(400),
+                true, dir.resolve("answers.bin"), DataSize.ofMegabytes(1));
+        String key = AnswerCache.key("local", "m", "", "sys", "frage");
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        Mono<String> upstream = Mono.fromSupplier(() -> "antwort " + upstreamCalls.incrementAndGet());
+
+        AnswerCache first = new AnswerCache(props);
+        first.getOrCompute(key, () -> upstream).block();
+        first.close();
+
+        AnswerCache reopened = new AnswerCache(props);
+        Thread.sleep(250);
+        assertEquals("antwort 1", reopened.getOrCompute(key, () -> upstream).block());
+        Thread.sleep(200);
+        assertEquals("antwort 2", reopened.getOrCompute(key, () -> upstream).block());
+        reopened.close();
+    }
+
+    @Test
+    void responsesWithoutTextAreNotCached() {
+        AnswerCache cache = new AnswerCache(new AnswerCacheProps(DataSize.ofMegabytes(1), Duration.ofHours(1),
+                false, null, DataSize.ofMegabytes(1)));
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        Mono<String> upstream = Mono.fromSupplier(() -> upstreamCalls.incrementAndGet() == 1 ? ResponsesParser.NO_TEXT_OUTPUT : "antwort");
+
+        assertEquals(ResponsesParser.NO_TEXT_OUTPUT, cache.getOrCompute("k", () -> upstream).block());
+        assertEquals("antwort", cache.getOrCompute("k", () -> upstream).block());
+        assertEquals("antwort", cache.getOrCompute("k", () -> upstream).block());
+        assertEquals(2, upstreamCalls.get());
+    }
+
+    @Test
+    void anAnswerComputedAcrossAnInvalidationIsNotStored() throws Exception {
+        AnswerCache cache = new AnswerCache(new AnswerCacheProps(DataSize.ofMegabytes(1), Duration.ofHours(1),
+                true, dir.resolve("answers.bin"), DataSize.ofMegabytes(1)));
+        String key = AnswerCache.key("local", "m", "", "sys", "frage");
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        Sinks.One<String> inFlight = Sinks.one();
+
+        var first = cache.getOrCompute(key, () -> inFlight.asMono().doOnSubscribe(s -> upstreamCalls.incrementAndGet())).toFuture();
+        // the vector store changes while the answer is still being computed
+        cache.invalidateAll();
+        inFlight.tryEmitValue("antwort auf alte dokumente");
+        assertEquals("antwort auf alte dokumente", first.get());
+
+        Mono<String> upstream = Mono.fromSupplier(() -> "antwort " + upstreamCalls.incrementAndGet());
+        assertEquals("antwort 2", cache.getOrCompute(key, () -> upstream).block());
+        assertEquals("antwort 2", cache.getOrCompute(key, () -> upstream).block());
+        assertEquals(1L, cache.stats().get("discarded"));
+        cache.close();
+    }
+}
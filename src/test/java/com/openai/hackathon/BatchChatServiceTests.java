@@ -0,0 +1,148 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.openai.hackathon.BatchChatService.BatchItem;
+import com.openai.hackathon.BatchChatService.BatchJob;
+import com.openai.hackathon.BatchChatService.BatchResult;
+import com.openai.hackathon.FakeUpstreamServer.Latency;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class BatchChatServiceTests {
+
+    private static final FakeUpstreamServer upstream = FakeUpstreamServer.start()
+            .latency(Latency.uniform(10, 60))
+            .rejecting("UNANSWERABLE");
+
+    private final BatchChatService batch = new BatchChatService(null, null, null, new BatchProps(4, 3, "24h"), null);
+
+    @Autowired
+    BatchChatService service;
+
+    @LocalServerPort
+    int port;
+
+    @DynamicPropertySource
+    static void upstreams(DynamicPropertyRegistry registry) {
+        registry.add("openai.api-key", () -> "batch-test");
+        registry.add("openai.base-url", upstream::baseUrl);
+        registry.add("openai.vector-store-id", () -> "vs_batch");
+        registry.add("openai.http.http2", () -> "false");
+        registry.add("local.base-url", upstream::baseUrl);
+        registry.add("batch.concurrency", () -> "3");
+        TestProperties.dataDirs(registry);
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        upstream.close();
+    }
+
+    @Test
+    void readsBacklogLinesAndPromptArrays() {
+        String lines = """
+                {"request_id": "user-001", "title": "Streaming", "body": "Stream tokens."}
+
+                {"prompt": "Was ist ein Vertrag?"}
+                """;
+        assertEquals(List.of(
+                        new BatchItem("user-001", "Streaming\n\nStream tokens."),
+                        new BatchItem("item-2", "Was ist ein Vertrag?")),
+                batch.parseItems(lines));
+
+        assertEquals(List.of(new BatchItem("a", "frage")), batch.parseItems("[{\"id\": \"a\", \"prompt\": \"frage\"}]"));
+    }
+
+    @Test
+    void rejectsItemsWithoutPromptAndOversizedBatches() {
+        assertThrows(IllegalArgumentException.class, () -> batch.parseItems("{\"id\": \"a\"}"));
+        assertThrows(IllegalArgumentException.class, () -> batch.parseItems("{\"prompt\":\"1\"}\n".repeat(4)));
+    }
+
+    @Test
+    void fansOutInOrderWithBoundedConcurrencyAndPerItemFailures() {
+        List<BatchItem> items = IntStream.range(0, 12)
+                .mapToObj(i -> new BatchItem("q" + i, i == 5 ? "UNANSWERABLE frage" : "Frage zu Paragraph " + i + " BGB"))
+                .toList();
+
+        List<BatchResult> results = service.runInteractive(items, "openai", true).collectList().block(Duration.ofSeconds(30));
+
+        assertEquals(items.stream().map(BatchItem::id).toList(), results.stream().map(BatchResult::id).toList());
+        int peak = upstream.peakConcurrency();
+        assertTrue(peak >= 2 && peak <= 3, "peak concurrency " + peak);
+        for (BatchResult result : results) {
+            if (result.id().equals("q5")) {
+                assertNull(result.answer());
+                assertNotNull(result.error());
+            } else {
+                assertNotNull(result.answer(), result.id());
+                assertNull(result.error());
+            }
+        }
+
+        // unordered: the same results, in completion order
+        List<BatchItem> more = IntStream.range(0, 6).mapToObj(i -> new BatchItem("u" + i, "Frage zu Artikel " + i + " GG")).toList();
+        List<BatchResult> unordered = service.runInteractive(more, "openai", false).collectList().block(Duration.ofSeconds(30));
+        assertEquals(more.stream().map(BatchItem::id).collect(Collectors.toSet()),
+                unordered.stream().map(BatchResult::id).collect(Collectors.toSet()));
+    }
+
+    @Test
+    void submitsOfflineAndMapsResultsBackToItems() {
+        List<BatchItem> items = List.of(
+                new BatchItem("a", "Was regelt das Mietrecht?"),
+                new BatchItem("b", "UNANSWERABLE offline"),
+                new BatchItem("c", "Was ist eine Bürgschaft?"));
+
+        BatchJob submitted = service.submitOffline(items).block(Duration.ofSeconds(10));
+        assertEquals("validating", submitted.status());
+        assertEquals(3, submitted.total());
+
+        BatchJob done = service.status(submitted.batchId()).block(Duration.ofSeconds(10));
+        assertEquals("completed", done.status());
+        assertNotNull(done.outputFileId());
+
+        Map<String, BatchResult> results = service.results(submitted.batchId()).collectList().block(Duration.ofSeconds(10))
+                .stream().collect(Collectors.toMap(BatchResult::id, Function.identity()));
+        assertEquals(3, results.size());
+        assertNotNull(results.get("a").answer());
+        assertNotNull(results.get("b").error());
+        assertNotNull(results.get("c").answer());
+    }
+
+    @Test
+    void answersInvalidInputWith400() throws Exception {
+        HttpResponse<String> response = HttpClient.newHttpClient().send(HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:" + port + "/api/chat/batch"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"id\": \"a\"}"))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(400, response.statusCode());
+        assertTrue(response.body().contains("has no prompt"), response.body());
+    }
+}
@@ -0,0 +1,147 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.openai.hackathon.BulkIngestionService.IngestEvent;
+
+@SpringBootTest
+class BulkIngestionServiceTests {
+
+    private static final String FILE_BATCHES = "POST /v1/vector_stores/{id}/file_batches";
+    private static final FakeUpstreamServer upstream = FakeUpstreamServer.start().rejecting("UNWANTED");
+
+    @Autowired
+    BulkIngestionService bulk;
+
+    @Autowired
+    AnswerCache answerCache;
+
+    @DynamicPropertySource
+    static void upstreams(DynamicPropertyRegistry registry) {
+        registry.add("openai.api-key", () -> "bulk-test");
+        registry.add("openai.base-url", upstream::baseUrl);
+        registry.add("openai.vector-store-id", () -> "vs_bulk");
+        registry.add("openai.http.http2", () -> "false");
+        registry.add("openai.uploads.attach-batch-size", () -> "2");
+        registry.add("openai.uploads.max-archive-entries", () -> "3");
+        registry.add("openai.uploads.max-archive-size", () -> "2KB");
+        registry.add("local.base-url", upstream::baseUrl);
+        registry.add("retrieval.enabled", () -> "false");
+        // indexing for search invalidates the answer cache too, only attaches are counted here
+        registry.add("search.enabled", () -> "false");
+        TestProperties.dataDirs(registry);
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        upstream.close();
+    }
+
+    @Test
+    void aFailingFileOrArchiveFailsAlone() {
+        List<IngestEvent> events = ingest(
+                text("kauf.txt", "Kaufvertrag nach Paragraph 433"),
+                text("UNWANTED.txt", "wird abgelehnt"),
+                new MockMultipartFile("files", "kaputt.zip", "application/zip", "no zip at all".getBytes(StandardCharsets.UTF_8)),
+                text("miete.txt", "Mietvertrag nach Paragraph 535"));
+
+        assertEquals(List.of("kauf.txt", "miete.txt"), filenames(events, "uploaded"));
+        assertEquals(List.of("UNWANTED.txt", "kaputt.zip"), filenames(events, "failed"));
+        assertEquals(2, events.stream().filter(e -> e.event().equals("attached")).mapToInt(IngestEvent::files).sum());
+    }
+
+    @Test
+    void archivesAreExtractedWithinTheirCaps() throws IOException {
+        Map<String, String> five = Map.of("a.txt", "Anfechtung", "b.txt", "Bürgschaft", "c.txt", "Capitalgesellschaft",
+                "d.txt", "Darlehen", "e.txt", "Erbschaft");
+        List<IngestEvent> tooMany = ingest(zip("viele.zip", five));
+        assertEquals(3, filenames(tooMany, "uploaded").size());
+        IngestEvent failed = tooMany.stream().filter(e -> e.event().equals("failed")).findFirst().orElseThrow();
+        assertEquals("viele.zip", failed.filename());
+        assertTrue(failed.error().contains("more than 3 files"), failed.error());
+
+        List<IngestEvent> tooLarge = ingest(zip("gross.zip", Map.of("gross.txt", "Gesetz ".repeat(500))));
+        assertEquals(List.of(), filenames(tooLarge, "uploaded"));
+        assertTrue(tooLarge.getFirst().error().contains("expands beyond"), tooLarge.getFirst().error());
+
+        List<IngestEvent> fine = ingest(zip("klein.zip", Map.of("dir/x.txt", "Vollmacht", "__MACOSX/._x.txt", "", "y.txt", "Verjährung")));
+        assertEquals(List.of("x.txt", "y.txt"), filenames(fine, "uploaded"));
+    }
+
+    @Test
+    void attachesInFileBatchesOfTheConfiguredSize() {
+        long before = upstream.requests(FILE_BATCHES);
+        List<MultipartFile> parts = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            parts.add(text("teil" + i + ".txt", "Abschnitt " + i + " des Gesellschaftsvertrags"));
+        }
+
+        List<IngestEvent> events = ingest(parts.toArray(MultipartFile[]::new));
+
+        assertEquals(5, filenames(events, "uploaded").size());
+        assertEquals(List.of(2, 2, 1), events.stream().filter(e -> e.event().equals("attached")).map(IngestEvent::files).toList());
+        assertEquals(before + 3, upstream.requests(FILE_BATCHES));
+    }
+
+    @Test
+    void theAnswerCacheStaysWhenNothingWasAttached() {
+        Object invalidations = answerCache.stats().get("invalidations");
+        upstream.rejecting("\"file_ids\"");
+        try {
+            List<IngestEvent> events = ingest(text("abgelehnt.txt", "Anhang wird vom Vector Store abgelehnt"));
+            assertEquals(List.of("abgelehnt.txt"), filenames(events, "uploaded"));
+            assertEquals(1, events.stream().filter(e -> e.event().equals("attachFailed")).count());
+            assertEquals(invalidations, answerCache.stats().get("invalidations"));
+        } finally {
+            upstream.rejecting("UNWANTED");
+        }
+
+        ingest(text("angenommen.txt", "Anhang wird angenommen"));
+        assertEquals((Long) invalidations + 1, answerCache.stats().get("invalidations"));
+    }
+
+    private List<IngestEvent> ingest(MultipartFile... parts) {
+        return bulk.ingest(List.of(parts)).collectList().block(Duration.ofSeconds(30));
+    }
+
+    private static List<String> filenames(List<IngestEvent> events, String event) {
+        // uploads finish in any order
+        return events.stream().filter(e -> e.event().equals(event)).map(IngestEvent::filename).sorted().toList();
+    }
+
+    private static MockMultipartFile text(String filename, String content) {
+        return new MockMultipartFile("files", filename, "text/plain", content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MockMultipartFile zip(String filename, Map<String, String> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return new MockMultipartFile("files", filename, "application/zip", bytes.toByteArray());
+    }
+}
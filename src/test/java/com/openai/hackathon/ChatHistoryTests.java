@@ -0,0 +1,46 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ChatHistoryTests {
+
+    private static final Map<String, String> SYSTEM = Map.of("role", "system", "content", "s".repeat(400));
+
+    @Test
+    void trimsOldestTurnsButKeepsSystemMessage() {
+        ChatHistory history = new ChatHistory(SYSTEM, 400, true);
+
+        for (int i = 0; i < 50; i++) {
+            history.append(msg("user", "question " + i + " " + "q".repeat(100)),
+                    msg("assistant", "answer " + i + " " + "a".repeat(100)));
+        }
+
+        List<Map<String, String>> snapshot = history.snapshotWith(msg("user", "next"));
+        int tokens = snapshot.stream().mapToInt(ChatHistory::estimateTokens).sum();
+
+        assertEquals(SYSTEM, snapshot.get(0));
+        assertTrue(snapshot.get(snapshot.size() - 2).get("content").startsWith("answer 49"));
+        assertTrue(tokens <= 400 + ChatHistory.estimateTokens(msg("user", "next")), "snapshot exceeds budget: " + tokens);
+        assertEquals(2 * 50 - history.size(), history.takeForSummary().size());
+    }
+
+    @Test
+    void keepsLatestTurnEvenWhenItExceedsTheBudget() {
+        ChatHistory history = new ChatHistory(SYSTEM, 10, false);
+
+        history.append(msg("user", "x".repeat(1000)), msg("assistant", "y".repeat(1000)));
+
+        assertEquals(2, history.size());
+        assertTrue(history.takeForSummary().isEmpty());
+    }
+
+    private static Map<String, String> msg(String role, String content) {
+        return Map.of("role", role, "content", content);
+    }
+}
@@ -0,0 +1,136 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+
+import com.openai.hackathon.ChatRouter.Decision;
+import com.openai.hackathon.ChatRouter.Reason;
+import com.openai.hackathon.ChatRouter.RoutedAnswer;
+
+import reactor.core.publisher.Mono;
+
+class ChatRouterTests {
+
+    private static final Duration BUDGET = Duration.ofMillis(200);
+
+    private static ChatRouter router() {
+        return new ChatRouter(null, null, new RouterProps("local", BUDGET, 100, false, 0.25, 5, Duration.ofMinutes(5), true));
+    }
+
+    @Test
+    void onlyOpenAiCanServeAttachmentsFileSearchAndLargePrompts() {
+        ChatRouter router = router();
+
+        assertEquals(new Decision("openai", null, Reason.ATTACHMENT), router.decide("frage", false, true, BUDGET));
+        assertEquals(new Decision("openai", null, Reason.FILE_SEARCH), router.decide("frage", true, false, BUDGET));
+        assertEquals(new Decision("openai", null, Reason.PROMPT_SIZE), router.decide("wort ".repeat(200), false, false, BUDGET));
+        assertEquals(new Decision("local", "openai", Reason.PREFERRED), router.decide("frage", false, false, BUDGET));
+        assertEquals(1L, router.stats().get("routed.openai.attachment"));
+        assertEquals(1L, router.stats().get("routed.local.preferred"));
+    }
+
+    @Test
+    void avoidsFailingOrSlowPreferredBackend() {
+        ChatRouter router = router();
+        for (int i = 0; i < 10; i++) {
+            router.record("local", Duration.ofMillis(50), i % 2 == 0);
+            router.record("openai", Duration.ofMillis(80), false);
+        }
+        assertEquals(new Decision("openai", "local", Reason.ERROR_RATE), router.decide("frage", false, false, BUDGET));
+
+        ChatRouter slowLocal = router();
+        for (int i = 0; i < 10; i++) {
+            slowLocal.record("local", Duration.ofSeconds(2), false);
+            slowLocal.record("openai", Duration.ofMillis(80), false);
+        }
+        assertEquals(new Decision("openai", "local", Reason.LATENCY), slowLocal.decide("frage", false, false, BUDGET));
+    }
+
+    @Test
+    void hedgesStatelessCallsThatMissTheDeadline() {
+        ChatRouter router = router();
+        Decision decision = new Decision("local", "openai", Reason.PREFERRED);
+
+        RoutedAnswer answer = router.execute(decision,
+                Mono.just("langsam").delayElement(Duration.ofSeconds(5)),
+                Mono.just("schnell").delayElement(Duration.ofMillis(10)),
+                true, BUDGET).block(Duration.ofSeconds(3));
+
+        assertEquals(new RoutedAnswer("openai", "preferred", true, "schnell"), answer);
+        assertEquals(1L, router.stats().get("hedges"));
+        assertEquals(1L, router.stats().get("hedgeWins"));
+    }
+
+    @Test
+    void primaryWithinDeadlineNeverStartsFallback() {
+        ChatRouter router = router();
+        Decision decision = new Decision("local", "openai", Reason.PREFERRED);
+
+        RoutedAnswer answer = router.execute(decision, Mono.just("lokal"),
+                Mono.error(new IllegalStateException("must not be called")), true, BUDGET).block(Duration.ofSeconds(3));
+
+        assertEquals("local", answer.backend());
+        assertFalse(answer.fallback());
+        assertEquals(0L, router.stats().get("hedges"));
+    }
+
+    @Test
+    void failsOverOnErrorAndSurfacesTheLastError() {
+        ChatRouter router = router();
+        Decision decision = new Decision("local", "openai", Reason.PREFERRED);
+
+        RoutedAnswer answer = router.execute(decision, Mono.error(new IllegalStateException("local down")),
+                Mono.just("openai"), true, BUDGET).block(Duration.ofSeconds(3));
+        assertTrue(answer.fallback());
+        assertEquals(1L, router.stats().get("failovers"));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> router.execute(decision,
+                Mono.error(new IllegalStateException("local down")),
+                Mono.error(new IllegalStateException("openai down")), true, BUDGET).block(Duration.ofSeconds(3)));
+        assertEquals("openai down", e.getMessage());
+    }
+
+    @Test
+    void conversationsRunPastTheDeadlineAndFailOverOnlyWhenNotSent() {
+        ChatRouter router = router();
+        Decision decision = new Decision("local", "openai", Reason.PREFERRED);
+
+        RoutedAnswer answer = router.execute(decision, Mono.just("langsam").delayElement(Duration.ofMillis(400)),
+                Mono.error(new IllegalStateException("must not be called")), false, BUDGET).block(Duration.ofSeconds(3));
+        assertEquals(new RoutedAnswer("local", "preferred", false, "langsam"), answer);
+        assertEquals(1L, router.stats().get("deadlineMisses"));
+
+        // sent and failed: the turn may be in the primary's history, the error surfaces
+        assertThrows(IllegalStateException.class, () -> router.execute(decision,
+                Mono.error(new IllegalStateException("local failed")), Mono.just("openai"), false, BUDGET).block(Duration.ofSeconds(3)));
+
+        WebClientRequestException refused = new WebClientRequestException(new ConnectException("Connection refused"),
+                HttpMethod.POST, URI.create("http://localhost:1/api/chat/completions"), new HttpHeaders());
+        answer = router.execute(decision, Mono.error(refused), Mono.just("openai"), false, BUDGET).block(Duration.ofSeconds(3));
+        assertEquals("openai", answer.backend());
+        assertEquals(1L, router.stats().get("failovers"));
+        assertNull(router.decide("frage", true, false, BUDGET).fallback());
+    }
+
+    @Test
+    void routesWithoutFallbackAreCutOffAtTheDeadline() {
+        ChatRouter router = router();
+        Decision decision = new Decision("openai", null, Reason.ATTACHMENT);
+
+        assertThrows(RuntimeException.class, () -> router.execute(decision,
+                Mono.just("langsam").delayElement(Duration.ofSeconds(5)), null, false, BUDGET).block(Duration.ofSeconds(3)));
+        assertEquals(1L, router.stats().get("deadlineMisses"));
+    }
+}
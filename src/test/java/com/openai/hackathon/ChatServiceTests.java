@@ -0,0 +1,128 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openai.hackathon.FakeUpstreamServer.Latency;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ExtendWith(OutputCaptureExtension.class)
+class ChatServiceTests {
+
+    private static final String SUMMARY_REQUEST = "Summarize our conversation so far.";
+
+    // every turn of the fake reports 900 input tokens; the summary takes long enough for a turn in between
+    private static final FakeUpstreamServer upstream = FakeUpstreamServer.start()
+            .delaying(SUMMARY_REQUEST, Latency.fixed(500));
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .cookieHandler(new CookieManager())
+            .build();
+    private final ObjectMapper om = new ObjectMapper();
+
+    @LocalServerPort
+    int port;
+
+    @DynamicPropertySource
+    static void upstreams(DynamicPropertyRegistry registry) {
+        registry.add("openai.api-key", () -> "chat-test");
+        registry.add("openai.base-url", upstream::baseUrl);
+        registry.add("openai.vector-store-id", () -> "vs_chat");
+        registry.add("openai.http.http2", () -> "false");
+        registry.add("openai.conversations.compact-above-tokens", () -> "500");
+        registry.add("local.base-url", upstream::baseUrl);
+        registry.add("retrieval.enabled", () -> "false");
+        TestProperties.dataDirs(registry);
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        upstream.close();
+    }
+
+    @Test
+    void aConversationPastTheThresholdIsSummarizedIntoASuccessor(CapturedOutput output) throws Exception {
+        chat("Erste Frage");
+        String original = conversationId();
+
+        // the summary has read the items; this turn lands on the old conversation before the switch
+        await(() -> upstream.requests("GET /v1/conversations/{id}/items") > 0);
+        chat("Zweite Frage");
+        await(() -> !original.equals(conversationId()));
+        String successor = conversationId();
+        assertNotEquals(original, successor);
+
+        // the summary was a stateless request: nothing was added to the old conversation
+        List<String> old = upstream.items(original);
+        assertFalse(old.contains(SUMMARY_REQUEST));
+        assertEquals(5, old.size());
+
+        // prompt, summary, then the turn answered while the summary was written
+        List<String> next = upstream.items(successor);
+        assertEquals(4, next.size());
+        assertTrue(next.get(1).startsWith(ChatHistory.SUMMARY_PREFIX));
+        assertTrue(next.get(2).contains("Zweite Frage"));
+        assertFalse(String.join(" ", next).contains("Erste Frage"));
+
+        chat("Dritte Frage");
+        assertTrue(output.getAll().contains("Compacted conversation " + original + " (900 input tokens) into " + successor));
+        assertTrue(output.getAll().contains("First turn of compacted conversation " + successor + ": 900 input tokens, 900 before compaction"));
+
+        // the successor is past the threshold too; its own compaction finishes before the upstream stops
+        await(() -> !successor.equals(conversationId()));
+    }
+
+    private void chat(String prompt) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:" + port + "/api/chat"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(om.writeValueAsString(Map.of("prompt", prompt))))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode(), response.body());
+    }
+
+    private String conversationId() throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:" + port + "/api/chat/status"))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        return om.readTree(response.body()).path("conversationId").asText();
+    }
+
+    private static void await(Check check) throws Exception {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!check.done()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(20);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Check {
+        boolean done() throws Exception;
+    }
+}
@@ -0,0 +1,132 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openai.hackathon.FakeUpstreamServer.Latency;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ChatStreamTests {
+
+    private static final int TOKENS = 20;
+    private static final String FAILING = "Fehlerfall";
+
+    // 20 deltas 20 ms apart from both upstreams; a prompt with the marker is answered with a 400
+    private static final FakeUpstreamServer upstream = FakeUpstreamServer.start()
+            .streaming(TOKENS, Latency.fixed(20))
+            .rejecting(FAILING);
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .cookieHandler(new CookieManager())
+            .build();
+    private final ObjectMapper om = new ObjectMapper();
+
+    @LocalServerPort
+    int port;
+
+    @DynamicPropertySource
+    static void upstreams(DynamicPropertyRegistry registry) {
+        registry.add("openai.api-key", () -> "stream-test");
+        registry.add("openai.base-url", upstream::baseUrl);
+        registry.add("openai.vector-store-id", () -> "vs_stream");
+        registry.add("openai.http.http2", () -> "false");
+        registry.add("local.base-url", upstream::baseUrl);
+        registry.add("retrieval.enabled", () -> "false");
+        TestProperties.dataDirs(registry);
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        upstream.close();
+    }
+
+    @Test
+    void theResponsesStreamForwardsEveryDeltaInOrderAndCompletes() throws Exception {
+        assertStreamed(stream("/api/chat/stream", "Was ist eine Anhaltsquotierung?"));
+        assertEquals(1, upstream.requests("POST /v1/responses"));
+    }
+
+    @Test
+    void theLocalStreamForwardsEveryDeltaInOrderAndCompletes() throws Exception {
+        assertStreamed(stream("/api/chat/local/stream", "Was ist eine Vertragshistorisierung?"));
+    }
+
+    @Test
+    void aFailingUpstreamEndsTheStreamWithAnErrorEvent() throws Exception {
+        for (String path : List.of("/api/chat/stream", "/api/chat/local/stream")) {
+            List<Event> events = stream(path, FAILING + ": bitte antworten");
+            Event last = events.getLast();
+            assertEquals("error", last.name(), path + " " + events);
+            assertTrue(last.data().path("message").asText().contains("400"), last.data().toString());
+            assertTrue(events.stream().noneMatch(event -> event.name().equals("done")), path + " " + events);
+        }
+    }
+
+    private static void assertStreamed(List<Event> events) {
+        assertEquals(TOKENS + 1, events.size(), events.toString());
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < TOKENS; i++) {
+            assertEquals("delta", events.get(i).name());
+            assertEquals("wort" + i + " ", events.get(i).data().path("text").asText());
+            text.append(events.get(i).data().path("text").asText());
+        }
+        assertEquals("done", events.getLast().name());
+
+        // the first delta is passed on while the upstream is still writing, not once the answer is complete
+        long spread = events.get(TOKENS - 1).receivedAt() - events.getFirst().receivedAt();
+        assertTrue(spread >= 200_000_000L, "deltas arrived within " + spread / 1_000_000 + " ms");
+        assertTrue(text.toString().startsWith("wort0 wort1 "));
+    }
+
+    private List<Event> stream(String path, String prompt) throws IOException, InterruptedException {
+        HttpResponse<Stream<String>> response = client.send(HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:" + port + path))
+                        .header("Content-Type", "application/json")
+                        .header("Accept", "text/event-stream")
+                        .POST(HttpRequest.BodyPublishers.ofString(om.writeValueAsString(Map.of("prompt", prompt))))
+                        .build(),
+                HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/event-stream"));
+
+        List<Event> events = new ArrayList<>();
+        String name = null;
+        try (Stream<String> lines = response.body()) {
+            for (Iterator<String> it = lines.iterator(); it.hasNext(); ) {
+                String line = it.next();
+                if (line.startsWith("event:")) {
+                    name = line.substring("event:".length()).strip();
+                } else if (line.startsWith("data:")) {
+                    events.add(new Event(name, om.readTree(line.substring("data:".length())), System.nanoTime()));
+                    name = null;
+                }
+            }
+        }
+        return events;
+    }
+
+    private record Event(String name, JsonNode data, long receivedAt) {
+    }
+}
@@ -0,0 +1,88 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class ConversationRegistryTests {
+
+    private final SessionStore store = new MemorySessionStore(Duration.ofMinutes(5), 100);
+    private final ConversationRegistry registry = newRegistry();
+
+    private ConversationRegistry newRegistry() {
+        return new ConversationRegistry(TestProperties.openai(Map.of(
+                "openai.api-key", "key",
+                "openai.conversations.max-size", 100,
+                "openai.conversations.idle-ttl", "5m")), store);
+    }
+
+    @Test
+    void concurrentRequestsOfOneSessionCreateOneConversation() {
+        AtomicInteger created = new AtomicInteger();
+        Mono<String> creator = Mono.fromSupplier(() -> "conv_" + created.incrementAndGet())
+                .delayElement(Duration.ofMillis(50));
+
+        var ids = Flux.range(0, 20)
+                .flatMap(i -> registry.getOrCreate("session-a", () -> creator))
+                .collectList()
+                .block();
+
+        assertEquals(1, created.get());
+        assertEquals(20, ids.stream().filter("conv_1"::equals).count());
+        assertEquals(1L, registry.stats().get("misses"));
+    }
+
+    @Test
+    void removeForgetsTheConversation() {
+        registry.getOrCreate("session-b", () -> Mono.just("conv_b")).block();
+        assertEquals("conv_b", registry.peek("session-b"));
+
+        registry.remove("session-b");
+
+        assertNull(registry.peek("session-b"));
+    }
+
+    @Test
+    void aNewRegistryRestoresTheConversationFromTheStore() {
+        registry.getOrCreate("session-c", () -> Mono.just("conv_c")).block();
+
+        ConversationRegistry restarted = newRegistry();
+        assertEquals("conv_c", restarted.peek("session-c"));
+        assertEquals("conv_c", restarted.getOrCreate("session-c", () -> Mono.error(new AssertionError("created again"))).block());
+        assertEquals(1L, restarted.stats().get("restored"));
+    }
+
+    @Test
+    void aConversationResetOnAnotherNodeIsNotServedFromTheCache() {
+        registry.getOrCreate("session-d", () -> Mono.just("conv_d1")).block();
+
+        // another node, sharing the store
+        newRegistry().remove("session-d");
+
+        assertEquals("conv_d2", registry.getOrCreate("session-d", () -> Mono.just("conv_d2")).block());
+        assertEquals(1L, registry.stats().get("replaced"));
+    }
+
+    @Test
+    void replaceSwitchesToTheSuccessorUnlessTheConversationChanged() {
+        registry.getOrCreate("session-e", () -> Mono.just("conv_e1")).block();
+
+        assertTrue(registry.replace("session-e", "conv_e1", "conv_e2"));
+        assertEquals("conv_e2", registry.getOrCreate("session-e", () -> Mono.just("unused")).block());
+        assertEquals("conv_e2", newRegistry().peek("session-e"));
+
+        // a compaction of the old conversation that finishes late does not switch back
+        assertFalse(registry.replace("session-e", "conv_e1", "conv_e3"));
+        assertEquals("conv_e2", registry.peek("session-e"));
+    }
+}
@@ -0,0 +1,444 @@
+package com.openai.hackathon;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * In-process stand-in for the OpenAI and OpenWebUI endpoints the services call. Latency, error injection
+ * and streaming pace can be changed while it runs; requests are counted per "METHOD /path" with ids
+ * replaced by {id}.
+ */
+final class FakeUpstreamServer implements AutoCloseable {
+
+    private static final Pattern FILENAME = Pattern.compile("filename=\"([^\"]*)\"");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ObjectMapper om = new ObjectMapper();
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final AtomicInteger peakInflight = new AtomicInteger();
+    // uploaded file bodies, the batch endpoints answer the custom_ids of their input file
+    private final Map<String, String> files = new ConcurrentHashMap<>();
+    private final Map<String, String> batchInputs = new ConcurrentHashMap<>();
+    // the message items of each conversation, oldest first
+    private final Map<String, List<Map<String, Object>>> conversations = new ConcurrentHashMap<>();
+
+    private volatile Latency latency = Latency.fixed(0);
+    private volatile Latency tokenDelay = Latency.fixed(5);
+    private volatile int streamTokens = 20;
+    private volatile double errorRate;
+    private volatile int errorStatus = 503;
+    private volatile String rejectMarker;
+    private volatile int processingPolls;
+    private final Map<String, AtomicInteger> polls = new ConcurrentHashMap<>();
+    private volatile List<String> vectorStoreFiles = List.of("file-a", "file-b");
+    private volatile String delayMarker;
+    private volatile Latency markerDelay = Latency.fixed(0);
+
+    private FakeUpstreamServer(HttpServer server) {
+        this.server = server;
+    }
+
+    static FakeUpstreamServer start() {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+            FakeUpstreamServer fake = new FakeUpstreamServer(server);
+            server.createContext("/", fake::handle);
+            server.setExecutor(fake.executor);
+            server.start();
+            return fake;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed starting fake upstream server", e);
+        }
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    FakeUpstreamServer latency(Latency latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    FakeUpstreamServer streaming(int tokens, Latency tokenDelay) {
+        this.streamTokens = tokens;
+        this.tokenDelay = tokenDelay;
+        return this;
+    }
+
+    // the share of requests answered with status (after the usual latency), 429/503 carry a Retry-After
+    FakeUpstreamServer errors(double rate, int status) {
+        this.errorRate = rate;
+        this.errorStatus = status;
+        return this;
+    }
+
+    // requests (or offline batch lines) whose body contains marker are answered 400, uploads by their filename
+    FakeUpstreamServer rejecting(String marker) {
+        this.rejectMarker = marker;
+        return this;
+    }
+
+    // a vector-store file reports in_progress for its first polls
+    FakeUpstreamServer processing(int polls) {
+        this.processingPolls = polls;
+        return this;
+    }
+
+    // the vector store lists file-v1 .. file-v<count> instead of file-a and file-b, a page of "limit" at a time
+    FakeUpstreamServer vectorStoreFiles(int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            ids.add("file-v" + i);
+        }
+        this.vectorStoreFiles = List.copyOf(ids);
+        return this;
+    }
+
+    // requests whose body contains marker take the extra delay on top of the usual latency
+    FakeUpstreamServer delaying(String marker, Latency delay) {
+        this.delayMarker = marker;
+        this.markerDelay = delay;
+        return this;
+    }
+
+    // the texts of a conversation's items, oldest first
+    List<String> items(String conversationId) {
+        List<Map<String, Object>> items = conversations.getOrDefault(conversationId, List.of());
+        synchronized (items) {
+            return items.stream().map(item -> String.valueOf(item.get("text"))).toList();
+        }
+    }
+
+    // the most requests that were being handled at the same time
+    int peakConcurrency() {
+        return peakInflight.get();
+    }
+
+    long requests(String operation) {
+        LongAdder count = requests.get(operation);
+        return count == null ? 0 : count.sum();
+    }
+
+    Map<String, Long> requests() {
+        Map<String, Long> result = new ConcurrentHashMap<>();
+        requests.forEach((operation, count) -> result.put(operation, count.sum()));
+        return result;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        peakInflight.accumulateAndGet(inflight.incrementAndGet(), Math::max);
+        try {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            String operation = method + " " + path.replaceAll("/(?!file_batches(/|$))(conv|file|vs|vsf|batch|resp)[-_][^/]+", "/{id}");
+            requests.computeIfAbsent(operation, k -> new LongAdder()).increment();
+
+            sleep(latency);
+            String delayed = delayMarker;
+            if (delayed != null && new String(body, StandardCharsets.UTF_8).contains(delayed)) {
+                sleep(markerDelay);
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                if (errorStatus == 429 || errorStatus == 503) {
+                    exchange.getResponseHeaders().add("Retry-After", "1");
+                }
+                json(exchange, errorStatus, Map.of("error", Map.of("message", "injected failure", "type", "server_error")));
+                return;
+            }
+            String marker = rejectMarker;
+            if (marker != null && rejected(operation, new String(body, StandardCharsets.UTF_8), marker)) {
+                json(exchange, 400, Map.of("error", Map.of("message", "rejected " + marker, "type", "invalid_request_error")));
+                return;
+            }
+
+            switch (operation) {
+                case "POST /v1/conversations" -> {
+                    String id = "conv_" + ids.incrementAndGet();
+                    conversations.put(id, new ArrayList<>());
+                    addItems(id, om.readTree(body).path("items"));
+                    json(exchange, 200, Map.of("id", id));
+                }
+                case "GET /v1/conversations/{id}/items" -> items(exchange, lastSegment(path.substring(0, path.lastIndexOf('/'))));
+                case "POST /v1/conversations/{id}/items" -> {
+                    addItems(lastSegment(path.substring(0, path.lastIndexOf('/'))), om.readTree(body).path("items"));
+                    json(exchange, 200, Map.of("object", "list"));
+                }
+                case "POST /v1/responses" -> responses(exchange, om.readTree(body));
+                case "POST /v1/files" -> {
+                    String id = "file-" + ids.incrementAndGet();
+                    files.put(id, new String(body, StandardCharsets.UTF_8));
+                    json(exchange, 200, Map.of("id", id, "bytes", body.length));
+                }
+                case "GET /v1/files/{id}/content" -> fileContent(exchange, lastSegment(path.substring(0, path.lastIndexOf('/'))));
+                case "POST /v1/batches" -> {
+                    String id = "batch_" + ids.incrementAndGet();
+                    batchInputs.put(id, om.readTree(body).path("input_file_id").asText());
+                    json(exchange, 200, batch(id, "validating"));
+                }
+                case "GET /v1/batches/{id}" -> json(exchange, 200, batch(lastSegment(path), "completed"));
+                case "GET /v1/files/{id}" -> json(exchange, 200, Map.of("id", lastSegment(path), "filename", lastSegment(path) + ".pdf"));
+                case "GET /v1/vector_stores/{id}/files" -> vectorStoreFileList(exchange);
+                case "POST /v1/vector_stores/{id}/files" -> json(exchange, 200, Map.of("id", "vsf_1", "status", "in_progress"));
+                case "GET /v1/vector_stores/{id}/files/{id}" -> {
+                    int poll = polls.computeIfAbsent(lastSegment(path), k -> new AtomicInteger()).incrementAndGet();
+                    json(exchange, 200, Map.of("id", lastSegment(path), "status", poll <= processingPolls ? "in_progress" : "completed"));
+                }
+                case "DELETE /v1/vector_stores/{id}/files/{id}" -> json(exchange, 200, Map.of("id", lastSegment(path), "deleted", true));
+                case "POST /v1/vector_stores/{id}/file_batches" -> json(exchange, 200, Map.of("id", "vsfb_" + ids.incrementAndGet(), "status", "in_progress"));
+                case "POST /api/chat/completions" -> completions(exchange, om.readTree(body));
+                default -> json(exchange, 404, Map.of("error", Map.of("message", "no fake for " + operation)));
+            }
+        } finally {
+            inflight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    // uploads are matched by their filename, so a batch input file may carry the marker in its lines
+    private static boolean rejected(String operation, String body, String marker) {
+        if (!operation.equals("POST /v1/files")) {
+            return body.contains(marker);
+        }
+        Matcher filename = FILENAME.matcher(body);
+        return filename.find() && filename.group(1).contains(marker);
+    }
+
+    private Map<String, Object> batch(String id, String status) {
+        String input = files.getOrDefault(batchInputs.getOrDefault(id, ""), "");
+        int total = batchLines(input).size();
+        Map<String, Object> batch = new LinkedHashMap<>();
+        batch.put("id", id);
+        batch.put("status", status);
+        batch.put("request_counts", Map.of("total", total, "completed", "completed".equals(status) ? total : 0, "failed", 0));
+        if ("completed".equals(status)) {
+            batch.put("output_file_id", "file-out_" + id);
+        }
+        return batch;
+    }
+
+    // the output of a batch: one line per input line, last one first, as completion order is arbitrary
+    private void fileContent(HttpExchange exchange, String fileId) throws IOException {
+        String batchId = fileId.startsWith("file-out_") ? fileId.substring("file-out_".length()) : null;
+        if (batchId == null || !batchInputs.containsKey(batchId)) {
+            json(exchange, 404, Map.of("error", Map.of("message", "no content for " + fileId)));
+            return;
+        }
+        List<String> lines = batchLines(files.getOrDefault(batchInputs.get(batchId), ""));
+        StringBuilder out = new StringBuilder();
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            JsonNode line = om.readTree(lines.get(i));
+            String marker = rejectMarker;
+            Map<String, Object> response = marker != null && lines.get(i).contains(marker)
+                    ? Map.of("status_code", 400, "body", Map.of("error", Map.of("message", "rejected " + marker)))
+                    : Map.of("status_code", 200, "body", Map.of("output", List.of(Map.of("type", "message",
+                            "content", List.of(Map.of("type", "output_text", "text", answer(streamTokens)))))));
+            out.append(om.writeValueAsString(Map.of("custom_id", line.path("custom_id").asText(), "response", response))).append('\n');
+        }
+        byte[] bytes = out.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/jsonl");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    // the JSONL lines inside an uploaded multipart body
+    private static List<String> batchLines(String multipart) {
+        return multipart.lines().filter(line -> line.startsWith("{") && line.contains("\"custom_id\"")).toList();
+    }
+
+    // ids count up, so "after" is every item with a greater id; pages of two exercise the paging
+    private void items(HttpExchange exchange, String conversationId) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        Matcher after = Pattern.compile("after=msg_(\\d+)").matcher(query == null ? "" : query);
+        long afterId = after.find() ? Long.parseLong(after.group(1)) : 0;
+
+        List<Map<String, Object>> items = conversations.getOrDefault(conversationId, List.of());
+        List<Map<String, Object>> data = new ArrayList<>();
+        synchronized (items) {
+            for (Map<String, Object> item : items) {
+                if (Long.parseLong(((String) item.get("id")).substring("msg_".length())) > afterId) {
+                    data.add(Map.of("type", "message", "id", item.get("id"), "role", item.get("role"),
+                            "content", List.of(Map.of("type", item.get("type"), "text", item.get("text")))));
+                }
+            }
+        }
+        List<Map<String, Object>> page = data.subList(0, Math.min(2, data.size()));
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("data", page);
+        result.put("has_more", data.size() > page.size());
+        result.put("last_id", page.isEmpty() ? null : page.getLast().get("id"));
+        json(exchange, 200, result);
+    }
+
+    private void vectorStoreFileList(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        Matcher limit = Pattern.compile("limit=(\\d+)").matcher(query == null ? "" : query);
+        Matcher after = Pattern.compile("after=([^&]+)").matcher(query == null ? "" : query);
+
+        List<String> ids = vectorStoreFiles;
+        int from = after.find() ? ids.indexOf(after.group(1)) + 1 : 0;
+        List<String> page = ids.subList(from, Math.min(ids.size(), from + (limit.find() ? Integer.parseInt(limit.group(1)) : 20)));
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("data", page.stream().map(id -> Map.of("id", id)).toList());
+        result.put("has_more", from + page.size() < ids.size());
+        result.put("last_id", page.isEmpty() ? null : page.getLast());
+        json(exchange, 200, result);
+    }
+
+    private void addItems(String conversationId, JsonNode items) {
+        for (JsonNode item : items) {
+            JsonNode content = item.path("content");
+            JsonNode part = content.isArray() ? content.path(0) : content;
+            addItem(conversationId, item.path("role").asText(), part.path("type").asText("input_text"),
+                    part.isTextual() ? part.asText() : part.path("text").asText());
+        }
+    }
+
+    private void addItem(String conversationId, String role, String type, String text) {
+        List<Map<String, Object>> items = conversations.get(conversationId);
+        if (items == null) {
+            return;
+        }
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("id", "msg_" + ids.incrementAndGet());
+        item.put("role", role);
+        item.put("type", type);
+        item.put("text", text);
+        synchronized (items) {
+            items.add(item);
+        }
+    }
+
+    // a turn on a conversation adds its input and the answer to it, as the real endpoint does
+    private void responses(HttpExchange exchange, JsonNode request) throws IOException {
+        String conversationId = request.path("conversation").asText(null);
+        if (conversationId != null) {
+            addItems(conversationId, request.path("input"));
+            addItem(conversationId, "assistant", "output_text", answer(streamTokens));
+        }
+        if (!request.path("stream").asBoolean()) {
+            json(exchange, 200, Map.of(
+                    "id", "resp_" + ids.incrementAndGet(),
+                    "output", List.of(Map.of("type", "message", "content", List.of(
+                            Map.of("type", "output_text", "text", answer(streamTokens))))),
+                    "usage", Map.of("input_tokens", 900, "output_tokens", streamTokens, "total_tokens", 900 + streamTokens)));
+            return;
+        }
+
+        try (OutputStream out = sse(exchange)) {
+            for (int i = 0; i < streamTokens; i++) {
+                event(out, "response.output_text.delta", Map.of("type", "response.output_text.delta", "delta", "wort" + i + " "));
+                sleep(tokenDelay);
+            }
+            event(out, "response.completed", Map.of("type", "response.completed", "response", Map.of(
+                    "usage", Map.of("input_tokens", 900, "output_tokens", streamTokens, "total_tokens", 900 + streamTokens))));
+        }
+    }
+
+    private void completions(HttpExchange exchange, JsonNode request) throws IOException {
+        if (!request.path("stream").asBoolean()) {
+            json(exchange, 200, Map.of(
+                    "choices", List.of(Map.of("message", Map.of("role", "assistant", "content", answer(streamTokens)))),
+                    "usage", Map.of("prompt_tokens", 300, "completion_tokens", streamTokens)));
+            return;
+        }
+
+        try (OutputStream out = sse(exchange)) {
+            for (int i = 0; i < streamTokens; i++) {
+                event(out, null, Map.of("choices", List.of(Map.of("delta", Map.of("content", "wort" + i + " ")))));
+                sleep(tokenDelay);
+            }
+            out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private OutputStream sse(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        return exchange.getResponseBody();
+    }
+
+    private void event(OutputStream out, String name, Object data) throws IOException {
+        String frame = (name == null ? "" : "event: " + name + "\n") + "data: " + om.writeValueAsString(data) + "\n\n";
+        out.write(frame.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void json(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = om.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static String answer(int tokens) {
+        return "wort ".repeat(Math.max(1, tokens)).trim();
+    }
+
+    private static String lastSegment(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static void sleep(Latency latency) {
+        long millis = latency.nextMillis(ThreadLocalRandom.current());
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface Latency {
+
+        long nextMillis(Random random);
+
+        static Latency fixed(long millis) {
+            return random -> millis;
+        }
+
+        static Latency uniform(long minMillis, long maxMillis) {
+            return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+        }
+
+        // long-tailed like real LLM calls: median and p99 pin down the log-normal
+        static Latency logNormal(long medianMillis, long p99Millis) {
+            double mu = Math.log(medianMillis);
+            double sigma = (Math.log(p99Millis) - mu) / 2.326;
+            return random -> Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+        }
+    }
+}
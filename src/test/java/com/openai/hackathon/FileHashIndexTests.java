@@ -0,0 +1,72 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileHashIndexTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysPutsAndDeletesAfterARestart() throws IOException {
+        FileHashIndex index = open();
+        index.record("aaa", "file-1", 10);
+        index.record("bbb", "file-2", 20);
+        index.record("bbb", "file-3", 20);
+        index.removeFileId("file-1");
+        index.close();
+
+        FileHashIndex reopened = open();
+        assertNull(reopened.lookup("aaa"));
+        assertEquals(new FileHashIndex.Entry("file-3", 20), reopened.lookup("bbb"));
+        assertEquals(1, reopened.size());
+
+        // file-2 was replaced by file-3, deleting it must not drop the live entry
+        reopened.removeFileId("file-2");
+        assertEquals(new FileHashIndex.Entry("file-3", 20), reopened.lookup("bbb"));
+        reopened.close();
+    }
+
+    @Test
+    void compactsALogDominatedByDeletedEntries() throws IOException {
+        FileHashIndex index = open();
+        for (int i = 0; i < 600; i++) {
+            index.record("sha-" + i, "file-" + i, i);
+            index.removeFileId("file-" + i);
+        }
+        index.record("kept", "file-kept", 42);
+        index.close();
+        assertEquals(1201, Files.readAllLines(log()).size());
+
+        FileHashIndex compacted = open();
+        assertEquals(new FileHashIndex.Entry("file-kept", 42), compacted.lookup("kept"));
+        assertEquals(1, compacted.size());
+        assertEquals(1, Files.readAllLines(log()).size());
+
+        compacted.record("more", "file-more", 7);
+        compacted.close();
+        FileHashIndex reopened = open();
+        assertEquals(2, reopened.size());
+        assertEquals(new FileHashIndex.Entry("file-more", 7), reopened.lookup("more"));
+        reopened.close();
+    }
+
+    private FileHashIndex open() {
+        return new FileHashIndex(TestProperties.openai(Map.of(
+                "openai.api-key", "key",
+                "openai.uploads.index-path", log().toString())));
+    }
+
+    private Path log() {
+        return dir.resolve("file-index.log");
+    }
+}
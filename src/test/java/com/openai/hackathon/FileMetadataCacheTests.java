@@ -0,0 +1,69 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+@SpringBootTest
+class FileMetadataCacheTests {
+
+    // 25 files in pages of 10
+    private static final FakeUpstreamServer upstream = FakeUpstreamServer.start().vectorStoreFiles(25);
+
+    @Autowired
+    ChatService chatService;
+
+    @Autowired
+    FileMetadataCache fileMetadata;
+
+    @DynamicPropertySource
+    static void upstreams(DynamicPropertyRegistry registry) {
+        registry.add("openai.api-key", () -> "files-test");
+        registry.add("openai.base-url", upstream::baseUrl);
+        registry.add("openai.vector-store-id", () -> "vs_files");
+        registry.add("openai.http.http2", () -> "false");
+        registry.add("openai.files.page-size", () -> "10");
+        registry.add("local.base-url", upstream::baseUrl);
+        registry.add("retrieval.enabled", () -> "false");
+        TestProperties.dataDirs(registry);
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        upstream.close();
+    }
+
+    @Test
+    void listsEveryPageAndFetchesEachFilenameOnce() {
+        List<String> expected = new ArrayList<>();
+        for (int i = 1; i <= 25; i++) {
+            expected.add("file-v" + i);
+        }
+
+        List<ChatController.FileInfo> first = chatService.listVectorStoreFilesWithIds().block();
+        assertEquals(expected, first.stream().map(ChatController.FileInfo::fileId).toList());
+        assertEquals("file-v25.pdf", first.getLast().filename());
+        assertEquals(3, upstream.requests("GET /v1/vector_stores/{id}/files"));
+        assertEquals(25, upstream.requests("GET /v1/files/{id}"));
+
+        // the listing is paged again, the filenames come from the cache
+        List<ChatController.FileInfo> second = chatService.listVectorStoreFilesWithIds().block();
+        assertEquals(first, second);
+        assertEquals(6, upstream.requests("GET /v1/vector_stores/{id}/files"));
+        assertEquals(25, upstream.requests("GET /v1/files/{id}"));
+        assertEquals(25L, fileMetadata.stats().get("hits"));
+
+        // an invalidated entry is fetched again on the next listing
+        fileMetadata.invalidate("file-v7");
+        chatService.listVectorStoreFilesWithIds().block();
+        assertEquals(26, upstream.requests("GET /v1/files/{id}"));
+    }
+}
@@ -0,0 +1,69 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.reactive.function.client.WebClient;
+
+class FileUploadServiceTests {
+
+    @TempDir
+    Path dir;
+
+    private FakeUpstreamServer upstream;
+    private FileHashIndex index;
+    private FileUploadService uploads;
+
+    @BeforeEach
+    void setUp() {
+        upstream = FakeUpstreamServer.start();
+        OpenAIProps props = TestProperties.openai(Map.of(
+                "openai.api-key", "key",
+                "openai.uploads.index-path", dir.resolve("file-index.log").toString(),
+                "openai.uploads.chunk-size", "1KB"));
+        index = new FileHashIndex(props);
+        uploads = new FileUploadService(props, index, null, WebClient.builder().baseUrl(upstream.baseUrl()).build());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        uploads.removeSpoolDir();
+        index.close();
+        upstream.close();
+    }
+
+    @Test
+    void reusesTheFileIdForContentUploadedBefore() throws IOException {
+        byte[] content = "Vertragsbedingungen ".repeat(500).getBytes(StandardCharsets.UTF_8);
+
+        String first = uploads.upload(new MockMultipartFile("file", "a.txt", "text/plain", content)).block();
+        String second = uploads.upload(new MockMultipartFile("file", "b.txt", "text/plain", content)).block();
+        assertEquals(first, second);
+        assertEquals(1L, upstream.requests("POST /v1/files"));
+
+        // a caller-owned path with the same bytes hits the same entry
+        Path copy = Files.write(dir.resolve("c.txt"), content);
+        assertEquals(first, uploads.upload(copy, "c.txt").block());
+        assertEquals(1L, upstream.requests("POST /v1/files"));
+
+        byte[] other = "Kündigungsfristen".getBytes(StandardCharsets.UTF_8);
+        assertNotEquals(first, uploads.upload(new MockMultipartFile("file", "d.txt", "text/plain", other)).block());
+        assertEquals(2L, upstream.requests("POST /v1/files"));
+
+        Map<String, Object> stats = uploads.stats();
+        assertEquals(2L, stats.get("dedupHits"));
+        assertEquals(2L * content.length, stats.get("bytesSaved"));
+        assertEquals(2, stats.get("indexedHashes"));
+    }
+}
@@ -4,10 +4,17 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 
 @SpringBootTest
 class HackathonApplicationTests {
 
+	@DynamicPropertySource
+	static void dataDirs(DynamicPropertyRegistry registry) {
+		TestProperties.dataDirs(registry);
+	}
+
 	@Test
 	void contextLoads() {
 		assertTrue(true);
@@ -0,0 +1,260 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openai.hackathon.FakeUpstreamServer.Latency;
+import com.openai.hackathon.IngestionJobService.IngestionJob;
+import com.openai.hackathon.IngestionJobService.Status;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class IngestionJobServiceTests {
+
+    private static final FakeUpstreamServer upstream = FakeUpstreamServer.start();
+
+    @Autowired
+    IngestionJobService jobs;
+
+    @Autowired
+    FileUploadService fileUploads;
+
+    @Autowired
+    FileMetadataCache fileMetadata;
+
+    @Autowired
+    AnswerCache answerCache;
+
+    @Autowired
+    OpenAIProps props;
+
+    @Autowired
+    @Qualifier("openAiWebClient")
+    WebClient openAiWebClient;
+
+    @LocalServerPort
+    int port;
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper om = new ObjectMapper();
+
+    @DynamicPropertySource
+    static void upstreams(DynamicPropertyRegistry registry) {
+        registry.add("openai.api-key", () -> "jobs-test");
+        registry.add("openai.base-url", upstream::baseUrl);
+        registry.add("openai.vector-store-id", () -> "vs_jobs");
+        registry.add("openai.http.http2", () -> "false");
+        registry.add("openai.jobs.workers", () -> "1");
+        registry.add("openai.jobs.queue-capacity", () -> "1");
+        registry.add("openai.jobs.poll-interval", () -> "50ms");
+        registry.add("local.base-url", upstream::baseUrl);
+        registry.add("retrieval.enabled", () -> "false");
+        TestProperties.dataDirs(registry);
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        upstream.close();
+    }
+
+    @Test
+    void acceptsWithLocationAndCompletesWhilePolled() {
+        WebClient client = WebClient.create("http://localhost:" + port);
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body.part("file", new ByteArrayResource("Satzung des Vereins".getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public String getFilename() {
+                return "satzung.txt";
+            }
+        });
+
+        ResponseEntity<IngestionJob> accepted = client.post().uri("/api/vector-store/jobs")
+                .body(BodyInserters.fromMultipartData(body.build()))
+                .retrieve().toEntity(IngestionJob.class).block(Duration.ofSeconds(10));
+        assertEquals(HttpStatus.ACCEPTED, accepted.getStatusCode());
+        String location = accepted.getHeaders().getLocation().toString();
+        assertEquals("/api/vector-store/jobs/" + accepted.getBody().id(), location);
+
+        IngestionJob done = null;
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (System.nanoTime() < deadline && (done == null || !done.terminal())) {
+            done = client.get().uri(location).retrieve().bodyToMono(IngestionJob.class).block(Duration.ofSeconds(5));
+        }
+        assertEquals(Status.COMPLETED, done.status());
+        assertNotNull(done.fileId());
+        assertEquals("satzung.txt", done.filename());
+    }
+
+    @Test
+    void theSynchronousUploadAnswersWithJson() throws IOException {
+        String body = WebClient.create("http://localhost:" + port).post().uri("/api/vector-store/files")
+                .body(BodyInserters.fromMultipartData("file", new ByteArrayResource("Beitragsordnung".getBytes(StandardCharsets.UTF_8)) {
+                    @Override
+                    public String getFilename() {
+                        return "beitragsordnung.txt";
+                    }
+                }))
+                .retrieve().bodyToMono(String.class).block(Duration.ofSeconds(10));
+        assertTrue(om.readTree(body).path("fileId").asText().startsWith("file-"));
+    }
+
+    @Test
+    void aFullQueueIsRejectedWith503BeforeAnythingIsPersisted() {
+        upstream.latency(Latency.fixed(300));
+        try {
+            IngestionJob running = jobs.submit(text("eins.txt", "erster Auftrag"));
+            IngestionJob waiting = jobs.submit(text("zwei.txt", "zweiter Auftrag"));
+            Object known = jobs.stats().get("jobs");
+
+            assertThrows(IngestionQueueFullException.class, () -> jobs.submit(text("drei.txt", "dritter Auftrag")));
+            assertEquals(known, jobs.stats().get("jobs"));
+
+            ResponseEntity<String> rejected = WebClient.create("http://localhost:" + port).post().uri("/api/vector-store/jobs")
+                    .body(BodyInserters.fromMultipartData("file", new ByteArrayResource("vierter".getBytes(StandardCharsets.UTF_8)) {
+                        @Override
+                        public String getFilename() {
+                            return "vier.txt";
+                        }
+                    }))
+                    .exchangeToMono(response -> response.toEntity(String.class)).block(Duration.ofSeconds(10));
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.getStatusCode());
+            assertNotNull(rejected.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+            assertEquals(known, jobs.stats().get("jobs"));
+
+            await(() -> jobs.get(running.id()).terminal() && jobs.get(waiting.id()).terminal());
+            assertEquals(Status.COMPLETED, jobs.get(waiting.id()).status());
+        } finally {
+            upstream.latency(Latency.fixed(0));
+        }
+    }
+
+    @Test
+    void aFileStillProcessingDoesNotHoldTheOnlyWorker() {
+        upstream.processing(100);
+        try {
+            IngestionJob slow = jobs.submit(text("langsam.txt", "wird lange verarbeitet"));
+            await(() -> jobs.get(slow.id()).status() == Status.PROCESSING);
+
+            IngestionJob next = jobs.submit(text("danach.txt", "kommt trotzdem dran"));
+            await(() -> jobs.get(next.id()).status() == Status.PROCESSING);
+            assertEquals(Status.PROCESSING, jobs.get(slow.id()).status());
+            assertEquals(2, jobs.stats().get("polling"));
+        } finally {
+            upstream.processing(0);
+        }
+    }
+
+    @Test
+    void theJobLogIsCompactedWhileRunning() throws IOException {
+        // five lines per job, queued to completed: without compaction the log outgrows the jobs
+        for (int i = 0; i < 20; i++) {
+            IngestionJob job = jobs.submit(text("datei" + i + ".txt", "Inhalt " + i));
+            await(() -> jobs.get(job.id()).terminal());
+        }
+
+        int lines = Files.readAllLines(props.jobs().dir().resolve("jobs.log")).size();
+        int known = (Integer) jobs.stats().get("jobs");
+        assertTrue(lines <= Math.max(IngestionJobService.MIN_COMPACT_LINES, IngestionJobService.COMPACT_FACTOR * known),
+                lines + " lines for " + known + " jobs");
+    }
+
+    @Test
+    void replaysCompactsAndResumesAtTheLastFinishedStep() throws IOException {
+        long now = System.currentTimeMillis();
+        List<String> lines = new ArrayList<>();
+        lines.add(line(new IngestionJob("attach-me", "a.txt", Status.QUEUED, null, null, now, now)));
+        lines.add(line(new IngestionJob("attach-me", "a.txt", Status.UPLOADING, null, null, now, now)));
+        lines.add(line(new IngestionJob("attach-me", "a.txt", Status.ATTACHING, "file-a", null, now, now)));
+        lines.add(line(new IngestionJob("poll-me", "b.txt", Status.PROCESSING, "file-b", null, now, now)));
+        lines.add(line(new IngestionJob("upload-me", "c.txt", Status.QUEUED, null, null, now, now)));
+        lines.add(line(new IngestionJob("lost", "d.txt", Status.QUEUED, null, null, now, now)));
+        lines.add(line(new IngestionJob("done", "e.txt", Status.COMPLETED, "file-e", null, now, now)));
+        lines.add("{\"id\":\"done\",\"filename\":\"e.t");
+        Path jobsDir = dir.resolve("jobs");
+        Files.createDirectories(jobsDir);
+        Files.write(jobsDir.resolve("jobs.log"), lines, StandardCharsets.UTF_8);
+        Files.writeString(jobsDir.resolve("upload-me.part"), "Gesellschaftervertrag", StandardCharsets.UTF_8);
+
+        IngestionJobService restarted = new IngestionJobService(TestProperties.openai(Map.of(
+                "openai.api-key", "jobs-test",
+                "openai.vector-store-id", "vs_jobs",
+                "openai.jobs.dir", jobsDir.toString(),
+                "openai.jobs.poll-interval", "50ms")), fileUploads, fileMetadata, answerCache, openAiWebClient);
+        try {
+            // one line per job, the torn one is gone and the job without its spooled upload failed
+            assertEquals(5, Files.readAllLines(jobsDir.resolve("jobs.log")).size());
+            assertEquals(Status.FAILED, restarted.get("lost").status());
+            assertEquals(Status.COMPLETED, restarted.get("done").status());
+
+            long uploads = upstream.requests("POST /v1/files");
+            long attaches = upstream.requests("POST /v1/vector_stores/{id}/files");
+            restarted.start();
+            await(() -> restarted.get("attach-me").terminal() && restarted.get("poll-me").terminal()
+                    && restarted.get("upload-me").terminal());
+
+            assertEquals(Status.COMPLETED, restarted.get("attach-me").status());
+            assertEquals("file-a", restarted.get("attach-me").fileId());
+            assertEquals(Status.COMPLETED, restarted.get("poll-me").status());
+            assertEquals(Status.COMPLETED, restarted.get("upload-me").status());
+            assertEquals(uploads + 1, upstream.requests("POST /v1/files"));
+            assertEquals(attaches + 2, upstream.requests("POST /v1/vector_stores/{id}/files"));
+            assertFalse(Files.exists(jobsDir.resolve("upload-me.part")));
+        } finally {
+            restarted.close();
+        }
+    }
+
+    private String line(IngestionJob job) throws IOException {
+        return om.writeValueAsString(job);
+    }
+
+    private static MockMultipartFile text(String filename, String content) {
+        return new MockMultipartFile("file", filename, "text/plain", content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(15).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LexicalIndexTests {
+
+    @TempDir
+    Path dir;
+
+    private LexicalIndex open() throws IOException {
+        return LexicalIndex.open(dir, 3, Long.MAX_VALUE, 1.2, 0.75);
+    }
+
+    @Test
+    void analyzerFoldsStemsAndSplitsCompounds() {
+        // the glossary knows "Anhaltsquotierung" as a word of its own, it is split again
+        assertEquals(List.of("anhaltsquotierungsvariant", "anhaltsquotierung", "anhalt", "quotierung", "variant"),
+                GermanAnalyzer.terms("Anhaltsquotierungsvarianten"));
+        assertEquals(List.of("geschaftsvorfall", "kette"), GermanAnalyzer.split("geschaftsvorfallkette"));
+        assertTrue(GermanAnalyzer.terms("Geschäftsvorfallkette").containsAll(List.of("geschaft", "vorfall", "kett")));
+        assertEquals(GermanAnalyzer.terms("Kündigung"), GermanAnalyzer.terms("Kuendigung"));
+        assertEquals("quelle", GermanAnalyzer.normalize("Quelle"));
+        assertTrue(GermanAnalyzer.terms("Die Bausteinformate für den Druck").containsAll(List.of("baustein", "format")));
+        assertTrue(GermanAnalyzer.terms("Geschäfts-Bezeichnung").contains("geschaftsbezeichnung"));
+    }
+
+    @Test
+    void ranksExactTermsAndPartsOfCompounds() throws IOException {
+        try (LexicalIndex index = open()) {
+            index.add("file-1", "glossar.pdf", List.of(
+                    "Anhaltsquotierungsvarianten basieren auf einem bereits erfassten Geschäftsvorfall.",
+                    "Die Vertragshistorisierung zeichnet jede Vertragsänderung auf."));
+            index.add("file-2", "druck.pdf", List.of("Ein Bausteinformat für den Druck ist einem Dokumentformat zugeordnet."));
+
+            List<LexicalIndex.Hit> hits = index.search("Was sind Anhaltsquotierungsvarianten?", 3);
+            assertEquals("glossar.pdf", hits.getFirst().filename());
+            assertTrue(hits.getFirst().text().startsWith("Anhaltsquotierungsvarianten"));
+
+            // a part of the compound finds it, and a compound finds the text using its parts
+            assertEquals("file-1", index.search("Quotierung", 1).getFirst().fileId());
+            assertEquals("file-2", index.search("Druckformat Baustein", 1).getFirst().fileId());
+            assertTrue(index.search("Wetterbericht", 3).isEmpty());
+        }
+    }
+
+    @Test
+    void mergesSegmentsDropsDeletedChunksAndReloads() throws IOException {
+        try (LexicalIndex index = open()) {
+            for (int i = 0; i < 3; i++) {
+                index.add("file-" + i, "doc" + i + ".txt", List.of("Vertrag Nummer " + i, "Prämie des Vertrags " + i));
+            }
+            assertEquals(3, index.segmentCount());
+            List<LexicalIndex.Segment> inputs = index.nextMerge();
+            assertEquals(3, inputs.size());
+
+            // deleted between planning and writing the merge
+            assertTrue(index.delete("file-1"));
+            assertFalse(index.contains("file-1"));
+            index.merge(inputs);
+            assertNull(index.nextMerge());
+            assertEquals(1, index.segmentCount());
+            assertEquals(4, index.chunkCount());
+            assertEquals(1, listSegmentFiles().size());
+
+            List<String> files = new ArrayList<>();
+            index.search("Vertrag", 10).forEach(hit -> files.add(hit.fileId()));
+            assertEquals(4, files.size());
+            assertFalse(files.contains("file-1"));
+        }
+
+        try (LexicalIndex index = open()) {
+            assertEquals(1, index.segmentCount());
+            assertTrue(index.contains("file-2"));
+            assertEquals("Prämie des Vertrags 2", index.search("Prämie 2", 1).getFirst().text());
+        }
+    }
+
+    @Test
+    void aDeletedFileAddedAgainKeepsOnlyItsNewChunks() throws IOException {
+        try (LexicalIndex index = open()) {
+            index.add("file-1", "alt.txt", List.of("Vertrag alte Fassung"));
+            assertTrue(index.delete("file-1"));
+            index.add("file-1", "neu.txt", List.of("Vertrag neue Fassung"));
+
+            assertTrue(index.contains("file-1"));
+            assertEquals(1, index.chunkCount());
+            List<LexicalIndex.Hit> hits = index.search("Vertrag Fassung", 5);
+            assertEquals(1, hits.size());
+            assertEquals("neu.txt", hits.getFirst().filename());
+        }
+
+        try (LexicalIndex index = open()) {
+            assertEquals(1, index.search("Vertrag Fassung", 5).size());
+            assertEquals("neu.txt", index.search("Vertrag", 1).getFirst().filename());
+            assertEquals(1, index.chunkCount());
+        }
+    }
+
+    @Test
+    void leftoverSegmentFilesAreDiscardedOnOpen() throws IOException {
+        try (LexicalIndex index = open()) {
+            index.add("file-1", "a.txt", List.of("Baustein"));
+        }
+        Files.writeString(dir.resolve("seg-00000042.lex.tmp"), "half written");
+
+        try (LexicalIndex index = open()) {
+            assertEquals(1, index.segmentCount());
+            assertEquals(1, listSegmentFiles().size());
+            index.add("file-2", "b.txt", List.of("Baustein"));
+            assertEquals(2, index.search("Baustein", 5).size());
+        }
+    }
+
+    private List<Path> listSegmentFiles() throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("seg-")).toList();
+        }
+    }
+}
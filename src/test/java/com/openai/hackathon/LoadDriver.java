@@ -0,0 +1,206 @@
+package com.openai.hackathon;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/*
+ * Open-model load generator: requests start on a fixed schedule whether or not earlier ones have finished,
+ * and latency is measured from the scheduled start so a stalled server cannot hide its queueing delay.
+ * Scenarios are used round-robin.
+ */
+final class LoadDriver {
+
+    private final URI baseUri;
+    private final List<Scenario> scenarios;
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+
+    LoadDriver(URI baseUri, List<Scenario> scenarios) {
+        this.baseUri = baseUri;
+        this.scenarios = scenarios;
+    }
+
+    Report run(int rps, Duration duration, Duration timeout) throws InterruptedException {
+        long period = TimeUnit.SECONDS.toNanos(1) / rps;
+        int total = (int) (duration.toNanos() / period);
+
+        Map<String, Recorder> recorders = new ConcurrentHashMap<>();
+        scenarios.forEach(scenario -> recorders.put(scenario.name(), new Recorder(total)));
+        CountDownLatch done = new CountDownLatch(total);
+        AtomicInteger sent = new AtomicInteger();
+
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        long started = System.nanoTime();
+        ticker.scheduleAtFixedRate(() -> {
+            int n = sent.getAndIncrement();
+            if (n >= total) {
+                sent.decrementAndGet();
+                return;
+            }
+            Scenario scenario = scenarios.get(n % scenarios.size());
+            Recorder recorder = recorders.get(scenario.name());
+            long intended = started + n * period;
+
+            client.sendAsync(scenario.request(baseUri, n).timeout(timeout).build(), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        long latency = System.nanoTime() - intended;
+                        if (error != null) {
+                            recorder.failed(latency, error.getClass().getSimpleName());
+                        } else if (response.statusCode() >= 400) {
+                            recorder.failed(latency, String.valueOf(response.statusCode()));
+                        } else {
+                            recorder.succeeded(latency);
+                        }
+                        done.countDown();
+                    });
+        }, 0, period, TimeUnit.NANOSECONDS);
+
+        boolean finished = done.await(duration.plus(timeout).plusSeconds(5).toMillis(), TimeUnit.MILLISECONDS);
+        ticker.shutdownNow();
+        double elapsedSeconds = (System.nanoTime() - started) / 1e9;
+
+        Map<String, Stats> byScenario = new TreeMap<>();
+        Recorder all = new Recorder(total);
+        recorders.forEach((name, recorder) -> {
+            byScenario.put(name, recorder.stats(elapsedSeconds));
+            all.merge(recorder);
+        });
+        return new Report(rps, sent.get(), finished, all.stats(elapsedSeconds), byScenario);
+    }
+
+    record Scenario(String name, String method, String path, String contentType, IntFunction<String> body) {
+
+        static Scenario postJson(String name, String path, IntFunction<String> body) {
+            return new Scenario(name, "POST", path, "application/json", body);
+        }
+
+        static Scenario get(String name, String path) {
+            return new Scenario(name, "GET", path, null, null);
+        }
+
+        HttpRequest.Builder request(URI baseUri, int n) {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(baseUri.resolve(path));
+            if (body == null) {
+                return builder.method(method, HttpRequest.BodyPublishers.noBody());
+            }
+            return builder.header("Content-Type", contentType).method(method, HttpRequest.BodyPublishers.ofString(body.apply(n)));
+        }
+    }
+
+    record Stats(long requests, long errors, double throughput, double p50Millis, double p90Millis, double p99Millis,
+                 double maxMillis, Map<String, Long> errorsByCause) {
+
+        double errorRate() {
+            return requests == 0 ? 0 : (double) errors / requests;
+        }
+    }
+
+    record Report(int targetRps, int sent, boolean finished, Stats total, Map<String, Stats> byScenario) {
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.ROOT, "target %d rps, sent %d, all finished: %s%n", targetRps, sent, finished));
+            sb.append(String.format(Locale.ROOT, "%-16s %8s %8s %9s %9s %9s %9s %9s%n",
+                    "scenario", "requests", "errors", "rps", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+            byScenario.forEach((name, stats) -> row(sb, name, stats));
+            row(sb, "total", total);
+            if (!total.errorsByCause().isEmpty()) {
+                sb.append("errors: ").append(total.errorsByCause()).append('\n');
+            }
+            return sb.toString();
+        }
+
+        private static void row(StringBuilder sb, String name, Stats s) {
+            sb.append(String.format(Locale.ROOT, "%-16s %8d %8d %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                    name, s.requests(), s.errors(), s.throughput(), s.p50Millis(), s.p90Millis(), s.p99Millis(), s.maxMillis()));
+        }
+    }
+
+    private static final class Recorder {
+
+        private long[] latencies;
+        private int count;
+        private final LongAdder errors = new LongAdder();
+        private final Map<String, LongAdder> causes = new ConcurrentHashMap<>();
+
+        Recorder(int expected) {
+            this.latencies = new long[Math.max(16, expected)];
+        }
+
+        void succeeded(long latencyNanos) {
+            add(latencyNanos);
+        }
+
+        void failed(long latencyNanos, String cause) {
+            add(latencyNanos);
+            errors.increment();
+            causes.computeIfAbsent(cause, k -> new LongAdder()).increment();
+        }
+
+        private synchronized void add(long latencyNanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+        }
+
+        synchronized void merge(Recorder other) {
+            synchronized (other) {
+                for (int i = 0; i < other.count; i++) {
+                    add(other.latencies[i]);
+                }
+            }
+            errors.add(other.errors.sum());
+            other.causes.forEach((cause, n) -> causes.computeIfAbsent(cause, k -> new LongAdder()).add(n.sum()));
+        }
+
+        synchronized Stats stats(double elapsedSeconds) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            Map<String, Long> byCause = new TreeMap<>();
+            causes.forEach((cause, n) -> byCause.put(cause, n.sum()));
+            return new Stats(count, errors.sum(), count / elapsedSeconds,
+                    percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                    sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6, byCause);
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+        }
+    }
+
+    static List<Scenario> chatMix() {
+        List<Scenario> scenarios = new ArrayList<>();
+        scenarios.add(Scenario.postJson("chat", "/api/chat", n -> "{\"prompt\":\"Frage " + n + "\"}"));
+        scenarios.add(Scenario.postJson("chatStateless", "/api/chat", n -> "{\"prompt\":\"Frage " + (n % 50) + "\",\"stateless\":true}"));
+        scenarios.add(Scenario.postJson("chatStream", "/api/chat/stream", n -> "{\"prompt\":\"Frage " + n + "\"}"));
+        scenarios.add(Scenario.postJson("local", "/api/chat/local", n -> "{\"prompt\":\"Frage " + n + "\"}"));
+        scenarios.add(Scenario.get("listFiles", "/api/vector-store/files"));
+        return scenarios;
+    }
+}
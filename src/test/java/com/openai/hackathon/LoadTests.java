@@ -0,0 +1,75 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.openai.hackathon.FakeUpstreamServer.Latency;
+
+/*
+ * gradle loadTest [-Dload.rps=20] [-Dload.seconds=10] [-Dload.warmupSeconds=3] [-Dload.medianMillis=80]
+ *                 [-Dload.p99Millis=600] [-Dload.errorRate=0] [-Dload.maxErrorRate=0.01]
+ * Runs the whole application against the in-process fake upstreams, no network access needed. Driver, fake
+ * and application share one JVM, so on small CI boxes the achievable rate is bounded by CPU, not the code.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class LoadTests {
+
+    private static final FakeUpstreamServer upstream = FakeUpstreamServer.start();
+
+    @LocalServerPort
+    int port;
+
+    @DynamicPropertySource
+    static void upstreams(DynamicPropertyRegistry registry) {
+        registry.add("openai.api-key", () -> "load-test");
+        registry.add("openai.base-url", upstream::baseUrl);
+        registry.add("openai.vector-store-id", () -> "vs_load");
+        registry.add("openai.http.http2", () -> "false");
+        registry.add("local.base-url", upstream::baseUrl);
+        TestProperties.dataDirs(registry);
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        upstream.close();
+    }
+
+    @Test
+    void holdsTargetRateAgainstFakeUpstreams() throws Exception {
+        int rps = Integer.getInteger("load.rps", 20);
+        Duration duration = Duration.ofSeconds(Integer.getInteger("load.seconds", 10));
+        Duration warmup = Duration.ofSeconds(Integer.getInteger("load.warmupSeconds", 3));
+        double errorRate = Double.parseDouble(System.getProperty("load.errorRate", "0"));
+        double maxErrorRate = Double.parseDouble(System.getProperty("load.maxErrorRate", "0.01"));
+
+        upstream.latency(Latency.logNormal(Long.getLong("load.medianMillis", 80), Long.getLong("load.p99Millis", 600)))
+                .streaming(20, Latency.uniform(2, 10))
+                .errors(errorRate, 503);
+
+        LoadDriver driver = new LoadDriver(URI.create("http://localhost:" + port), LoadDriver.chatMix());
+        // JIT and connection pools settle before anything is measured
+        if (!warmup.isZero()) {
+            driver.run(Math.max(1, rps / 2), warmup, Duration.ofSeconds(30));
+        }
+        LoadDriver.Report report = driver.run(rps, duration, Duration.ofSeconds(30));
+
+        System.out.println(report);
+        System.out.println("upstream requests: " + upstream.requests());
+
+        assertTrue(report.finished(), "not every request finished in time");
+        assertEquals(report.sent(), report.total().requests());
+        assertTrue(report.total().errorRate() <= maxErrorRate, "error rate " + report.total().errorRate());
+    }
+}
@@ -0,0 +1,140 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.openai.hackathon.LocalRetrievalService.Passage;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class LocalRetrievalServiceTests {
+
+    @TempDir
+    Path dir;
+
+    private final StubEmbeddings embeddings = new StubEmbeddings();
+    private LocalRetrievalService retrieval;
+
+    @BeforeEach
+    void start() throws IOException {
+        RetrievalProps props = TestProperties.bind("retrieval", RetrievalProps.class, Map.of(
+                "retrieval.dir", dir.resolve("retrieval").toString(),
+                "retrieval.chunk-size", 100,
+                "retrieval.chunk-overlap", 0));
+        AnswerCache answerCache = new AnswerCache(TestProperties.bind("answers", AnswerCacheProps.class, Map.of()));
+        LexicalSearchService lexical = new LexicalSearchService(
+                TestProperties.bind("search", SearchProps.class, Map.of("search.enabled", false)), answerCache);
+        retrieval = new LocalRetrievalService(props, embeddings, lexical, answerCache);
+        retrieval.start();
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        embeddings.release();
+        retrieval.close();
+    }
+
+    @Test
+    void aSubmittedDocumentIsSearchableUntilRemoved() throws Exception {
+        embeddings.release();
+        submit("file-a", "a.txt", "aaaa abba baab");
+        submit("file-z", "z.txt", "zzzz zyzy yzzy");
+        awaitIndexed(2);
+
+        List<Passage> passages = retrieval.search("zzz", 2).block();
+        assertEquals("file-z", passages.getFirst().fileId());
+        assertEquals("z.txt", passages.getFirst().filename());
+
+        String context = retrieval.context("aaa").block();
+        assertTrue(context.startsWith(LocalRetrievalService.CONTEXT_PREFIX));
+        assertTrue(context.contains("[a.txt]\naaaa abba baab"));
+
+        retrieval.remove("file-z");
+        assertEquals(1, retrieval.stats().get("documents"));
+        assertTrue(retrieval.search("zzz", 2).block().stream().noneMatch(p -> p.fileId().equals("file-z")));
+    }
+
+    @Test
+    void aDocumentRemovedWhileEmbeddingIsNotIndexed() throws Exception {
+        submit("file-a", "a.txt", "aaaa abba baab");
+        await(() -> embeddings.calls.get() > 0);
+
+        retrieval.remove("file-a");
+        embeddings.release();
+        await(() -> retrieval.stats().get("pending").equals(0));
+
+        assertEquals(0, retrieval.stats().get("documents"));
+        assertEquals(List.of(), retrieval.search("aaa", 2).block());
+
+        // uploaded again, it is indexed as usual
+        submit("file-a", "a.txt", "aaaa abba baab");
+        awaitIndexed(1);
+    }
+
+    private void submit(String fileId, String filename, String text) throws IOException {
+        Path file = Files.writeString(dir.resolve(filename), text);
+        retrieval.submit(fileId, filename, file).block();
+    }
+
+    private void awaitIndexed(int documents) throws Exception {
+        await(() -> retrieval.stats().get("documents").equals(documents));
+    }
+
+    private static void await(Check check) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!check.done()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Check {
+        boolean done() throws Exception;
+    }
+
+    // letter counts as the vector: texts sharing letters are close, it answers once released
+    private static final class StubEmbeddings extends EmbeddingClient {
+
+        private final Sinks.Empty<Void> gate = Sinks.empty();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        StubEmbeddings() {
+            super(TestProperties.bind("retrieval", RetrievalProps.class, Map.of()), null);
+        }
+
+        void release() {
+            gate.tryEmitEmpty();
+        }
+
+        @Override
+        public Mono<float[][]> embed(List<String> texts) {
+            calls.incrementAndGet();
+            return gate.asMono().then(Mono.fromCallable(() -> {
+                float[][] vectors = new float[texts.size()][26];
+                for (int i = 0; i < texts.size(); i++) {
+                    for (char c : texts.get(i).toCharArray()) {
+                        if (c >= 'a' && c <= 'z') {
+                            vectors[i][c - 'a']++;
+                        }
+                    }
+                }
+                return vectors;
+            }));
+        }
+    }
+}
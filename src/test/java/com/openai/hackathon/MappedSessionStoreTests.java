@@ -0,0 +1,146 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+class MappedSessionStoreTests {
+
+    @TempDir
+    Path dir;
+
+    private MappedSessionStore open(DataSize logSize) throws IOException {
+        return open(logSize, 1000);
+    }
+
+    private MappedSessionStore open(DataSize logSize, int maxSessions) throws IOException {
+        return MappedSessionStore.open(new SessionProps(SessionProps.Store.FILE, dir, logSize, Duration.ofHours(1), Duration.ofDays(1),
+                maxSessions, null));
+    }
+
+    @Test
+    void replaysTheLogAfterACrashAndIgnoresADamagedTail() throws IOException {
+        MappedSessionStore crashed = open(DataSize.ofKilobytes(64));
+        crashed.update("a", s -> s.withConversation("conv_a", System.currentTimeMillis()));
+        crashed.update("b", s -> s.withHistory("summary", List.of(Map.of("role", "user", "content", "Hallo")), System.currentTimeMillis()));
+        crashed.update("c", s -> s.withConversation("conv_c", System.currentTimeMillis()));
+
+        // the last record was only half written when the process died
+        try (FileChannel log = FileChannel.open(onlyLog(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer position = ByteBuffer.allocate(8);
+            log.read(position, 16);
+            log.write(ByteBuffer.wrap(new byte[] {'#'}), position.flip().getLong() - 2);
+        }
+
+        try (MappedSessionStore store = open(DataSize.ofKilobytes(64))) {
+            assertEquals("conv_a", store.get("a").conversationId());
+            assertEquals("summary", store.get("b").summary());
+            assertEquals("Hallo", store.get("b").history().getFirst().get("content"));
+            assertNull(store.get("c"));
+            assertEquals(2L, store.stats().get("replayedRecords"));
+        }
+    }
+
+    @Test
+    void closeWritesASnapshotSoStartupReplaysNothing() throws IOException {
+        try (MappedSessionStore store = open(DataSize.ofKilobytes(64))) {
+            store.update("a", s -> s.withConversation("conv_1", System.currentTimeMillis()));
+            store.update("a", s -> s.withConversation("conv_2", System.currentTimeMillis()));
+        }
+
+        try (MappedSessionStore store = open(DataSize.ofKilobytes(64))) {
+            assertEquals("conv_2", store.get("a").conversationId());
+            assertEquals(0L, store.stats().get("replayedRecords"));
+        }
+    }
+
+    @Test
+    void aFullLogRotatesAndSnapshotsDeleteOldLogs() throws IOException {
+        try (MappedSessionStore store = open(DataSize.ofKilobytes(1))) {
+            for (int i = 0; i < 100; i++) {
+                int n = i;
+                store.update("key-" + (i % 10), s -> s.withConversation("conv_" + n, System.currentTimeMillis()));
+            }
+            assertTrue((long) store.stats().get("logGeneration") > 2);
+            assertEquals("conv_99", store.get("key-9").conversationId());
+        }
+        // the snapshots started by rotation run in the background, close waits for them and takes the last
+        assertEquals(1, logs().size());
+
+        try (MappedSessionStore store = open(DataSize.ofKilobytes(1))) {
+            assertEquals(10, store.stats().get("sessions"));
+            assertEquals("conv_90", store.get("key-0").conversationId());
+        }
+    }
+
+    @Test
+    void idleSessionsAreDroppedOnSnapshot() throws IOException {
+        try (MappedSessionStore store = open(DataSize.ofKilobytes(64))) {
+            long longAgo = System.currentTimeMillis() - Duration.ofDays(2).toMillis();
+            store.update("old", s -> new SessionState("conv_old", null, List.of(), longAgo, longAgo, 0));
+            store.update("new", s -> s.withConversation("conv_new", System.currentTimeMillis()));
+
+            store.snapshot();
+
+            assertNull(store.get("old"));
+            assertEquals("conv_new", store.get("new").conversationId());
+        }
+    }
+
+    private Path onlyLog() throws IOException {
+        List<Path> logs = logs();
+        assertEquals(1, logs.size());
+        return logs.getFirst();
+    }
+
+    private List<Path> logs() throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log")).toList();
+        }
+    }
+
+    @Test
+    void evictsTheLeastRecentlyTouchedBeyondMaxSessions() throws IOException {
+        long base = System.currentTimeMillis() - 60_000;
+        MappedSessionStore crashed = open(DataSize.ofKilobytes(64), 3);
+        crashed.update("a", s -> s.withConversation("conv_a", base));
+        crashed.update("b", s -> s.withConversation("conv_b", base + 1));
+        crashed.update("c", s -> s.withConversation("conv_c", base + 2));
+        crashed.update("a", s -> s.withConversation("conv_a2", base + 3));
+        crashed.update("d", s -> s.withConversation("conv_d", base + 4));
+
+        assertNull(crashed.get("b"));
+        assertEquals("conv_a2", crashed.get("a").conversationId());
+        assertEquals(3, crashed.stats().get("sessions"));
+        assertEquals(1L, crashed.stats().get("evicted"));
+
+        // no snapshot: the log still has b, replay trims it again
+        try (MappedSessionStore store = open(DataSize.ofKilobytes(64), 3)) {
+            assertNull(store.get("b"));
+            assertEquals("conv_a2", store.get("a").conversationId());
+            assertEquals("conv_c", store.get("c").conversationId());
+            assertEquals("conv_d", store.get("d").conversationId());
+        }
+
+        // a smaller cap keeps the most recently touched of the snapshot
+        try (MappedSessionStore store = open(DataSize.ofKilobytes(64), 2)) {
+            assertEquals(2, store.stats().get("sessions"));
+            assertNull(store.get("c"));
+            assertEquals("conv_d", store.get("d").conversationId());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class MetricsConfigTests {
+
+    @Test
+    void bindsStatsThatAppearAfterStartup() {
+        Map<String, Object> stats = new LinkedHashMap<>(Map.of("jobs", 1));
+        StatsSource source = new StatsSource() {
+            @Override
+            public String statsName() {
+                return "ingestion";
+            }
+
+            @Override
+            public Map<String, Object> stats() {
+                return stats;
+            }
+        };
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MetricsConfig config = new MetricsConfig(registry, List.of(source));
+
+        config.bindStats();
+        assertEquals(1.0, gauge(registry, "jobs").value());
+        assertNull(registry.find("app.stats").tag("stat", "latency.responses.p99").gauge());
+
+        stats.put("latency", Map.of("responses", Map.of("p99", 250)));
+        config.bindStats();
+        config.bindStats();
+        assertEquals(250.0, gauge(registry, "latency.responses.p99").value());
+        assertEquals(2, registry.find("app.stats").gauges().size());
+    }
+
+    private static Gauge gauge(SimpleMeterRegistry registry, String stat) {
+        return registry.get("app.stats").tag("source", "ingestion").tag("stat", stat).gauge();
+    }
+}
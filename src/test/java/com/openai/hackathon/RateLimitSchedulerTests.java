@@ -0,0 +1,135 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+
+import reactor.core.publisher.Mono;
+
+class RateLimitSchedulerTests {
+
+    private static HttpClientProps.RateLimit settings(int maxRetries) {
+        return new HttpClientProps.RateLimit(true, maxRetries, Duration.ofMillis(10), Duration.ofMillis(50), 0.2, 100);
+    }
+
+    private static HttpHeaders headers(long remainingRequests, String resetRequests, long remainingTokens, String resetTokens) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("x-ratelimit-limit-requests", "100");
+        headers.add("x-ratelimit-remaining-requests", String.valueOf(remainingRequests));
+        headers.add("x-ratelimit-reset-requests", resetRequests);
+        headers.add("x-ratelimit-limit-tokens", "100000");
+        headers.add("x-ratelimit-remaining-tokens", String.valueOf(remainingTokens));
+        headers.add("x-ratelimit-reset-tokens", resetTokens);
+        return headers;
+    }
+
+    @Test
+    void parsesOpenAiResetDurations() {
+        assertEquals(Duration.ofSeconds(1), RateLimitScheduler.duration("1s"));
+        assertEquals(Duration.ofMinutes(6), RateLimitScheduler.duration("6m0s"));
+        assertEquals(Duration.ofMillis(20), RateLimitScheduler.duration("20ms"));
+        assertEquals(Duration.ofMillis(3_723_500), RateLimitScheduler.duration("1h2m3.5s"));
+        assertNull(RateLimitScheduler.duration("soon"));
+    }
+
+    @Test
+    void burstsWhileBudgetIsHighAndPacesWhenLow() {
+        RateLimitScheduler scheduler = new RateLimitScheduler("openai", settings(0));
+        long now = System.nanoTime();
+
+        scheduler.update(headers(90, "60s", 90_000, "60s"), now);
+        assertEquals(0, scheduler.reserve(now));
+        assertEquals(0, scheduler.reserve(now));
+
+        // 10 requests left for the next 10 seconds: one per second
+        scheduler.update(headers(10, "10s", 90_000, "60s"), now);
+        long first = scheduler.reserve(now);
+        long second = scheduler.reserve(now);
+        assertEquals(first + TimeUnit.SECONDS.toNanos(1), second);
+    }
+
+    @Test
+    void exhaustedTokenBudgetWaitsForReset() {
+        RateLimitScheduler scheduler = new RateLimitScheduler("openai", settings(0));
+        long now = System.nanoTime();
+
+        scheduler.update(headers(50, "1s", 50, "2s"), now);
+        assertEquals(TimeUnit.SECONDS.toNanos(2), scheduler.reserve(now));
+    }
+
+    @Test
+    void retriesThrottledCallsAfterRetryAfter() {
+        RateLimitScheduler scheduler = new RateLimitScheduler("openai", settings(2));
+        AtomicInteger calls = new AtomicInteger();
+        ClientRequest request = ClientRequest.create(HttpMethod.POST, URI.create("http://upstream/v1/responses")).build();
+
+        long started = System.nanoTime();
+        ClientResponse response = scheduler.filter().filter(request, r -> Mono.fromSupplier(() ->
+                calls.incrementAndGet() == 1
+                        ? ClientResponse.create(HttpStatus.TOO_MANY_REQUESTS).header("retry-after-ms", "200").build()
+                        : ClientResponse.create(HttpStatus.OK).build())).block(Duration.ofSeconds(5));
+
+        assertEquals(HttpStatus.OK, response.statusCode());
+        assertEquals(2, calls.get());
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(1L, scheduler.stats().get("throttled"));
+    }
+
+    @Test
+    void givesUpAfterMaxRetries() {
+        RateLimitScheduler scheduler = new RateLimitScheduler("local", settings(2));
+        AtomicInteger calls = new AtomicInteger();
+        ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("http://upstream/api/models")).build();
+
+        ClientResponse response = scheduler.filter().filter(request, r -> Mono.fromSupplier(() -> {
+            calls.incrementAndGet();
+            return ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build();
+        })).block(Duration.ofSeconds(5));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.statusCode());
+        assertEquals(3, calls.get());
+        assertEquals(2L, scheduler.stats().get("retries"));
+    }
+
+    @Test
+    void retriesServerErrorsOnlyWhereARepeatIsHarmless() {
+        ClientRequest get = ClientRequest.create(HttpMethod.GET, URI.create("http://upstream/v1/files/file-1")).build();
+        ClientRequest stateless = ClientRequest.create(HttpMethod.POST, URI.create("http://upstream/v1/responses")).build();
+        ClientRequest turn = ClientRequest.create(HttpMethod.POST, URI.create("http://upstream/v1/responses"))
+                .attribute(RateLimitScheduler.SIDE_EFFECTS, true).build();
+        ClientRequest upload = ClientRequest.create(HttpMethod.POST, URI.create("http://upstream/v1/files")).build();
+        ClientRequest fileBatch = ClientRequest.create(HttpMethod.POST,
+                URI.create("http://upstream/v1/vector_stores/vs_1/file_batches")).build();
+
+        assertTrue(RateLimitScheduler.retryable(get, 500));
+        assertTrue(RateLimitScheduler.retryable(stateless, 503));
+        assertFalse(RateLimitScheduler.retryable(stateless, 500));
+        assertFalse(RateLimitScheduler.retryable(turn, 503));
+        assertFalse(RateLimitScheduler.retryable(upload, 502));
+        assertFalse(RateLimitScheduler.retryable(fileBatch, 504));
+        assertFalse(RateLimitScheduler.retryable(get, 404));
+        for (ClientRequest request : new ClientRequest[] {get, stateless, turn, upload, fileBatch}) {
+            assertTrue(RateLimitScheduler.retryable(request, 429));
+        }
+    }
+
+    @Test
+    void rejectsATokenEstimateBelowOne() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new HttpClientProps.RateLimit(true, 3, Duration.ofMillis(10), Duration.ofMillis(50), 0.2, 0));
+    }
+}
@@ -0,0 +1,48 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.openai.hackathon.ResponsesParser.ParsedResponse;
+
+class ResponsesParserTests {
+
+    @Test
+    void collectsMessageTextAndUsageAndSkipsToolOutput() {
+        ParsedResponse parsed = parse("""
+                {"id":"resp_1","output":[
+                  {"type":"file_search_call","results":[{"text":"ignored chunk","score":0.9}]},
+                  {"type":"message","content":[
+                    {"type":"output_text","text":"Erste Zeile","annotations":[{"text":"x"}]},
+                    {"type":"output_text","text":"   "},
+                    {"type":"output_text","text":{"value":"Zweite Zeile"}}
+                  ]}
+                ],
+                "usage":{"input_tokens":1200,"input_tokens_details":{"cached_tokens":0},"output_tokens":20,"total_tokens":1220}}
+                """);
+
+        assertEquals("Erste Zeile\nZweite Zeile", parsed.text());
+        assertEquals(new ResponsesParser.Usage(1200, 20, 1220), parsed.usage());
+    }
+
+    @Test
+    void prefersOutputTextEvenWhenItComesLast() {
+        ParsedResponse parsed = parse("""
+                {"output":[{"content":[{"text":"from content"}]}],"output_text":"from output_text"}
+                """);
+
+        assertEquals("from output_text", parsed.text());
+    }
+
+    @Test
+    void reportsMissingText() {
+        assertEquals(ResponsesParser.NO_TEXT_OUTPUT, parse("{\"output\":[]}").text());
+    }
+
+    private static ParsedResponse parse(String json) {
+        return ResponsesParser.parse(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
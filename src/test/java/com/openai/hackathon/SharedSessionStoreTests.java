@@ -0,0 +1,134 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+class SharedSessionStoreTests {
+
+    @TempDir
+    Path dir;
+
+    // one store per node, all on the same directory
+    private SharedSessionStore node(Duration nearCacheTtl) throws IOException {
+        return SharedSessionStore.open(new SessionProps(SessionProps.Store.SHARED, null, null, null, Duration.ofDays(1), 1000,
+                new SessionProps.Shared(dir, nearCacheTtl, 1000, Duration.ofHours(1), 1000)));
+    }
+
+    @Test
+    void anyNodeSeesWhatAnotherNodeWrote() throws IOException {
+        try (SharedSessionStore a = node(Duration.ZERO); SharedSessionStore b = node(Duration.ZERO)) {
+            a.update("session", s -> s.withConversation("conv_1", System.currentTimeMillis()));
+            assertEquals("conv_1", b.get("session").conversationId());
+
+            b.update("session", s -> s.withHistory(null, List.of(Map.of("role", "user", "content", "Hallo")), System.currentTimeMillis()));
+            SessionState state = a.get("session");
+            assertEquals(2, state.version());
+            assertEquals("conv_1", state.conversationId());
+            assertEquals("Hallo", state.history().getFirst().get("content"));
+            assertNull(a.get("unknown"));
+        }
+    }
+
+    @Test
+    void concurrentWritesOfTwoNodesAreNotLost() throws IOException {
+        try (SharedSessionStore a = node(Duration.ofMinutes(1)); SharedSessionStore b = node(Duration.ofMinutes(1))) {
+            Flux.range(0, 200)
+                    .parallel(8)
+                    .runOn(Schedulers.parallel())
+                    .doOnNext(i -> (i % 2 == 0 ? a : b).update("counter", s -> s.withConversation(
+                            String.valueOf(s.conversationId() == null ? 1 : Integer.parseInt(s.conversationId()) + 1),
+                            System.currentTimeMillis())))
+                    .sequential()
+                    .blockLast();
+
+            // a's near-cache trusts its entry for a minute, a write still starts from the latest version
+            SessionState state = a.update("counter", s -> s);
+            assertEquals("200", state.conversationId());
+            assertEquals(201, state.version());
+            assertTrue(versionFiles().size() <= 3);
+        }
+    }
+
+    @Test
+    void turnsOfTwoNodesOnOneSessionAreAllKept() throws IOException {
+        try (SharedSessionStore a = node(Duration.ZERO); SharedSessionStore b = node(Duration.ZERO)) {
+            LocalAIProps props = TestProperties.bind("local", LocalAIProps.class, Map.of());
+            LocalChatHistories nodeA = new LocalChatHistories(props, a);
+            LocalChatHistories nodeB = new LocalChatHistories(props, b);
+
+            // both nodes answer a turn from the same stored window
+            ChatHistory onA = nodeA.forSession("session");
+            ChatHistory onB = nodeB.forSession("session");
+            nodeA.append(onA, Map.of("role", "user", "content", "first"), Map.of("role", "assistant", "content", "one"));
+            nodeB.append(onB, Map.of("role", "user", "content", "second"), Map.of("role", "assistant", "content", "two"));
+
+            List<String> stored = a.get("session").history().stream().map(m -> m.get("content")).toList();
+            assertEquals(List.of("first", "one", "second", "two"), stored);
+
+            // the node that wrote in between continues from the merged window
+            nodeA.append(nodeA.forSession("session"), Map.of("role", "user", "content", "third"),
+                    Map.of("role", "assistant", "content", "three"));
+            assertEquals(6, b.get("session").history().size());
+            // system prompt, the three turns, the next prompt
+            assertEquals(8, nodeB.forSession("session").snapshotWith(Map.of("role", "user", "content", "next")).size());
+        }
+    }
+
+    @Test
+    void aStaleNearCacheEntryIsServedOnlyUntilItsTtl() throws IOException {
+        try (SharedSessionStore a = node(Duration.ofMinutes(1)); SharedSessionStore b = node(Duration.ZERO)) {
+            a.update("session", s -> s.withConversation("conv_1", System.currentTimeMillis()));
+            b.update("session", s -> s.withConversation("conv_2", System.currentTimeMillis()));
+            assertEquals("conv_1", a.get("session").conversationId());
+
+            try (SharedSessionStore revalidating = node(Duration.ZERO)) {
+                assertEquals("conv_2", revalidating.get("session").conversationId());
+                assertEquals("conv_2", revalidating.get("session").conversationId());
+                assertEquals(1L, revalidating.stats().get("reads"));
+                assertEquals(1L, revalidating.stats().get("revalidations"));
+            }
+        }
+    }
+
+    @Test
+    void sweepDeletesIdleSessions() throws IOException {
+        try (SharedSessionStore store = node(Duration.ZERO)) {
+            store.update("old", s -> s.withConversation("conv_old", System.currentTimeMillis()));
+            store.update("new", s -> s.withConversation("conv_new", System.currentTimeMillis()));
+            for (Path file : versionFiles()) {
+                if (file.getParent().getFileName().toString().equals("old")) {
+                    Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+                }
+            }
+
+            store.sweep();
+
+            assertNull(store.get("old"));
+            assertEquals("conv_new", store.get("new").conversationId());
+            assertEquals(1L, store.stats().get("swept"));
+        }
+    }
+
+    private List<Path> versionFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".json")).toList();
+        }
+    }
+}
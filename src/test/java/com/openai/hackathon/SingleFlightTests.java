@@ -0,0 +1,43 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class SingleFlightTests {
+
+    @Test
+    void concurrentIdenticalCallsShareOneUpstreamCall() {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        Sinks.One<String> upstream = Sinks.one();
+        String key = singleFlight.fingerprint("POST", "/v1/responses", List.of("frage"));
+
+        Mono<List<String>> callers = Flux.range(0, 5)
+                .flatMap(i -> singleFlight.run(key, () -> {
+                    upstreamCalls.incrementAndGet();
+                    return upstream.asMono();
+                }))
+                .collectList()
+                .cache();
+        callers.subscribe();
+
+        upstream.tryEmitValue("antwort");
+        assertEquals(List.of("antwort", "antwort", "antwort", "antwort", "antwort"),
+                callers.block(Duration.ofSeconds(5)));
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(4L, singleFlight.stats().get("mergedRequests"));
+        assertEquals(0, singleFlight.stats().get("inFlight"));
+
+        // nothing is retained once the shared call has finished
+        assertEquals("neu", singleFlight.run(key, () -> Mono.just("neu")).block());
+    }
+}
@@ -0,0 +1,43 @@
+package com.openai.hackathon;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+
+// properties records as the application binds them: defaults for everything the map leaves out
+final class TestProperties {
+
+    private TestProperties() {
+    }
+
+    static <T> T bind(String prefix, Class<T> type, Map<String, ?> properties) {
+        return new Binder(new MapConfigurationPropertySource(properties)).bindOrCreate(prefix, type);
+    }
+
+    static OpenAIProps openai(Map<String, ?> properties) {
+        return bind("openai", OpenAIProps.class, properties);
+    }
+
+    // every on-disk store of the application below a fresh temp dir, so no test reads or writes ./data
+    static void dataDirs(DynamicPropertyRegistry registry) {
+        Path dir;
+        try {
+            dir = Files.createTempDirectory("hackathon-test");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        registry.add("openai.uploads.index-path", () -> dir.resolve("file-index.log").toString());
+        registry.add("openai.jobs.dir", () -> dir.resolve("jobs").toString());
+        registry.add("answer-cache.disk-path", () -> dir.resolve("answers.bin").toString());
+        registry.add("retrieval.dir", () -> dir.resolve("retrieval").toString());
+        registry.add("search.dir", () -> dir.resolve("search").toString());
+        registry.add("sessions.dir", () -> dir.resolve("sessions").toString());
+        registry.add("sessions.shared.dir", () -> dir.resolve("shared-sessions").toString());
+    }
+}
@@ -0,0 +1,35 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TextExtractorTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsUtf8AndFallsBackForWindowsExports() throws IOException {
+        Path utf8 = Files.writeString(dir.resolve("a.txt"), "Prämie für Verträge – 100 €", StandardCharsets.UTF_8);
+        assertEquals("Prämie für Verträge – 100 €", TextExtractor.extract(utf8, "a.txt"));
+
+        // a CSV saved by Excel on a German Windows is not valid UTF-8
+        Path csv = Files.writeString(dir.resolve("b.csv"), "Vertrag;Prämie;Währung\n4711;100;€\n", Charset.forName("windows-1252"));
+        assertEquals("Vertrag;Prämie;Währung\n4711;100;€\n", TextExtractor.extract(csv, "b.csv"));
+
+        Path html = Files.write(dir.resolve("c.html"), "<p>Kündigung&nbsp;möglich</p>".getBytes(StandardCharsets.ISO_8859_1));
+        assertTrue(TextExtractor.extract(html, "c.html").contains("Kündigung möglich"));
+
+        assertNull(TextExtractor.extract(utf8, "a.docx"));
+    }
+}
@@ -0,0 +1,28 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+
+class UpstreamMetricsTests {
+
+    @Test
+    void namesOperationsWithoutTheirIds() {
+        assertEquals("responses", UpstreamMetrics.operation(HttpMethod.POST, "/v1/responses"));
+        assertEquals("file_get", UpstreamMetrics.operation(HttpMethod.GET, "/v1/files/file-abc"));
+        assertEquals("file_content", UpstreamMetrics.operation(HttpMethod.GET, "/v1/files/file-abc/content"));
+        assertEquals("attach_status", UpstreamMetrics.operation(HttpMethod.GET, "/v1/vector_stores/vs_1/files/file-abc"));
+        assertEquals("attach_batch", UpstreamMetrics.operation(HttpMethod.POST, "/v1/vector_stores/vs_1/file_batches"));
+        assertEquals("delete", UpstreamMetrics.operation(HttpMethod.DELETE, "/v1/vector_stores/vs_1/files/file-abc"));
+        assertEquals("batch_get", UpstreamMetrics.operation(HttpMethod.GET, "/v1/batches/batch_1"));
+        assertEquals("chat_completion", UpstreamMetrics.operation(HttpMethod.POST, "/api/chat/completions"));
+    }
+
+    @Test
+    void fallsBackToTheTemplatedRequestLine() {
+        assertEquals("GET /v1/conversations/{id}/items", UpstreamMetrics.operation(HttpMethod.GET, "/v1/conversations/conv_1/items"));
+        // only /v1 paths carry ids in every other segment
+        assertEquals("GET /api/models", UpstreamMetrics.operation(HttpMethod.GET, "/api/models"));
+    }
+}
@@ -0,0 +1,129 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class VectorIndexTests {
+
+    private static final int DIM = 32;
+
+    @TempDir
+    Path dir;
+
+    private static float[][] randomVectors(Random random, int n) {
+        float[][] vectors = new float[n][DIM];
+        for (float[] vector : vectors) {
+            for (int d = 0; d < DIM; d++) {
+                vector[d] = (float) random.nextGaussian();
+            }
+            EmbeddingClient.normalize(vector);
+        }
+        return vectors;
+    }
+
+    private static List<String> texts(int from, int n) {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            texts.add("Abschnitt " + (from + i));
+        }
+        return texts;
+    }
+
+    @Test
+    void findsNearestChunksAndSkipsDeletedDocuments() throws IOException {
+        Random random = new Random(1);
+        float[][] vectors = randomVectors(random, 200);
+        try (VectorIndex index = VectorIndex.open(dir, DIM)) {
+            index.addAll(0, texts(0, 100), Arrays.copyOfRange(vectors, 0, 100));
+            index.addAll(1, texts(100, 100), Arrays.copyOfRange(vectors, 100, 200));
+
+            List<VectorIndex.Hit> hits = index.search(vectors[42], 3, 8, doc -> true);
+            assertEquals(42, hits.getFirst().ordinal());
+            assertEquals(1.0f, hits.getFirst().score(), 1e-4);
+            assertEquals("Abschnitt 42", index.text(42));
+            assertTrue(hits.get(1).score() <= hits.getFirst().score());
+
+            List<VectorIndex.Hit> withoutFirstDoc = index.search(vectors[42], 3, 8, doc -> doc != 0);
+            assertTrue(withoutFirstDoc.stream().allMatch(hit -> hit.doc() == 1));
+        }
+    }
+
+    @Test
+    void reloadsFromDiskAndDropsTornRecord() throws IOException {
+        Random random = new Random(2);
+        float[][] vectors = randomVectors(random, 50);
+        try (VectorIndex index = VectorIndex.open(dir, DIM)) {
+            index.addAll(7, texts(0, 50), vectors);
+        }
+        try (FileChannel records = FileChannel.open(dir.resolve("chunks.idx"), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            records.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        }
+
+        try (VectorIndex index = VectorIndex.open(dir, DIM)) {
+            assertEquals(50, index.size());
+            assertEquals(7, index.maxDoc());
+            assertEquals(17, index.search(vectors[17], 1, 8, doc -> true).getFirst().ordinal());
+            assertEquals("Abschnitt 17", index.text(17));
+
+            // appending after a reload continues behind the last record
+            index.addAll(8, texts(50, 1), randomVectors(random, 1));
+            assertEquals("Abschnitt 50", index.text(50));
+        }
+    }
+
+    @Test
+    void trainedIndexKeepsRecallAndSurvivesReload() throws IOException {
+        Random random = new Random(3);
+        float[][] vectors = randomVectors(random, 4000);
+        try (VectorIndex index = VectorIndex.open(dir, DIM)) {
+            index.addAll(0, texts(0, 4000), vectors);
+            assertTrue(index.needsTraining(1000));
+            index.train(3);
+            assertTrue(index.trained());
+            assertFalse(index.needsTraining(1000));
+
+            // vectors added after training are assigned to their nearest list right away
+            float[][] more = randomVectors(random, 10);
+            index.addAll(1, texts(4000, 10), more);
+            assertEquals(4005, index.search(more[5], 1, 8, doc -> true).getFirst().ordinal());
+        }
+
+        try (VectorIndex index = VectorIndex.open(dir, DIM)) {
+            assertTrue(index.trained());
+            int found = 0;
+            for (int i = 0; i < 200; i++) {
+                if (index.search(vectors[i * 20], 1, 8, doc -> true).getFirst().ordinal() == i * 20) {
+                    found++;
+                }
+            }
+            // a stored vector is always in its own list, so searching for it must find it
+            assertEquals(200, found);
+        }
+    }
+
+    @Test
+    void chunksOverlapAndEndAtSentences() {
+        String text = "Erster Satz über Verträge. ".repeat(40) + "\n\n" + "Zweiter Absatz mit Fristen. ".repeat(40);
+        List<String> chunks = TextChunker.chunk(text, 300, 60);
+
+        assertTrue(chunks.size() > 3);
+        assertTrue(chunks.stream().allMatch(chunk -> chunk.length() <= 300));
+        assertTrue(chunks.stream().limit(chunks.size() - 1).allMatch(chunk -> chunk.endsWith(".")));
+        String tail = chunks.get(0).substring(chunks.get(0).length() - 20);
+        assertTrue(chunks.get(1).contains(tail.strip().substring(tail.strip().indexOf(' ') + 1)));
+    }
+}
@@ -0,0 +1,124 @@
+package com.openai.hackathon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openai.hackathon.FakeUpstreamServer.Latency;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class WebClientFactoryTests {
+
+    private static final String SLOW = "Langsam";
+
+    // a prompt with the marker holds its connection long enough to read the pools while it waits
+    private static final FakeUpstreamServer upstream = FakeUpstreamServer.start()
+            .delaying(SLOW, Latency.fixed(1_000));
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final ObjectMapper om = new ObjectMapper();
+
+    @LocalServerPort
+    int port;
+
+    @DynamicPropertySource
+    static void upstreams(DynamicPropertyRegistry registry) {
+        registry.add("openai.api-key", () -> "pool-test");
+        registry.add("openai.base-url", upstream::baseUrl);
+        registry.add("openai.vector-store-id", () -> "vs_pool");
+        registry.add("openai.http.http2", () -> "false");
+        registry.add("openai.http.max-connections", () -> "2");
+        // the adaptive limiter would queue the requests before they reach the pool
+        registry.add("openai.http.limit.enabled", () -> "false");
+        registry.add("local.http.limit.enabled", () -> "false");
+        registry.add("local.base-url", upstream::baseUrl);
+        registry.add("local.http.max-connections", () -> "1");
+        registry.add("retrieval.enabled", () -> "false");
+        TestProperties.dataDirs(registry);
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        upstream.close();
+    }
+
+    @Test
+    void eachUpstreamReportsItsOwnActiveIdleAndPendingConnections() throws Exception {
+        List<CompletableFuture<HttpResponse<String>>> answers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            answers.add(chat("/api/chat", SLOW + " Frage " + i));
+            answers.add(chat("/api/chat/local", SLOW + " Frage " + i));
+        }
+
+        // every connection of both pools is taken, the remaining request of each waits for one
+        JsonNode busy = awaitPools(pools -> pools.path("openai").path("active").asInt() == 2
+                && pools.path("local").path("active").asInt() == 1
+                && pools.path("openai").path("pendingAcquires").asInt() == 1
+                && pools.path("local").path("pendingAcquires").asInt() == 2);
+        assertEquals(2, busy.path("openai").path("maxConnections").asInt());
+        assertEquals(1, busy.path("local").path("maxConnections").asInt());
+        assertEquals(0, busy.path("openai").path("idle").asInt());
+        assertEquals(0, busy.path("local").path("idle").asInt());
+
+        for (CompletableFuture<HttpResponse<String>> answer : answers) {
+            assertEquals(200, answer.get().statusCode(), answer.get().body());
+        }
+
+        // afterwards the connections are kept alive for the next request
+        JsonNode idle = awaitPools(pools -> pools.path("openai").path("idle").asInt() == 2
+                && pools.path("local").path("idle").asInt() == 1);
+        for (String name : List.of("openai", "local")) {
+            assertEquals(0, idle.path(name).path("active").asInt(), idle.toString());
+            assertEquals(0, idle.path(name).path("pendingAcquires").asInt(), idle.toString());
+            assertEquals(idle.path(name).path("idle").asInt(), idle.path(name).path("allocated").asInt(), idle.toString());
+        }
+    }
+
+    private CompletableFuture<HttpResponse<String>> chat(String path, String prompt) throws IOException {
+        return client.sendAsync(HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:" + port + path))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(om.writeValueAsString(Map.of("prompt", prompt, "stateless", true))))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private JsonNode awaitPools(Check check) throws Exception {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (true) {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder()
+                            .uri(URI.create("http://localhost:" + port + "/api/stats"))
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString());
+            JsonNode pools = om.readTree(response.body()).path("httpPools");
+            if (check.done(pools)) {
+                return pools;
+            }
+            assertTrue(System.nanoTime() < deadline, "timed out at " + pools);
+            Thread.sleep(20);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Check {
+        boolean done(JsonNode pools);
+    }
+}